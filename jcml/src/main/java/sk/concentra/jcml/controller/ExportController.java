@@ -0,0 +1,84 @@
+package sk.concentra.jcml.controller;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.QueryValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.service.ExportService;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Asynchronous export jobs for long date ranges.
+ *
+ * <p>Example:
+ * {@code POST /exports?dateFrom=2025-01-01T00:00:00+01:00&dateTo=2026-01-01T00:00:00+01:00}</p>
+ *
+ * <p>Returns the queued job; poll {@code GET /exports/{id}} for progress. The gzip CSV
+ * files appear under {@code export.directory}/{id} as partitions complete. A failed,
+ * cancelled or interrupted job continues from its checkpoint with
+ * {@code POST /exports/{id}/resume}.</p>
+ */
+@Controller("/exports")
+public class ExportController {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportController.class);
+
+    private final ExportService exportService;
+
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @Post(produces = MediaType.APPLICATION_JSON)
+    public HttpResponse<ExportService.ExportJob> startExport(
+            @QueryValue String dateFrom,
+            @QueryValue String dateTo,
+            @Nullable @QueryValue List<String> ignoredSteps,
+            @Nullable @QueryValue List<String> fields
+    ) {
+        log.info("REST startExport: dateFrom={}, dateTo={}, ignoredSteps={}, fields={}",
+                dateFrom, dateTo, ignoredSteps, fields);
+        return HttpResponse.accepted().body(exportService.start(dateFrom, dateTo,
+                ignoredSteps != null ? ignoredSteps : Collections.emptyList(),
+                fields != null ? fields : Collections.emptyList()));
+    }
+
+    @Get(produces = MediaType.APPLICATION_JSON)
+    public List<ExportService.ExportJob> getExports() {
+        return exportService.jobs();
+    }
+
+    @Get(value = "/{id}", produces = MediaType.APPLICATION_JSON)
+    public HttpResponse<ExportService.ExportJob> getExport(@PathVariable String id) {
+        return exportService.job(id)
+                .map(HttpResponse::ok)
+                .orElseGet(HttpResponse::notFound);
+    }
+
+    @Post(value = "/{id}/resume", produces = MediaType.APPLICATION_JSON)
+    public HttpResponse<ExportService.ExportJob> resumeExport(@PathVariable String id) {
+        log.info("REST resumeExport: id={}", id);
+        if (exportService.job(id).isEmpty()) return HttpResponse.notFound();
+        try {
+            return HttpResponse.accepted().body(exportService.resume(id));
+        } catch (IllegalStateException e) {
+            return HttpResponse.status(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    @Post(value = "/{id}/cancel", produces = MediaType.APPLICATION_JSON)
+    public HttpResponse<ExportService.ExportJob> cancelExport(@PathVariable String id) {
+        log.info("REST cancelExport: id={}", id);
+        if (exportService.job(id).isEmpty()) return HttpResponse.notFound();
+        return HttpResponse.ok(exportService.cancel(id));
+    }
+}
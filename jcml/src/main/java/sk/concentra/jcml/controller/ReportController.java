@@ -1,19 +1,41 @@
 package sk.concentra.jcml.controller;
 
+import io.micronaut.context.annotation.Value;
 import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
 import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
 import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.http.context.event.HttpRequestTerminatedEvent;
 import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.http.server.netty.NettyHttpRequest;
+import io.micronaut.runtime.event.annotation.EventListener;
 import io.micronaut.scheduling.annotation.ExecuteOn;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import org.slf4j.Logger;
+import org.reactivestreams.Publisher;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import sk.concentra.jcml.export.ArrowStreamWriter;
+import sk.concentra.jcml.service.AdmissionControl;
 import sk.concentra.jcml.service.ReportService;
+import sk.concentra.jcml.service.SlowRequestLog;
 import sk.concentra.jcml.soap.dto.GetReportResponse;
+import sk.concentra.jcml.util.Cancellation;
+import sk.concentra.jcml.util.RequestTiming;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * REST endpoint replicating the legacy SOAP getReport method.
@@ -22,38 +44,168 @@ import java.util.List;
  * {@code GET /report?dateFrom=2026-02-19T11:00:00Z&dateTo=2026-02-19T12:00:00Z}</p>
  *
  * <p>Returns JSON by default. Add {@code Accept: application/xml} for XML.</p>
+ *
+ * <p>{@code GET /report/arrow?dateFrom=…&dateTo=…&fields=SkillTargetID} streams the same rows
+ * (plus the listed item fields) as an Arrow IPC stream for pandas / DuckDB / Polars.</p>
+ *
+ * <p>Every response carries a {@code Server-Timing} header with the DB fetch, decode,
+ * pipeline (and per-step), row mapping and total durations in milliseconds; the request is
+ * offered to the {@link SlowRequestLog}. Serialization happens after the header is sent and
+ * is not part of it — on {@code /report/arrow} neither is the record batch encoding.</p>
+ *
+ * <p>A report stops early when the client disconnects or {@code cancellation.deadline}
+ * passes ({@link Cancellation}): the running query is cancelled, decoding and the pipeline
+ * give up at their next check, and the response is {@code 503 Service Unavailable}.</p>
+ *
+ * <p>A report not admitted by {@link AdmissionControl} is answered with
+ * {@code 429 Too Many Requests} when its estimated heap exceeds the budget on its own (narrow
+ * the range or use {@code /exports}), or {@code 503 Service Unavailable} with
+ * {@code Retry-After} when the service is busy. An admitted report holds its permit until
+ * the response has been written (or the client has gone), serialization and the streamed
+ * Arrow batches included.</p>
  */
 @Controller("/report")
 public class ReportController {
 
     private static final Logger log = LoggerFactory.getLogger(ReportController.class);
 
+    private static final int DEFAULT_ARROW_BATCH_SIZE = 65_536;
+    private static final int RETRY_AFTER_SECONDS = 30;
+    private static final String PERMIT_ATTRIBUTE = "jcml.admission.permit";
+
     private final ReportService reportService;
+    private final SlowRequestLog slowRequestLog;
+    private final Duration deadline;
 
-    public ReportController(ReportService reportService) {
+    public ReportController(ReportService reportService,
+                            SlowRequestLog slowRequestLog,
+                            @Value("${cancellation.deadline:0s}") Duration deadline) {
         this.reportService = reportService;
+        this.slowRequestLog = slowRequestLog;
+        this.deadline = deadline;
     }
 
     @Get(produces = {MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
     @ExecuteOn(TaskExecutors.BLOCKING)
-    public GetReportResponse getReport(
+    public HttpResponse<GetReportResponse> getReport(
+            HttpRequest<?> request,
             @QueryValue String dateFrom,
             @QueryValue String dateTo
     ) {
         log.info("REST getReport: dateFrom={}, dateTo={}", dateFrom, dateTo);
-        return reportService.getReport(dateFrom, dateTo);
+        return report(request, "REST getReport", "dateFrom=" + dateFrom + ", dateTo=" + dateTo,
+                dateFrom, dateTo, permit -> reportService.getReport(dateFrom, dateTo));
     }
 
     @Get(value = "/with-ignored-steps", produces = {MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
     @ExecuteOn(TaskExecutors.BLOCKING)
-    public GetReportResponse getReportWithIgnoredSteps(
+    public HttpResponse<GetReportResponse> getReportWithIgnoredSteps(
+            HttpRequest<?> request,
             @QueryValue String dateFrom,
             @QueryValue String dateTo,
             @Nullable @QueryValue List<String> ignoredSteps
     ) {
         log.info("REST getReportWithIgnoredSteps: dateFrom={}, dateTo={}, ignoredSteps={}",
                 dateFrom, dateTo, ignoredSteps);
-        return reportService.getReport(dateFrom, dateTo,
-                ignoredSteps != null ? ignoredSteps : Collections.emptyList());
+        return report(request, "REST getReportWithIgnoredSteps",
+                "dateFrom=" + dateFrom + ", dateTo=" + dateTo + ", ignoredSteps=" + ignoredSteps,
+                dateFrom, dateTo, permit -> reportService.getReport(dateFrom, dateTo,
+                        ignoredSteps != null ? ignoredSteps : Collections.emptyList()));
+    }
+
+    @Get(value = "/arrow", produces = ArrowStreamWriter.MEDIA_TYPE)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Publisher<byte[]>> getReportArrow(
+            HttpRequest<?> request,
+            @QueryValue String dateFrom,
+            @QueryValue String dateTo,
+            @Nullable @QueryValue List<String> ignoredSteps,
+            @Nullable @QueryValue List<String> fields,
+            @Nullable @QueryValue Integer batchSize
+    ) {
+        log.info("REST getReportArrow: dateFrom={}, dateTo={}, ignoredSteps={}, fields={}, batchSize={}",
+                dateFrom, dateTo, ignoredSteps, fields, batchSize);
+        // Pipeline runs here; the record batches are encoded as the client reads them.
+        return report(request, "REST getReportArrow",
+                "dateFrom=" + dateFrom + ", dateTo=" + dateTo + ", ignoredSteps=" + ignoredSteps + ", fields=" + fields,
+                dateFrom, dateTo, permit -> {
+                    final Stream<byte[]> messages = reportService.getArrowReport(dateFrom, dateTo,
+                            ignoredSteps != null ? ignoredSteps : Collections.emptyList(),
+                            fields != null ? fields : Collections.emptyList(),
+                            batchSize != null ? batchSize : DEFAULT_ARROW_BATCH_SIZE);
+                    return Flux.fromStream(messages)
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .doFinally(signal -> permit.close());
+                });
+    }
+
+    /**
+     * Admits and runs {@code report} timed and cancellable: a close of the client's connection
+     * or the deadline cancels it. The response carries the {@code Server-Timing} header.
+     */
+    private <T> HttpResponse<T> report(HttpRequest<?> request, String operation, String parameters,
+                                       String dateFrom, String dateTo,
+                                       Function<AdmissionControl.Permit, T> report) {
+        final RequestTiming timing = RequestTiming.start(operation, parameters);
+        final Cancellation cancellation = Cancellation.start(deadline);
+        final Channel channel = request instanceof NettyHttpRequest<?> netty
+                ? netty.getChannelHandlerContext().channel()
+                : null;
+        final ChannelFutureListener onClose = future -> cancellation.cancel("client disconnected");
+        if (channel != null) channel.closeFuture().addListener(onClose);
+        try {
+            final T body = slowRequestLog.measure(timing, () -> {
+                final AdmissionControl.Permit permit = reportService.admit(dateFrom, dateTo);
+                holdUntilWritten(request, channel, permit);
+                try {
+                    return report.apply(permit);
+                } catch (RuntimeException e) {
+                    permit.close();
+                    throw e;
+                }
+            });
+            return HttpResponse.ok(body).header(RequestTiming.SERVER_TIMING, timing.serverTiming());
+        } catch (AdmissionControl.RejectedException e) {
+            log.warn("{} not admitted: {}", operation, e.getMessage());
+            final MutableHttpResponse<T> response = e.tooLarge()
+                    ? HttpResponse.<T>status(HttpStatus.TOO_MANY_REQUESTS, e.getMessage())
+                    : HttpResponse.<T>status(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage())
+                            .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS));
+            return response.header(RequestTiming.SERVER_TIMING, timing.serverTiming());
+        } catch (RuntimeException e) {
+            if (!cancellation.isCancelled()) throw e;
+            log.warn("{} cancelled after {}ms ({}): {}", operation, timing.totalMs(), cancellation.reason(), parameters);
+            return HttpResponse.<T>status(HttpStatus.SERVICE_UNAVAILABLE, "Report cancelled: " + cancellation.reason())
+                    .header(RequestTiming.SERVER_TIMING, timing.serverTiming());
+        } finally {
+            if (channel != null) channel.closeFuture().removeListener(onClose);
+            cancellation.finish();
+        }
+    }
+
+    // ── Admission permits ─────────────────────────────────────────────────────
+
+    /**
+     * Keeps {@code permit} with the request until {@link #onRequestTerminated} — the response
+     * has been written or failed — or until the client's connection closes, whichever is first.
+     */
+    private static void holdUntilWritten(HttpRequest<?> request, Channel channel, AdmissionControl.Permit permit) {
+        final HeldPermit held = new HeldPermit(permit, channel, future -> permit.close());
+        if (channel != null) channel.closeFuture().addListener(held.onClose());
+        request.setAttribute(PERMIT_ATTRIBUTE, held);
+    }
+
+    @EventListener
+    public void onRequestTerminated(HttpRequestTerminatedEvent event) {
+        event.getSource().getAttribute(PERMIT_ATTRIBUTE, HeldPermit.class).ifPresent(HeldPermit::release);
+    }
+
+    /** A permit held by a request, with the listener releasing it on a disconnect. */
+    private record HeldPermit(AdmissionControl.Permit permit, Channel channel, ChannelFutureListener onClose) {
+
+        void release() {
+            if (channel != null) channel.closeFuture().removeListener(onClose);
+            permit.close();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package sk.concentra.jcml.controller;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.deserializer.DecodeStats;
+import sk.concentra.jcml.service.SchemaInferenceService;
+
+import java.util.List;
+
+/**
+ * Schema diagnostics.
+ *
+ * <p>Example:
+ * {@code GET /schemas/stats?suspectOnly=true}</p>
+ *
+ * <p>Lists per message type how many messages were decoded, how many bytes were left
+ * after the last schema field (histogram), underflows and schema misses — a message
+ * type flagged {@code suspect} most likely needs a new schema for the running release.</p>
+ *
+ * <p>{@code GET /schemas/infer?messageType=UPDATE__DIALED_NUMBER&limit=500000} samples the
+ * newest blobs of a message type and returns draft schema files for it.</p>
+ */
+@Controller("/schemas")
+public class SchemaController {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaController.class);
+    private static final int DEFAULT_INFER_LIMIT = 100_000;
+
+    private final DecodeStats decodeStats;
+    private final SchemaInferenceService schemaInferenceService;
+
+    public SchemaController(DecodeStats decodeStats, SchemaInferenceService schemaInferenceService) {
+        this.decodeStats = decodeStats;
+        this.schemaInferenceService = schemaInferenceService;
+    }
+
+    @Get(value = "/stats", produces = MediaType.APPLICATION_JSON)
+    public List<DecodeStats.TypeSnapshot> getStats(@Nullable @QueryValue Boolean suspectOnly) {
+        final List<DecodeStats.TypeSnapshot> stats = decodeStats.snapshot();
+        return Boolean.TRUE.equals(suspectOnly)
+                ? stats.stream().filter(DecodeStats.TypeSnapshot::suspect).toList()
+                : stats;
+    }
+
+    @Get(value = "/infer", produces = MediaType.APPLICATION_JSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public String inferSchema(@QueryValue String messageType, @Nullable @QueryValue Integer limit) {
+        log.info("REST inferSchema: messageType={}, limit={}", messageType, limit);
+        return schemaInferenceService.infer(messageType, limit != null ? limit : DEFAULT_INFER_LIMIT);
+    }
+}
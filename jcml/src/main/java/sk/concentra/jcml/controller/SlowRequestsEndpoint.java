@@ -0,0 +1,36 @@
+package sk.concentra.jcml.controller;
+
+import io.micronaut.management.endpoint.annotation.Delete;
+import io.micronaut.management.endpoint.annotation.Endpoint;
+import io.micronaut.management.endpoint.annotation.Read;
+import sk.concentra.jcml.service.SlowRequestLog;
+import sk.concentra.jcml.util.RequestTiming;
+
+import java.util.List;
+
+/**
+ * Management endpoint over {@link SlowRequestLog}.
+ *
+ * <p>{@code GET /slowrequests} lists the slowest recent report requests, slowest first, with
+ * phase durations, pipeline step stats and row counts. {@code DELETE /slowrequests} empties
+ * the log, e.g. after a fix, so only new requests show.</p>
+ */
+@Endpoint(id = "slowrequests", defaultSensitive = false)
+public class SlowRequestsEndpoint {
+
+    private final SlowRequestLog slowRequestLog;
+
+    public SlowRequestsEndpoint(SlowRequestLog slowRequestLog) {
+        this.slowRequestLog = slowRequestLog;
+    }
+
+    @Read
+    public List<RequestTiming.Summary> slowest() {
+        return slowRequestLog.slowest();
+    }
+
+    @Delete
+    public void clear() {
+        slowRequestLog.clear();
+    }
+} // class SlowRequestsEndpoint
@@ -1,21 +1,28 @@
 package sk.concentra.jcml.deserializer;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micronaut.context.annotation.Value;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
 import sk.concentra.jcml.schema.MessageSchema;
 import sk.concentra.jcml.schema.MessageSchema.FieldDefinition;
 import sk.concentra.jcml.schema.MessageSchema.PaddingType;
 import sk.concentra.jcml.schema.SchemaRegistry;
+import sk.concentra.jcml.schema.SchemaSet;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Singleton
 public class BinaryMessageDeserializer {
@@ -24,10 +31,17 @@ public class BinaryMessageDeserializer {
 
     private final SchemaRegistry schemaRegistry;
     private final ObjectMapper objectMapper;
+    private final DecodeStats decodeStats;
+    private final boolean lazyDecode;
+    private final StringDeduplicator stringDeduplicator = new StringDeduplicator();
 
-    public BinaryMessageDeserializer(SchemaRegistry schemaRegistry, ObjectMapper objectMapper) {
+    public BinaryMessageDeserializer(SchemaRegistry schemaRegistry, ObjectMapper objectMapper,
+                                     DecodeStats decodeStats,
+                                     @Value("${schema.lazy-decode:false}") boolean lazyDecode) {
         this.schemaRegistry = schemaRegistry;
         this.objectMapper = objectMapper;
+        this.decodeStats = decodeStats;
+        this.lazyDecode = lazyDecode;
 //        this.objectMapper.registerModule(new JavaTimeModule());
 //        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
@@ -48,29 +62,89 @@ public class BinaryMessageDeserializer {
      */
 //    public Map<String, Object> deserialize(String messageType, byte[] data) {
     public ObjectNode deserialize(String messageType, byte[] data, Map<String, Object> dbMetadata) {
+        return deserialize(messageType, data, dbMetadata, FieldProjection.ALL);
+    }
+
+    /**
+     * Deserialize a binary message, decoding only the schema fields selected by
+     * {@code projection}. Skipped fields are stepped over using their fixed size or,
+     * for strings, their length prefix — no value is materialized. The synthetic
+     * {@code _...} fields are always present; {@code _schemaFields} still reports the
+     * full schema width.
+     *
+     * <p>With {@code schema.lazy-decode} enabled, the blob is only scanned for field
+     * offsets here; each field value is decoded when it is first read from the returned
+     * node (see {@link LazyFieldMap}). Items dropped by a filter step before anything reads
+     * their fields are never decoded.</p>
+     *
+     * <p>Every call is counted in {@link DecodeStats}: decode time, the bytes left after
+     * the last schema field, underflows and schema misses.</p>
+     *
+     * @param projection fields to decode per message type; {@link FieldProjection#ALL} decodes everything
+     */
+    public ObjectNode deserialize(String messageType, byte[] data, Map<String, Object> dbMetadata,
+                                  FieldProjection projection) {
+        return deserialize(messageType, data, projection, schemaRegistry.baseSchemas(),
+                result -> result.set("_dbMetadata", objectMapper.valueToTree(dbMetadata)));
+    }
+
+    /**
+     * Like {@link #deserialize(String, byte[], Map, FieldProjection)}, with the row metadata
+     * written straight into the {@code _dbMetadata} node — no intermediate map and no
+     * {@code valueToTree} per row. Key order matches the map-based variant.
+     *
+     * @param schemas schema set of the release that wrote the row, see {@link SchemaRegistry#schemasAt}
+     */
+    public ObjectNode deserialize(String messageType, byte[] data, DbMetadata dbMetadata,
+                                  FieldProjection projection, SchemaSet schemas) {
+        return deserialize(messageType, data, projection, schemas, result -> {
+            final ObjectNode meta = result.putObject("_dbMetadata");
+            meta.put("dateTime", dbMetadata.dateTime());
+            meta.put("logOperation", dbMetadata.logOperation());
+            meta.put("recoveryKey", dbMetadata.recoveryKey());
+            meta.put("tableName", dbMetadata.tableName());
+        });
+    }
+
+    private ObjectNode deserialize(String messageType, byte[] data, FieldProjection projection,
+                                   SchemaSet schemas, Consumer<ObjectNode> metadataWriter) {
 //        MessageSchema schema = schemaRegistry.getSchema(messageType);
 //        validateSchema(schema);
 
+        final long started = System.nanoTime();
+        final long allocatedBefore = DecodeStats.allocatedBytes();
+        final DecodeStats.TypeStats stats = decodeStats.of(messageType);
         ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
 
 //        Map<String, Object> result = new LinkedHashMap<>();
-        ObjectNode result = objectMapper.createObjectNode();
+        final LazyFieldMap lazyFields = lazyDecode ? new LazyFieldMap() : null;
+        ObjectNode result = lazyFields != null
+                ? new ObjectNode(objectMapper.getNodeFactory(), lazyFields)
+                : objectMapper.createObjectNode();
         result.put("_messageType", messageType);
         result.put("_dataLength", data.length);
 //        result.put("_schemaVersion", schema.version());
 //        result.put("_schemaDescription", schema.description());
 //        result.put("_schemaFields", schema.fields().size());
 //        result.put("_schemaName", schema.messageType());
+        if (schemas.version() != null) {
+            result.put("_schemaSet", schemas.version());
+        }
 //        result.putPOJO("_dbMetadata", dbMetadata); // this is just lazily storin the Java object.
-        result.set("_dbMetadata", objectMapper.valueToTree(dbMetadata));
+        metadataWriter.accept(result);
 //        result.put("_db_localDateTime", dbMetadata.get("localDateTime") != null
 //                ? dbMetadata.get("localDateTime").toString() : "");
 
         // Read 6-integer header
         // always present regardless of schema
         int[] header = new int[HEADER_SIZE];
-        for (int i = 0; i < HEADER_SIZE; i++) {
-            header[i] = buffer.getInt();
+        try {
+            for (int i = 0; i < HEADER_SIZE; i++) {
+                header[i] = buffer.getInt();
+            }
+        } catch (BufferUnderflowException e) {
+            stats.underflow(data.length);
+            throw e;
         }
 //        result.putPOJO("_header", header); // will not preserve array
         result.set("_header", objectMapper.valueToTree(header)); // this _will_ preserve array
@@ -78,14 +152,14 @@ public class BinaryMessageDeserializer {
         log.debug("_header: {}", Arrays.toString(header));
         final MessageSchema schema;
         try {
-            schema = schemaRegistry.getSchema(messageType);
+            schema = schemas.getSchema(messageType);
         } catch (SchemaRegistry.SchemaNotFoundException e) {
             log.warn("No schema found for messageType '{}' — returning partial ObjectNode (header + metadata only)",
                     messageType);
+            stats.schemaMiss(data.length);
             return result; // partial result — no fields deserialized
         } // try to look up schema
 
-        validateSchema(schema);
         result.put("_schemaVersion", schema.version());
         result.put("_schemaDescription", schema.description());
         result.put("_schemaFields", schema.fields().size());
@@ -93,50 +167,107 @@ public class BinaryMessageDeserializer {
 
 
         header = null;
-        // Deserialize fields according to schema
-        deserializeFields(buffer, schema.fields(), result, schema);
+        final Set<String> wanted = projection.fieldsFor(messageType);
+        try {
+            if (lazyFields != null) {
+                // One scan for the offsets; values are decoded on first access
+                indexFields(buffer, schema.fields(), lazyFields, wanted, schemas);
+                lazyFields.attach((field, offset) -> decodeAt(data, offset, field, schema, wanted, schemas));
+            } else {
+                // Deserialize fields according to schema
+                deserializeFields(buffer, schema.fields(), result, schema, wanted, schemas);
+            }
+        } catch (BufferUnderflowException e) {
+            stats.underflow(data.length);
+            throw e;
+        }
+        final long allocated = DecodeStats.allocatedSince(allocatedBefore);
+        stats.decoded(data.length, buffer.remaining(), System.nanoTime() - started, allocated);
+        if (stats.wantsSize(allocated)) {
+            stats.sized(lazyFields != null
+                    ? HeapEstimate.OBJECT + lazyFields.estimatedHeapBytes(data.length)
+                    : HeapEstimate.of(result));
+        }
 
         return result;
     }
 
     /**
-     * Validate that array fields are only at the end of the field list.
+     * Typed counterpart of {@link #deserialize(String, byte[], Map, FieldProjection)} for the
+     * report fast lane: sets the header on {@code record} and decodes the projected schema
+     * fields into it as plain Java values — the same values the generic path hands to
+     * Jackson, with nested objects as {@code Map} and arrays as {@code List}. Without a
+     * schema only the header is set.
      */
-    private void validateSchema(MessageSchema schema) {
-        List<FieldDefinition> fields = schema.fields();
-        boolean foundArray = false;
-
-        for (int i = 0; i < fields.size(); i++) {
-            FieldDefinition field = fields.get(i);
-
-            if (foundArray && !field.isArray()) {
-                throw new IllegalArgumentException(
-                        "Schema validation error: Array field must be the last field. " +
-                                "Found non-array field '" + field.name() + "' after an array field in schema: " +
-                                schema.messageType()
-                );
+    public ReportRecord decodeInto(ReportRecord record, byte[] data, FieldProjection projection,
+                                   SchemaSet schemas) {
+        final long started = System.nanoTime();
+        final long allocatedBefore = DecodeStats.allocatedBytes();
+        final DecodeStats.TypeStats stats = decodeStats.of(record.messageType());
+        final ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            final int[] header = new int[HEADER_SIZE];
+            for (int i = 0; i < HEADER_SIZE; i++) {
+                header[i] = buffer.getInt();
+            }
+            record.setHeader(header);
+
+            final MessageSchema schema;
+            try {
+                schema = schemas.getSchema(record.messageType());
+            } catch (SchemaRegistry.SchemaNotFoundException e) {
+                log.warn("No schema found for messageType '{}' — returning partial record (header + metadata only)",
+                        record.messageType());
+                stats.schemaMiss(data.length);
+                return record;
             }
+            decodeValues(buffer, schema.fields(), record.fields(), projection.fieldsFor(record.messageType()), schemas);
+        } catch (BufferUnderflowException e) {
+            stats.underflow(data.length);
+            throw e;
+        }
+        final long allocated = DecodeStats.allocatedSince(allocatedBefore);
+        stats.decoded(data.length, buffer.remaining(), System.nanoTime() - started, allocated);
+        if (stats.wantsSize(allocated)) stats.sized(HeapEstimate.of(record));
+        return record;
+    }
 
+    private void decodeValues(ByteBuffer buffer, List<FieldDefinition> fields, Map<String, Object> target,
+                              Set<String> wanted, SchemaSet schemas) {
+        for (FieldDefinition field : fields) {
+            if (wanted != null && !isWanted(field, wanted, 0, schemas)) {
+                skipField(buffer, field, schemas);
+                continue;
+            }
             if (field.isArray()) {
-                foundArray = true;
-                // Ensure it's the last field
-                if (i < fields.size() - 1) {
-                    throw new IllegalArgumentException(
-                            "Schema validation error: Array field '" + field.name() +
-                                    "' must be the last field in schema: " + schema.messageType()
-                    );
+                final List<Object> array = new ArrayList<>();
+                while (buffer.hasRemaining()) {
+                    array.add(decodeValue(buffer, field, wanted, schemas));
                 }
+                target.put(field.name(), array);
+            } else {
+                target.put(field.name(), decodeValue(buffer, field, wanted, schemas));
             }
         }
     }
 
+    private Object decodeValue(ByteBuffer buffer, FieldDefinition field, Set<String> wanted, SchemaSet schemas) {
+        if (field.type() != MessageSchema.FieldType.OBJECT) {
+            return deserializeField(buffer, field, null, wanted, schemas);
+        }
+        final Map<String, Object> nested = new LinkedHashMap<>();
+        decodeValues(buffer, schemas.getSchema(field.nestedSchema()).fields(), nested, wanted, schemas);
+        return nested;
+    }
+
     /**
      * Deserialize fields from a buffer (used for both top-level and nested objects).
      */
 //    private void deserializeFields(ByteBuffer buffer, List<FieldDefinition> fields,
 //                                   Map<String, Object> result, MessageSchema rootSchema) {
     private void deserializeFields(ByteBuffer buffer, List<FieldDefinition> fields,
-                                   ObjectNode result, MessageSchema rootSchema) {
+                                   ObjectNode result, MessageSchema rootSchema, Set<String> wanted,
+                                   SchemaSet schemas) {
         var bufferPosition = buffer.position();
         var remainder = bufferPosition % 8;
         log.debug("bufferPosition: {}; %8 remainder: {}; buffer.remaining: {}", bufferPosition, remainder, buffer.remaining());
@@ -146,11 +277,16 @@ public class BinaryMessageDeserializer {
         for (FieldDefinition field : fields) {
             Object value;
 
+            if (wanted != null && !isWanted(field, wanted, 0, schemas)) {
+                skipField(buffer, field, schemas);
+                i++;
+                continue;
+            }
             log.debug("[{}/{}]>>> field: {}; field.type: {}; buffer.position: {}; buffer.remaining: {}", i, fieldsSize, field.name(),  field.type(), buffer.position(), buffer.remaining());
             if (field.isArray()) {
-                value = deserializeArray(buffer, field, result, rootSchema);
+                value = deserializeArray(buffer, field, result, rootSchema, wanted, schemas);
             } else {
-                value = deserializeField(buffer, field, rootSchema);
+                value = deserializeField(buffer, field, rootSchema, wanted, schemas);
             }
             log.debug("[{}/{}]<<< field: {}; field.type: {}; buffer.position: {}; buffer.remaining: {}; value: {}", i, fieldsSize, field.name(),  field.type(), buffer.position(), buffer.remaining(), value);
 //            result.putPOJO(field.name(), value); // broken, just stores Java object lazily
@@ -159,7 +295,8 @@ public class BinaryMessageDeserializer {
         } // for (FieldDefinition field : fields) {
     }
 
-    private Object deserializeField(ByteBuffer buffer, FieldDefinition field, MessageSchema rootSchema) {
+    private Object deserializeField(ByteBuffer buffer, FieldDefinition field, MessageSchema rootSchema,
+                                    Set<String> wanted, SchemaSet schemas) {
         return switch (field.type()) {
             case BYTE -> buffer.get() & 0xFF;
             case FLOAT -> buffer.getFloat();
@@ -168,15 +305,89 @@ public class BinaryMessageDeserializer {
             case INTEGER -> buffer.getInt() & 0xFFFFFFFFL;
             case LONG -> buffer.getLong();
             case CHAR -> (char) (buffer.get() & 0xFF);
-            case STRING -> deserializeString(buffer, field.stringPadding());
-            case OBJECT -> deserializeNestedObject(buffer, field.nestedSchema(), rootSchema);
+            case STRING -> deserializeString(buffer, field.stringPadding(), field.dedupe());
+            case OBJECT -> deserializeNestedObject(buffer, field.nestedSchema(), rootSchema, wanted, schemas);
         };
     }
 
+    // ── Lazy decoding ───────────────────────────────────────────────────────
+
+    /**
+     * Records the offset of every needed top-level field, stepping over its bytes with the
+     * same size rules as {@link #skipField}. Truncated blobs therefore still fail here,
+     * not later in the pipeline.
+     */
+    private void indexFields(ByteBuffer buffer, List<FieldDefinition> fields, LazyFieldMap target,
+                             Set<String> wanted, SchemaSet schemas) {
+        for (FieldDefinition field : fields) {
+            if (wanted == null || isWanted(field, wanted, 0, schemas)) {
+                target.addPending(field, buffer.position());
+            }
+            skipField(buffer, field, schemas);
+        }
+    }
+
+    private JsonNode decodeAt(byte[] data, int offset, FieldDefinition field, MessageSchema rootSchema,
+                              Set<String> wanted, SchemaSet schemas) {
+        final ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(offset);
+        final Object value = field.isArray()
+                ? deserializeArray(buffer, field, null, rootSchema, wanted, schemas)
+                : deserializeField(buffer, field, rootSchema, wanted, schemas);
+        return objectMapper.valueToTree(value);
+    }
+
+    // ── Projection ──────────────────────────────────────────────────────────
+
+    /**
+     * A field is needed if it is named in {@code wanted}, or if it is an {@code OBJECT}
+     * whose nested schema contains a needed field (unwrapped array elements are merged
+     * into the top level, so nested names share the same namespace).
+     */
+    private boolean isWanted(FieldDefinition field, Set<String> wanted, int depth, SchemaSet schemas) {
+        if (wanted.contains(field.name())) return true;
+        if (field.type() != MessageSchema.FieldType.OBJECT || depth > 8) return false;
+        for (FieldDefinition nested : schemas.getSchema(field.nestedSchema()).fields()) {
+            if (isWanted(nested, wanted, depth + 1, schemas)) return true;
+        }
+        return false;
+    }
+
+    /** Advances the buffer past a field without decoding it. Arrays run to the end of the buffer. */
+    private void skipField(ByteBuffer buffer, FieldDefinition field, SchemaSet schemas) {
+        if (field.isArray()) {
+            buffer.position(buffer.limit());
+            return;
+        }
+        switch (field.type()) {
+            case BYTE, CHAR -> skipBytes(buffer, 1);
+            case SHORT -> skipBytes(buffer, 2);
+            case INTEGER, FLOAT -> skipBytes(buffer, 4);
+            case LONG, DOUBLE -> skipBytes(buffer, 8);
+            case STRING -> {
+                final int length = (buffer.getShort() & 0xFFFF) + 1;
+                skipBytes(buffer, length + calculatePadding(length, field.stringPadding()));
+            }
+            case OBJECT -> {
+                for (FieldDefinition nested : schemas.getSchema(field.nestedSchema()).fields()) {
+                    skipField(buffer, nested, schemas);
+                }
+            }
+        }
+    }
+
+    private static void skipBytes(ByteBuffer buffer, int count) {
+        if (count > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        buffer.position(buffer.position() + count);
+    }
+
 //    private List<Object> deserializeArray(ByteBuffer buffer, FieldDefinition field,
 //                                          Map<String, Object> context, MessageSchema rootSchema) {
     private List<Object> deserializeArray(ByteBuffer buffer, FieldDefinition field,
-                                          ObjectNode context, MessageSchema rootSchema) {
+                                          ObjectNode context, MessageSchema rootSchema, Set<String> wanted,
+                                          SchemaSet schemas) {
         // Arrays are always at the end of the message
         // Read elements until buffer has no more data
         log.debug("[DesA] rootSchema.messageType: {}", rootSchema.messageType());
@@ -195,7 +406,7 @@ public class BinaryMessageDeserializer {
 //                buffer.position(alignedPos);
 //                log.info("i: {} alignedPos: {}", i, alignedPos);
 //            }
-            Object element = deserializeField(buffer, field, rootSchema);
+            Object element = deserializeField(buffer, field, rootSchema, wanted, schemas);
             array.add(element);
             var postReadBufferPosition = buffer.position();
             log.debug("[DesA] preReadBufferPosition: {}, postReadBufferPosition: {}, delta: {}", preReadBufferPosition, postReadBufferPosition, postReadBufferPosition - preReadBufferPosition);
@@ -208,18 +419,48 @@ public class BinaryMessageDeserializer {
         return array;
     }
 
-    private String deserializeString(ByteBuffer buffer, PaddingType paddingType) {
-        // Read 2-byte length prefix
-        final var posBefore = buffer.position();
+    /**
+     * Reads a length-prefixed, NUL-terminated string straight from the buffer's backing
+     * array. Pure ASCII (the common case: host, user and process names) is decoded with
+     * the Latin-1 constructor, which yields a compact string without a UTF-8 pass; for
+     * {@code dedupe} fields an equal, previously decoded instance is reused.
+     */
+    private String deserializeString(ByteBuffer buffer, PaddingType paddingType, boolean dedupe) {
         // Read string length (2 bytes)
         final int originalLength = buffer.getShort() & 0xFFFF;
         // add one to the length to account for the \0 terminator
         final int length = originalLength + 1;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
 
-        // Read string bytes
-        final byte[] stringBytes = new byte[length];
-        buffer.get(stringBytes);
-        final String value = new String(stringBytes, 0, originalLength, StandardCharsets.UTF_8);
+        final String value;
+        if (buffer.hasArray()) {
+            final byte[] bytes = buffer.array();
+            final int offset = buffer.arrayOffset() + buffer.position();
+            int hash = 0;
+            boolean ascii = true;
+            for (int i = offset, end = offset + originalLength; i < end; i++) {
+                final byte b = bytes[i];
+                if (b < 0) {
+                    ascii = false;
+                    break;
+                }
+                hash = 31 * hash + b;
+            }
+            if (!ascii) {
+                value = new String(bytes, offset, originalLength, StandardCharsets.UTF_8);
+            } else if (dedupe) {
+                value = stringDeduplicator.dedupe(bytes, offset, originalLength, hash);
+            } else {
+                value = new String(bytes, offset, originalLength, StandardCharsets.ISO_8859_1);
+            }
+            buffer.position(buffer.position() + length);
+        } else {
+            final byte[] stringBytes = new byte[length];
+            buffer.get(stringBytes);
+            value = new String(stringBytes, 0, originalLength, StandardCharsets.UTF_8);
+        }
 
         // Handle padding
         final int paddingBytes = calculatePadding(length, paddingType);
@@ -235,7 +476,7 @@ public class BinaryMessageDeserializer {
         return value;
     }
 
-    private int calculatePadding(int stringLength, PaddingType paddingType) {
+    static int calculatePadding(int stringLength, PaddingType paddingType) {
         return switch (paddingType) {
             case NONE -> 0;
             case FIXED_1 -> 1;
@@ -258,14 +499,14 @@ public class BinaryMessageDeserializer {
 //    private Map<String, Object> deserializeNestedObject(ByteBuffer buffer, String nestedSchemaName,
 //                                                        MessageSchema rootSchema) {
         private ObjectNode deserializeNestedObject(ByteBuffer buffer, String nestedSchemaName,
-                MessageSchema rootSchema) {
+                MessageSchema rootSchema, Set<String> wanted, SchemaSet schemas) {
         // For nested objects, we need to look up the schema
         // This could be either a separate schema file or embedded in the root schema
-        MessageSchema nestedSchema = schemaRegistry.getSchema(nestedSchemaName);
+        MessageSchema nestedSchema = schemas.getSchema(nestedSchemaName);
 
 //        Map<String, Object> nestedObject = new LinkedHashMap<>();
         var nestedObject = objectMapper.createObjectNode();
-        deserializeFields(buffer, nestedSchema.fields(), nestedObject, nestedSchema);
+        deserializeFields(buffer, nestedSchema.fields(), nestedObject, nestedSchema, wanted, schemas);
 
         return nestedObject;
     }
@@ -0,0 +1,13 @@
+package sk.concentra.jcml.deserializer;
+
+/**
+ * {@code Config_Message_Log} row metadata written into every decoded message as
+ * {@code _dbMetadata}.
+ *
+ * @param recoveryKey  row recovery key
+ * @param logOperation raw log operation, as stored
+ * @param tableName    raw table name, as stored
+ * @param dateTime     row timestamp in epoch milliseconds (CML zone applied)
+ */
+public record DbMetadata(Double recoveryKey, String logOperation, String tableName, long dateTime) {
+}
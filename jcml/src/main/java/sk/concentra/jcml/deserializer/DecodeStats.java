@@ -0,0 +1,273 @@
+package sk.concentra.jcml.deserializer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always-on decode statistics per message type, kept by {@link BinaryMessageDeserializer}.
+ *
+ * <p>A message decoded with the right schema ends exactly at the end of its blob (or runs
+ * a trailing array up to it). Bytes left over after the last field, or a
+ * {@code BufferUnderflowException} before it, mean the schema no longer matches what the
+ * release writes — the leftover histogram shows such a change as soon as the first
+ * messages arrive.</p>
+ *
+ * <p>The hot path only touches {@link LongAdder}s. The Micrometer meters
+ * ({@code jcml.decode}, {@code jcml.decode.bytes}, {@code jcml.decode.leftover*},
+ * {@code jcml.decode.underflows}, {@code jcml.decode.schema.misses}, all tagged with
+ * {@code messageType}) are function meters reading the same adders, registered once per
+ * message type.</p>
+ *
+ * <p>Where the JVM measures per-thread allocation, every decode also records the bytes it
+ * allocated — the learned heap cost of a decoded message per type, which admission control
+ * uses to size a report before running it ({@link #meanHeapBytes}). Where it does not — on
+ * virtual threads, which serve REST requests — a sample of the decoded messages is sized
+ * instead ({@link HeapEstimate}).</p>
+ */
+@Singleton
+public class DecodeStats {
+
+    private static final Logger log = LoggerFactory.getLogger(DecodeStats.class);
+
+    /** Lower bounds of the leftover-size buckets, in bytes. */
+    private static final int[] LEFTOVER_BUCKETS = {0, 1, 4, 8, 16, 64, 256};
+    private static final String[] LEFTOVER_LABELS = {"0", "1-3", "4-7", "8-15", "16-63", "64-255", "256+"};
+
+    /** Heap-size samples taken per message type before sampling drops to one decode in {@link #SIZE_SAMPLE_RATE}. */
+    private static final int SIZE_SAMPLES_FIRST = 32;
+    private static final int SIZE_SAMPLE_RATE = 64;
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationMeasuringThreads();
+    private static final AtomicBoolean ALLOCATION_UNAVAILABLE_LOGGED = new AtomicBoolean();
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, TypeStats> byType = new ConcurrentHashMap<>();
+
+    public DecodeStats(@Nullable MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** Statistics of one message type, created (and its meters registered) on first use. */
+    public TypeStats of(String messageType) {
+        final TypeStats stats = byType.get(messageType);
+        return stats != null ? stats : byType.computeIfAbsent(messageType, this::create);
+    }
+
+    /**
+     * Mean heap cost of one decoded message of {@code messageType}: the bytes its decodes were
+     * measured to allocate or, where none was measured, the estimated size of the sampled
+     * decoded messages; {@code -1} before either is known.
+     */
+    public double meanHeapBytes(String messageType) {
+        final TypeStats stats = byType.get(messageType);
+        if (stats == null) return -1;
+        final long samples = stats.allocationSamples.sum();
+        if (samples > 0) return (double) stats.allocatedBytes.sum() / samples;
+        final long sized = stats.sizeSamples.sum();
+        return sized == 0 ? -1 : (double) stats.sizedBytes.sum() / sized;
+    }
+
+    /** Bytes allocated by the current thread so far, or {@code -1} where the JVM does not tell. */
+    public static long allocatedBytes() {
+        final long allocated = THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+        if (allocated < 0 && ALLOCATION_UNAVAILABLE_LOGGED.compareAndSet(false, true)) {
+            log.info("Decode allocation is not measurable on {} — the heap cost per message type is "
+                    + "estimated from sampled decoded messages instead", THREADS == null
+                    ? "this JVM" : Thread.currentThread().isVirtual() ? "virtual threads" : "this thread");
+        }
+        return allocated;
+    }
+
+    /** Bytes allocated by the current thread since {@code before} ({@link #allocatedBytes()}), or {@code -1}. */
+    public static long allocatedSince(long before) {
+        if (before < 0) return -1;
+        final long now = allocatedBytes();
+        return now < 0 ? -1 : now - before;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationMeasuringThreads() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads;
+        }
+        return null;
+    }
+
+    /** Point-in-time view of all message types seen so far, ordered by message type. */
+    public List<TypeSnapshot> snapshot() {
+        final List<TypeSnapshot> result = new ArrayList<>(byType.size());
+        byType.values().forEach(stats -> result.add(stats.snapshot()));
+        result.sort((a, b) -> a.messageType().compareTo(b.messageType()));
+        return result;
+    }
+
+    private TypeStats create(String messageType) {
+        final TypeStats stats = new TypeStats(messageType);
+        if (meterRegistry != null) {
+            stats.register(meterRegistry);
+        }
+        return stats;
+    }
+
+    private static int bucketOf(int leftover) {
+        int bucket = LEFTOVER_BUCKETS.length - 1;
+        while (leftover < LEFTOVER_BUCKETS[bucket]) bucket--;
+        return bucket;
+    }
+
+    // ── Per message type ─────────────────────────────────────────────────────
+
+    public static final class TypeStats {
+        private final String messageType;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder leftoverBytes = new LongAdder();
+        private final LongAdder[] leftoverHistogram = new LongAdder[LEFTOVER_BUCKETS.length];
+        private final LongAccumulator maxLeftover = new LongAccumulator(Math::max, 0);
+        private final LongAdder underflows = new LongAdder();
+        private final LongAdder schemaMisses = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder allocationSamples = new LongAdder();
+        private final LongAdder sizedBytes = new LongAdder();
+        private final LongAdder sizeSamples = new LongAdder();
+
+        private TypeStats(String messageType) {
+            this.messageType = messageType;
+            for (int i = 0; i < leftoverHistogram.length; i++) {
+                leftoverHistogram[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * A message decoded against its schema.
+         *
+         * @param leftover  bytes remaining in the blob after the last schema field
+         * @param allocated heap bytes the decode allocated ({@link #allocatedSince}), {@code -1} if unknown
+         */
+        public void decoded(int length, int leftover, long elapsedNanos, long allocated) {
+            count.increment();
+            bytes.add(length);
+            nanos.add(elapsedNanos);
+            if (allocated >= 0) {
+                allocatedBytes.add(allocated);
+                allocationSamples.increment();
+            }
+            leftoverHistogram[bucketOf(leftover)].increment();
+            if (leftover > 0) {
+                leftoverBytes.add(leftover);
+                maxLeftover.accumulate(leftover);
+            }
+        }
+
+        /**
+         * Whether to size the message just decoded ({@link #sized}): only where its allocation
+         * was not measured, for the first messages of the type and a sample after that.
+         */
+        boolean wantsSize(long allocated) {
+            return allocated < 0 && (sizeSamples.sum() < SIZE_SAMPLES_FIRST
+                    || ThreadLocalRandom.current().nextInt(SIZE_SAMPLE_RATE) == 0);
+        }
+
+        /** Estimated heap of a decoded message ({@link HeapEstimate}). */
+        void sized(long heapBytes) {
+            sizedBytes.add(heapBytes);
+            sizeSamples.increment();
+        }
+
+        /** The blob ended before the schema did. */
+        public void underflow(int length) {
+            underflows.increment();
+            bytes.add(length);
+        }
+
+        /** No schema for the message type (in the selected schema set). */
+        public void schemaMiss(int length) {
+            schemaMisses.increment();
+            bytes.add(length);
+        }
+
+        private void register(MeterRegistry registry) {
+            FunctionTimer.builder("jcml.decode", this, s -> s.count.sum(), s -> s.nanos.sum(), TimeUnit.NANOSECONDS)
+                    .description("Messages decoded against their schema")
+                    .tag("messageType", messageType)
+                    .register(registry);
+            counter(registry, "jcml.decode.bytes", "Blob bytes seen", bytes, "bytes");
+            counter(registry, "jcml.decode.allocated.bytes", "Heap bytes allocated by decoding", allocatedBytes, "bytes");
+            counter(registry, "jcml.decode.leftover.bytes", "Bytes left after the last schema field", leftoverBytes, "bytes");
+            counter(registry, "jcml.decode.underflows", "Blobs shorter than their schema", underflows, null);
+            counter(registry, "jcml.decode.schema.misses", "Messages without a schema", schemaMisses, null);
+            for (int i = 0; i < leftoverHistogram.length; i++) {
+                FunctionCounter.builder("jcml.decode.leftover", leftoverHistogram[i], LongAdder::sum)
+                        .description("Decoded messages by bytes left after the last schema field")
+                        .tag("messageType", messageType)
+                        .tag("leftover", LEFTOVER_LABELS[i])
+                        .register(registry);
+            }
+        }
+
+        private void counter(MeterRegistry registry, String name, String description, LongAdder adder,
+                             String baseUnit) {
+            FunctionCounter.builder(name, adder, LongAdder::sum)
+                    .description(description)
+                    .baseUnit(baseUnit)
+                    .tag("messageType", messageType)
+                    .register(registry);
+        }
+
+        private TypeSnapshot snapshot() {
+            final long decoded = count.sum();
+            final Map<String, Long> histogram = new LinkedHashMap<>();
+            long withLeftover = 0;
+            for (int i = 0; i < leftoverHistogram.length; i++) {
+                final long n = leftoverHistogram[i].sum();
+                histogram.put(LEFTOVER_LABELS[i], n);
+                if (i > 0) withLeftover += n;
+            }
+            final long underflowCount = underflows.sum();
+            final long samples = allocationSamples.sum();
+            final long sized = sizeSamples.sum();
+            return new TypeSnapshot(messageType, decoded, bytes.sum(),
+                    decoded == 0 ? 0 : nanos.sum() / decoded / 1000.0,
+                    samples == 0 ? -1 : allocatedBytes.sum() / samples,
+                    sized == 0 ? -1 : sizedBytes.sum() / sized,
+                    withLeftover, leftoverBytes.sum(), maxLeftover.get(), histogram,
+                    underflowCount, schemaMisses.sum(), withLeftover > 0 || underflowCount > 0);
+        }
+    } // class TypeStats
+
+    /**
+     * Statistics of one message type as served by {@code GET /schemas/stats}.
+     *
+     * @param meanAllocatedBytes heap bytes allocated per decoded message, {@code -1} if not measured
+     * @param meanSizedBytes     estimated heap of a sampled decoded message where the allocation
+     *                           was not measured, {@code -1} if none was sized
+     * @param withLeftover       messages that did not end at the last schema field
+     * @param suspect            leftover bytes or underflows were seen — the schema probably does not match
+     */
+    @Serdeable
+    public record TypeSnapshot(String messageType, long decoded, long bytes, double meanDecodeMicros,
+                               long meanAllocatedBytes, long meanSizedBytes,
+                               long withLeftover, long leftoverBytes, long maxLeftover,
+                               Map<String, Long> leftoverHistogram, long underflows, long schemaMisses,
+                               boolean suspect) {
+    }
+} // class DecodeStats
@@ -0,0 +1,80 @@
+package sk.concentra.jcml.deserializer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import sk.concentra.jcml.pipeline.ReportRecord;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Rough retained heap of a decoded message: object headers, references and payload of the
+ * JSON nodes, maps, lists, strings and boxed values it is made of (64-bit JVM, compressed
+ * references). {@link DecodeStats} learns from it where the allocation of the decoding
+ * thread cannot be measured, e.g. on virtual threads.
+ *
+ * <p>Field names are schema constants shared by all messages and are not counted; decoded
+ * strings are counted as if unshared, so the estimate errs on the high side.</p>
+ */
+final class HeapEstimate {
+
+    static final long OBJECT = 16;
+    private static final long REFERENCE = 4;
+    private static final long ARRAY = 16;
+    /** {@code LinkedHashMap} / {@code HashMap} with its table, before any entry. */
+    static final long MAP = 64;
+    /** One {@code LinkedHashMap.Entry} plus its table slot. */
+    private static final long MAP_ENTRY = 40 + REFERENCE;
+    /** {@code ArrayList} / {@code ArrayNode} with its backing array, before any element. */
+    private static final long LIST = 40;
+    /** {@code String} with its {@code byte[]}, before any character. */
+    private static final long STRING = 24 + ARRAY;
+    /** A {@link ReportRecord} with its metadata and header, before its fields. */
+    private static final long RECORD = 48 + OBJECT + ARRAY + 6 * Integer.BYTES;
+    /** A pending field of a {@link LazyFieldMap}: map entry, offset record and table slot. */
+    static final long PENDING_FIELD = MAP_ENTRY + OBJECT + 8;
+
+    private HeapEstimate() {
+    }
+
+    static long of(Object value) {
+        return switch (value) {
+            case null -> 0;
+            case String s -> string(s);
+            case ObjectNode node -> OBJECT + MAP + entries(node.properties());
+            case ArrayNode node -> {
+                long bytes = OBJECT + LIST + node.size() * REFERENCE;
+                for (JsonNode element : node) bytes += of(element);
+                yield bytes;
+            }
+            case JsonNode node when node.isTextual() -> OBJECT + string(node.textValue());
+            case JsonNode node -> OBJECT + 8;
+            case ReportRecord record -> RECORD + of(record.fields());
+            case Map<?, ?> map -> MAP + entries(map.entrySet());
+            case Collection<?> list -> {
+                long bytes = LIST + list.size() * REFERENCE;
+                for (Object element : list) bytes += of(element);
+                yield bytes;
+            }
+            case int[] array -> ARRAY + (long) array.length * Integer.BYTES;
+            case long[] array -> ARRAY + (long) array.length * Long.BYTES;
+            case byte[] array -> ARRAY + array.length;
+            default -> OBJECT + 8; // boxed numbers and booleans
+        };
+    }
+
+    /** The map entries of {@code entries}, with their values. */
+    static long entries(Collection<? extends Map.Entry<?, ?>> entries) {
+        long bytes = 0;
+        for (Map.Entry<?, ?> entry : entries) {
+            bytes += MAP_ENTRY + of(entry.getValue());
+        }
+        return bytes;
+    }
+
+    private static long string(String s) {
+        // Latin-1 strings take a byte per character, others two
+        return STRING + (s.chars().allMatch(c -> c < 256) ? s.length() : 2L * s.length());
+    }
+} // class HeapEstimate
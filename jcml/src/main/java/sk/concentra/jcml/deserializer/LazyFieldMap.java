@@ -0,0 +1,132 @@
+package sk.concentra.jcml.deserializer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import sk.concentra.jcml.schema.MessageSchema.FieldDefinition;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Children map of a lazily decoded message {@link com.fasterxml.jackson.databind.node.ObjectNode}.
+ *
+ * <p>The deserializer registers every schema field with its byte offset in the raw blob
+ * after a single scan; the value is decoded the first time the field is read through
+ * {@code get()} / {@code path()}. Key order is the schema order, exactly as with eager
+ * decoding. Whole-node operations ({@code deepCopy()}, iteration, serialization)
+ * materialize all remaining fields first. Once nothing is pending the blob reference
+ * is released.</p>
+ *
+ * <p>Access is synchronized: steps that only read the items may run concurrently on
+ * the same nodes.</p>
+ */
+final class LazyFieldMap extends AbstractMap<String, JsonNode> {
+
+    /** Decodes one field starting at {@code offset} in the blob. */
+    @FunctionalInterface
+    interface FieldDecoder {
+        JsonNode decode(FieldDefinition field, int offset);
+    }
+
+    private record PendingField(FieldDefinition field, int offset) {}
+
+    // Pending fields are kept as null values so that the key keeps its schema position.
+    private final LinkedHashMap<String, JsonNode> entries = new LinkedHashMap<>();
+    private Map<String, PendingField> pending = new HashMap<>();
+    private FieldDecoder decoder;
+
+    synchronized void attach(FieldDecoder decoder) {
+        if (pending == null || pending.isEmpty()) {
+            release();
+        } else {
+            this.decoder = decoder;
+        }
+    }
+
+    synchronized void addPending(FieldDefinition field, int offset) {
+        entries.put(field.name(), null);
+        pending.put(field.name(), new PendingField(field, offset));
+    }
+
+    @Override
+    public synchronized JsonNode get(Object key) {
+        final JsonNode value = entries.get(key);
+        if (value != null || pending == null) return value;
+        return resolve(key);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    /** Overwriting a field that was never read does not decode it; {@code null} is returned then. */
+    @Override
+    public synchronized JsonNode put(String key, JsonNode value) {
+        if (pending != null && pending.remove(key) != null && pending.isEmpty()) release();
+        return entries.put(key, value);
+    }
+
+    @Override
+    public synchronized JsonNode remove(Object key) {
+        final JsonNode previous = resolve(key);
+        entries.remove(key);
+        return previous;
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        release();
+    }
+
+    @Override
+    public synchronized Set<Entry<String, JsonNode>> entrySet() {
+        materializeAll();
+        return entries.entrySet();
+    }
+
+    /**
+     * Estimated heap of the map ({@link HeapEstimate}): the decoded fields, the pending ones and,
+     * while any is pending, the blob they are decoded from.
+     */
+    synchronized long estimatedHeapBytes(int blobLength) {
+        final int pendingFields = pending != null ? pending.size() : 0;
+        return HeapEstimate.MAP + HeapEstimate.entries(entries.entrySet())
+                + (pendingFields > 0 ? HeapEstimate.MAP + pendingFields * HeapEstimate.PENDING_FIELD + blobLength : 0);
+    }
+
+    private JsonNode resolve(Object key) {
+        if (pending == null) return entries.get(key);
+        final PendingField field = pending.remove(key);
+        if (field == null) return entries.get(key);
+        final JsonNode value = decoder.decode(field.field(), field.offset());
+        entries.put(field.field().name(), value);
+        if (pending.isEmpty()) release();
+        return value;
+    }
+
+    private void materializeAll() {
+        if (pending == null) return;
+        for (String name : pending.keySet().toArray(String[]::new)) {
+            resolve(name);
+        }
+    }
+
+    private void release() {
+        pending = null;
+        decoder = null;
+    }
+} // class LazyFieldMap
@@ -0,0 +1,48 @@
+package sk.concentra.jcml.deserializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bounded, direct-mapped cache of decoded ASCII strings for schema fields marked
+ * {@code "dedupe": true} (host, domain and user names repeated in every {@code ADD}
+ * header).
+ *
+ * <p>Each slot holds one string; a colliding string simply replaces it, so the cache never
+ * grows beyond {@link #SLOTS} entries and needs no eviction. Lookups compare the raw bytes
+ * against the cached Latin-1 string, so a hit allocates nothing. Slots are read and
+ * written without locking: Strings are immutable, and a lost update only costs a
+ * duplicate.</p>
+ */
+final class StringDeduplicator {
+
+    private static final int SLOTS = 4096;          // power of two
+    private static final int MAX_LENGTH = 64;       // longer strings are rarely repeated
+
+    private final String[] slots = new String[SLOTS];
+
+    /**
+     * Returns a string equal to {@code bytes[offset, offset + length)} decoded as Latin-1,
+     * reusing a cached instance when possible. Callers pass ASCII bytes only.
+     */
+    String dedupe(byte[] bytes, int offset, int length, int hash) {
+        if (length > MAX_LENGTH) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        final int slot = (hash ^ (hash >>> 16)) & (SLOTS - 1);
+        final String cached = slots[slot];
+        if (cached != null && matches(cached, bytes, offset, length)) {
+            return cached;
+        }
+        final String value = new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        slots[slot] = value;
+        return value;
+    }
+
+    private static boolean matches(String cached, byte[] bytes, int offset, int length) {
+        if (cached.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != bytes[offset + i]) return false;
+        }
+        return true;
+    }
+} // class StringDeduplicator
@@ -0,0 +1,101 @@
+package sk.concentra.jcml.deserializer;
+
+import sk.concentra.jcml.schema.MessageSchema;
+import sk.concentra.jcml.schema.MessageSchema.FieldDefinition;
+import sk.concentra.jcml.schema.SchemaSet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Synthetic {@code Config_Message_Log} blobs built from the schemas, for the startup
+ * warm-up: the 6-integer header followed by every schema field in the layout
+ * {@link BinaryMessageDeserializer} reads — little-endian numbers, length-prefixed
+ * NUL-terminated strings with their padding, nested objects inline and
+ * {@link #ARRAY_ELEMENTS} elements per trailing array. Values vary with {@code seed}, so
+ * string deduplication and the pipeline's lookups see more than one value.
+ */
+public final class SyntheticMessages {
+
+    static final int ARRAY_ELEMENTS = 3;
+
+    private SyntheticMessages() {
+    }
+
+    /** Message types of {@code schemas} that are not only nested in other schemas. */
+    public static List<String> messageTypes(SchemaSet schemas) {
+        final Set<String> nested = new HashSet<>();
+        for (MessageSchema schema : schemas.schemas().values()) {
+            for (FieldDefinition field : schema.fields()) {
+                if (field.nestedSchema() != null) nested.add(field.nestedSchema());
+            }
+        }
+        return schemas.schemas().keySet().stream()
+                .filter(type -> !nested.contains(type))
+                .sorted()
+                .toList();
+    }
+
+    /** A blob of {@code messageType} that decodes completely against {@code schemas}. */
+    public static byte[] blob(String messageType, SchemaSet schemas, int seed) {
+        final Writer out = new Writer();
+        for (int i = 0; i < 6; i++) {
+            out.putInt(seed + i);
+        }
+        writeFields(out, schemas.getSchema(messageType).fields(), schemas, seed);
+        return out.toByteArray();
+    }
+
+    private static void writeFields(Writer out, List<FieldDefinition> fields, SchemaSet schemas, int seed) {
+        for (FieldDefinition field : fields) {
+            final int count = field.isArray() ? ARRAY_ELEMENTS : 1;
+            for (int i = 0; i < count; i++) {
+                writeValue(out, field, schemas, seed + i);
+            }
+        }
+    }
+
+    private static void writeValue(Writer out, FieldDefinition field, SchemaSet schemas, int seed) {
+        switch (field.type()) {
+            case BYTE -> out.write(seed & 0x7F);
+            case CHAR -> out.write('A' + Math.floorMod(seed, 26));
+            case SHORT -> out.putShort(seed & 0x7FFF);
+            case INTEGER -> out.putInt(seed);
+            case FLOAT -> out.putInt(Float.floatToIntBits(seed / 4f));
+            case LONG -> out.putLong(seed);
+            case DOUBLE -> out.putLong(Double.doubleToLongBits(seed / 4d));
+            case STRING -> {
+                final byte[] text = (field.name() + "-" + seed).getBytes(StandardCharsets.US_ASCII);
+                out.putShort(text.length);
+                out.write(text, 0, text.length);
+                out.write(0);
+                final int padding = BinaryMessageDeserializer.calculatePadding(text.length + 1, field.stringPadding());
+                for (int i = 0; i < padding; i++) {
+                    out.write(0);
+                }
+            }
+            case OBJECT -> writeFields(out, schemas.getSchema(field.nestedSchema()).fields(), schemas, seed);
+        }
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        void putShort(int value) {
+            write(value);
+            write(value >>> 8);
+        }
+
+        void putInt(int value) {
+            putShort(value);
+            putShort(value >>> 16);
+        }
+
+        void putLong(long value) {
+            putInt((int) value);
+            putInt((int) (value >>> 32));
+        }
+    }
+} // class SyntheticMessages
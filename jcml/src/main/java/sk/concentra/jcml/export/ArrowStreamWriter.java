@@ -0,0 +1,393 @@
+package sk.concentra.jcml.export;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Encodes items as an <a href="https://arrow.apache.org/docs/format/Columnar.html#ipc-streaming-format">Arrow
+ * IPC stream</a>: one schema message, one record batch message per slice of items, and the
+ * end-of-stream marker. Readable by {@code pyarrow.ipc.open_stream}, pandas, DuckDB and Polars.
+ *
+ * <p>Only what the report export needs is implemented — nullable {@code Utf8},
+ * {@code Float64} and {@code Timestamp(MILLISECOND, tz)} columns, uncompressed bodies, no
+ * dictionaries — so the message metadata is written with a small built-in FlatBuffers
+ * builder instead of pulling in the Arrow Java libraries and their off-heap allocator.</p>
+ *
+ * @param <T> item type; each {@link ExportColumn} extracts one value per item
+ */
+public final class ArrowStreamWriter<T> {
+
+    public static final String MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    // Arrow format constants (Schema.fbs / Message.fbs)
+    private static final short METADATA_V5        = 4;
+    private static final byte  HEADER_SCHEMA       = 1;
+    private static final byte  HEADER_RECORD_BATCH = 3;
+    private static final byte  TYPE_FLOATING_POINT = 3;
+    private static final byte  TYPE_UTF8           = 5;
+    private static final byte  TYPE_TIMESTAMP      = 10;
+    private static final short PRECISION_DOUBLE    = 2;
+    private static final short UNIT_MILLISECOND    = 1;
+    private static final int   CONTINUATION        = 0xFFFFFFFF;
+
+    private final List<ExportColumn<T>> columns;
+    private final String timezone;
+
+    /**
+     * @param timezone zone of the timestamp columns as Arrow expects it ({@code "UTC"}, {@code "+01:00"})
+     */
+    public ArrowStreamWriter(List<ExportColumn<T>> columns, String timezone) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Arrow stream needs at least one column");
+        }
+        this.columns = List.copyOf(columns);
+        this.timezone = timezone;
+    }
+
+    /**
+     * The complete stream for {@code items}, lazily: each record batch of at most
+     * {@code batchSize} items is encoded only when the stream reaches it.
+     */
+    public Stream<byte[]> stream(List<T> items, int batchSize) {
+        final int size = Math.max(1, batchSize);
+        final int batches = (items.size() + size - 1) / size;
+        return IntStream.rangeClosed(-1, batches).mapToObj(i -> {
+            if (i < 0) return schema();
+            if (i == batches) return endOfStream();
+            return recordBatch(items.subList(i * size, Math.min(items.size(), (i + 1) * size)));
+        });
+    }
+
+    /** Encapsulated schema message — the first message of the stream. */
+    public byte[] schema() {
+        final FlatBufferBuilder fb = new FlatBufferBuilder();
+        final int[] fields = new int[columns.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = field(fb, columns.get(i));
+        }
+        final int fieldVector = fb.offsetVector(fields);
+        fb.startTable(4);                       // Schema
+        fb.addOffset(1, fieldVector);           //   fields (endianness 0 = Little is the default)
+        final int schema = fb.endTable();
+        return message(fb, HEADER_SCHEMA, schema, new byte[0]);
+    }
+
+    /** Encapsulated record batch message holding {@code items}. */
+    public byte[] recordBatch(List<T> items) {
+        final int n = items.size();
+        final List<byte[]> buffers = new ArrayList<>(columns.size() * 3);
+        final long[] nullCounts = new long[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            final ExportColumn<T> column = columns.get(c);
+            final byte[] validity = new byte[(n + 7) / 8];
+            final Object[] values = new Object[n];
+            for (int row = 0; row < n; row++) {
+                final Object value = column.value().apply(items.get(row));
+                if (value == null) {
+                    nullCounts[c]++;
+                } else {
+                    values[row] = value;
+                    validity[row >> 3] |= (byte) (1 << (row & 7));
+                }
+            }
+            buffers.add(validity);
+            switch (column.type()) {
+                case UTF8 -> {
+                    final ByteBuffer offsets = le(4 * (n + 1));
+                    final byte[][] encoded = new byte[n][];
+                    int length = 0;
+                    offsets.putInt(0);
+                    for (int row = 0; row < n; row++) {
+                        encoded[row] = values[row] == null ? new byte[0]
+                                : values[row].toString().getBytes(StandardCharsets.UTF_8);
+                        length = Math.addExact(length, encoded[row].length);
+                        offsets.putInt(length);
+                    }
+                    final byte[] data = new byte[length];
+                    int position = 0;
+                    for (byte[] bytes : encoded) {
+                        System.arraycopy(bytes, 0, data, position, bytes.length);
+                        position += bytes.length;
+                    }
+                    buffers.add(offsets.array());
+                    buffers.add(data);
+                }
+                case FLOAT64 -> {
+                    final ByteBuffer data = le(8 * n);
+                    for (Object value : values) data.putDouble(value == null ? 0 : ((Number) value).doubleValue());
+                    buffers.add(data.array());
+                }
+                case TIMESTAMP_MILLIS -> {
+                    final ByteBuffer data = le(8 * n);
+                    for (Object value : values) data.putLong(value == null ? 0 : ((Number) value).longValue());
+                    buffers.add(data.array());
+                }
+            }
+        }
+
+        // Body: buffers back to back, each padded to 8 bytes
+        final long[] bufferOffsets = new long[buffers.size()];
+        long bodyLength = 0;
+        for (int b = 0; b < buffers.size(); b++) {
+            bufferOffsets[b] = bodyLength;
+            bodyLength += align8(buffers.get(b).length);
+        }
+        final byte[] body = new byte[Math.toIntExact(bodyLength)];
+        for (int b = 0; b < buffers.size(); b++) {
+            System.arraycopy(buffers.get(b), 0, body, (int) bufferOffsets[b], buffers.get(b).length);
+        }
+
+        final FlatBufferBuilder fb = new FlatBufferBuilder();
+        fb.startStructVector(columns.size());
+        for (int c = columns.size() - 1; c >= 0; c--) {
+            fb.struct(n, nullCounts[c]);        // FieldNode { length, null_count }
+        }
+        final int nodes = fb.endVector(columns.size());
+        fb.startStructVector(buffers.size());
+        for (int b = buffers.size() - 1; b >= 0; b--) {
+            fb.struct(bufferOffsets[b], buffers.get(b).length); // Buffer { offset, length }
+        }
+        final int bufferVector = fb.endVector(buffers.size());
+        fb.startTable(5);                       // RecordBatch
+        fb.addLong(0, n);                       //   length
+        fb.addOffset(1, nodes);                 //   nodes
+        fb.addOffset(2, bufferVector);          //   buffers
+        final int batch = fb.endTable();
+        return message(fb, HEADER_RECORD_BATCH, batch, body);
+    }
+
+    /** End-of-stream marker: continuation token followed by a zero metadata length. */
+    public static byte[] endOfStream() {
+        return le(8).putInt(CONTINUATION).putInt(0).array();
+    }
+
+    // ── Messages ─────────────────────────────────────────────────────────────
+
+    private int field(FlatBufferBuilder fb, ExportColumn<T> column) {
+        final int name = fb.string(column.name());
+        final int type;
+        final byte typeType;
+        switch (column.type()) {
+            case UTF8 -> {
+                fb.startTable(0);
+                type = fb.endTable();
+                typeType = TYPE_UTF8;
+            }
+            case FLOAT64 -> {
+                fb.startTable(1);
+                fb.addShort(0, PRECISION_DOUBLE);
+                type = fb.endTable();
+                typeType = TYPE_FLOATING_POINT;
+            }
+            case TIMESTAMP_MILLIS -> {
+                final int zone = fb.string(timezone);
+                fb.startTable(2);
+                fb.addShort(0, UNIT_MILLISECOND);
+                fb.addOffset(1, zone);
+                type = fb.endTable();
+                typeType = TYPE_TIMESTAMP;
+            }
+            default -> throw new IllegalStateException("Unsupported Arrow column type " + column.type());
+        }
+        final int children = fb.offsetVector(new int[0]); // readers reject a missing children vector
+        fb.startTable(7);                       // Field
+        fb.addOffset(0, name);
+        fb.addBoolean(1, true);                 //   nullable
+        fb.addByte(2, typeType);
+        fb.addOffset(3, type);
+        fb.addOffset(5, children);
+        return fb.endTable();
+    }
+
+    /** Message table around {@code header}, encapsulated with its body. */
+    private static byte[] message(FlatBufferBuilder fb, byte headerType, int header, byte[] body) {
+        fb.startTable(5);                       // Message
+        fb.addShort(0, METADATA_V5);
+        fb.addByte(1, headerType);
+        fb.addOffset(2, header);
+        fb.addLong(3, body.length);
+        final byte[] metadata = fb.finish(fb.endTable());
+
+        final int metadataLength = align8(metadata.length);
+        final ByteBuffer out = le(8 + metadataLength + body.length);
+        out.putInt(CONTINUATION).putInt(metadataLength).put(metadata);
+        out.position(8 + metadataLength);
+        out.put(body);
+        return out.array();
+    }
+
+    private static int align8(int length) {
+        return (length + 7) & ~7;
+    }
+
+    private static ByteBuffer le(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // ── FlatBuffers ──────────────────────────────────────────────────────────
+
+    /**
+     * Minimal FlatBuffers builder (same algorithm as the reference implementation): the
+     * buffer is filled back to front, so children are written before the tables that
+     * reference them, and offsets are counted from the end of the buffer.
+     */
+    private static final class FlatBufferBuilder {
+        private byte[] buf = new byte[256];
+        private int space = buf.length;
+        private int minAlign = 1;
+        private int[] vtable;
+        private int objectStart;
+
+        int offset() {
+            return buf.length - space;
+        }
+
+        // ── Low level ──
+
+        private void ensure(int bytes) {
+            while (space < bytes) {
+                final int used = buf.length;
+                final byte[] grown = new byte[used * 2];
+                System.arraycopy(buf, 0, grown, used, used);
+                buf = grown;
+                space += used;
+            }
+        }
+
+        /** Pads so that after writing {@code additional} bytes the offset is aligned to {@code size}. */
+        private void prep(int size, int additional) {
+            minAlign = Math.max(minAlign, size);
+            final int padding = -(offset() + additional) & (size - 1);
+            ensure(padding + size + additional);
+            for (int i = 0; i < padding; i++) buf[--space] = 0;
+        }
+
+        private void putByte(byte value) {
+            ensure(1);
+            buf[--space] = value;
+        }
+
+        private void putShort(short value) {
+            ensure(2);
+            space -= 2;
+            ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).putShort(space, value);
+        }
+
+        private void putInt(int value) {
+            ensure(4);
+            space -= 4;
+            ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).putInt(space, value);
+        }
+
+        private void putLong(long value) {
+            ensure(8);
+            space -= 8;
+            ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).putLong(space, value);
+        }
+
+        private void putOffset(int target) {
+            prep(4, 0);
+            putInt(offset() - target + 4);
+        }
+
+        // ── Strings and vectors ──
+
+        int string(String value) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            prep(4, bytes.length + 1);
+            putByte((byte) 0);
+            ensure(bytes.length);
+            space -= bytes.length;
+            System.arraycopy(bytes, 0, buf, space, bytes.length);
+            putInt(bytes.length);
+            return offset();
+        }
+
+        int offsetVector(int[] offsets) {
+            prep(4, 4 * offsets.length);
+            for (int i = offsets.length - 1; i >= 0; i--) {
+                putOffset(offsets[i]);
+            }
+            return endVector(offsets.length);
+        }
+
+        /** Starts a vector of {@code count} 16-byte structs of two longs, written with {@link #struct}. */
+        void startStructVector(int count) {
+            prep(4, 16 * count);
+            prep(8, 16 * count);
+        }
+
+        /** Appends a struct {@code { long first; long second; }} — elements go last to first. */
+        void struct(long first, long second) {
+            prep(8, 16);
+            putLong(second);
+            putLong(first);
+        }
+
+        int endVector(int count) {
+            putInt(count);
+            return offset();
+        }
+
+        // ── Tables ──
+
+        void startTable(int fields) {
+            vtable = new int[fields];
+            objectStart = offset();
+        }
+
+        void addByte(int slot, byte value) {
+            putByte(value);
+            vtable[slot] = offset();
+        }
+
+        void addBoolean(int slot, boolean value) {
+            addByte(slot, (byte) (value ? 1 : 0));
+        }
+
+        void addShort(int slot, short value) {
+            prep(2, 0);
+            putShort(value);
+            vtable[slot] = offset();
+        }
+
+        void addLong(int slot, long value) {
+            prep(8, 0);
+            putLong(value);
+            vtable[slot] = offset();
+        }
+
+        void addOffset(int slot, int target) {
+            putOffset(target);
+            vtable[slot] = offset();
+        }
+
+        int endTable() {
+            prep(4, 0);
+            putInt(0);                          // soffset to the vtable, patched below
+            final int table = offset();
+            int fields = vtable.length;
+            while (fields > 0 && vtable[fields - 1] == 0) fields--;
+            for (int i = fields - 1; i >= 0; i--) {
+                putShort((short) (vtable[i] == 0 ? 0 : table - vtable[i]));
+            }
+            putShort((short) (table - objectStart));
+            putShort((short) ((fields + 2) * 2));
+            ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN).putInt(buf.length - table, offset() - table);
+            vtable = null;
+            return table;
+        }
+
+        byte[] finish(int root) {
+            prep(minAlign, 4);
+            putOffset(root);
+            return Arrays.copyOfRange(buf, space, buf.length);
+        }
+    }
+} // class ArrowStreamWriter
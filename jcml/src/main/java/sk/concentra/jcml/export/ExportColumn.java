@@ -0,0 +1,15 @@
+package sk.concentra.jcml.export;
+
+import java.util.function.Function;
+
+/**
+ * One column of an export file: a name, a type and how to get the value from an item.
+ * {@code value} returns {@code null} for an empty cell.
+ *
+ * @param <T> item type ({@code ReportRecord} or {@code ObjectNode})
+ */
+public record ExportColumn<T>(String name, Type type, Function<T, Object> value) {
+
+    /** Column types; values are {@code String}, {@code Number} and epoch millis ({@code Number}). */
+    public enum Type { UTF8, FLOAT64, TIMESTAMP_MILLIS }
+}
@@ -0,0 +1,86 @@
+package sk.concentra.jcml.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes items as a gzip-compressed CSV file (RFC 4180: comma separated, CRLF, fields
+ * quoted when they contain a quote, comma or line break), header row first.
+ *
+ * <p>Timestamps are written as ISO-8601 with the given offset, {@code float64} values in
+ * plain notation ({@code 123456789}, not {@code 1.23456789E8}), nulls as empty fields.</p>
+ *
+ * @param <T> item type; each {@link ExportColumn} extracts one value per item
+ */
+public final class GzipCsvWriter<T> {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+    private final List<ExportColumn<T>> columns;
+    private final ZoneOffset offset;
+
+    public GzipCsvWriter(List<ExportColumn<T>> columns, ZoneOffset offset) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("CSV file needs at least one column");
+        }
+        this.columns = List.copyOf(columns);
+        this.offset = offset;
+    }
+
+    /** Writes {@code items} to {@code file}, replacing it. */
+    public void write(Path file, List<T> items) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024), StandardCharsets.UTF_8), 64 * 1024)) {
+            for (int c = 0; c < columns.size(); c++) {
+                if (c > 0) out.write(',');
+                writeField(out, columns.get(c).name());
+            }
+            out.write("\r\n");
+            for (T item : items) {
+                for (int c = 0; c < columns.size(); c++) {
+                    if (c > 0) out.write(',');
+                    final ExportColumn<T> column = columns.get(c);
+                    final Object value = column.value().apply(item);
+                    if (value != null) writeField(out, format(column.type(), value));
+                }
+                out.write("\r\n");
+            }
+        }
+    }
+
+    private String format(ExportColumn.Type type, Object value) {
+        return switch (type) {
+            case UTF8 -> value.toString();
+            case FLOAT64 -> BigDecimal.valueOf(((Number) value).doubleValue()).stripTrailingZeros().toPlainString();
+            case TIMESTAMP_MILLIS -> OffsetDateTime.ofInstant(
+                    Instant.ofEpochMilli(((Number) value).longValue()), offset).format(TIMESTAMP_FORMAT);
+        };
+    }
+
+    private static void writeField(Writer out, String text) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            final char ch = text.charAt(i);
+            quote = ch == '"' || ch == ',' || ch == '\n' || ch == '\r';
+        }
+        if (!quote) {
+            out.write(text);
+            return;
+        }
+        out.write('"');
+        out.write(text.replace("\"", "\"\""));
+        out.write('"');
+    }
+} // class GzipCsvWriter
@@ -4,8 +4,12 @@ import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
 
+import java.util.Collection;
+import java.util.List;
+
 @JdbcRepository(dialect = Dialect.SQL_SERVER)
 public interface AgentRepository extends CrudRepository<Agent, Integer> {
     Agent getBySkillTargetId(Integer skillTargetId);
+    List<Agent> findBySkillTargetIdIn(Collection<Integer> skillTargetIds);
     Agent getByPeripheralNumber(String peripheralNumber);
 } // class
@@ -4,8 +4,12 @@ import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
 
+import java.util.Collection;
+import java.util.List;
+
 @JdbcRepository(dialect = Dialect.SQL_SERVER)
 public interface CampaignRepository extends CrudRepository<Campaign, Integer> {
     Campaign getByCampaignId(Integer campaignId);
+    List<Campaign> findByCampaignIdIn(Collection<Integer> campaignIds);
     Campaign getByCampaignName(String campaignName);
 }
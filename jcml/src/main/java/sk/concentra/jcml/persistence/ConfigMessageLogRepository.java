@@ -1,5 +1,6 @@
 package sk.concentra.jcml.persistence;
 
+import io.micronaut.data.annotation.Query;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
@@ -20,4 +21,27 @@ public interface ConfigMessageLogRepository extends CrudRepository<ConfigMessage
             LocalDateTime dateFrom, LocalDateTime dateTo, Pageable pageable);
 
     List<ConfigMessageLog> findAllByRecoveryKeyBetweenOrderByRecoveryKeyAsc(Double startRecoveryKey, Double endRecoveryKey);
+
+    // Pre-flight size of a date range per message type (admission control) — no blobs are read
+    @Query(value = """
+            SELECT LogOperation, TableName, COUNT_BIG(*) AS Messages,
+                   COALESCE(SUM(CAST(DATALENGTH(ConfigMessage) AS BIGINT)), 0) AS Bytes
+            FROM Config_Message_Log
+            WHERE DateTime BETWEEN :startDateTime AND :endDateTime
+            GROUP BY LogOperation, TableName""", nativeQuery = true)
+    List<ConfigMessageLogSize> sizeByDateTimeBetween(LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+    // Keyset-paged scan of a date range (export jobs): [start, end) partitions, the last one [start, end]
+    List<ConfigMessageLog> findAllByDateTimeGreaterThanEqualsAndDateTimeLessThanAndRecoveryKeyGreaterThanOrderByRecoveryKeyAsc(
+            LocalDateTime startDateTime, LocalDateTime endDateTime, Double recoveryKey, Pageable pageable);
+
+    List<ConfigMessageLog> findAllByDateTimeBetweenAndRecoveryKeyGreaterThanOrderByRecoveryKeyAsc(
+            LocalDateTime startDateTime, LocalDateTime endDateTime, Double recoveryKey, Pageable pageable);
+
+    // Keyset-paged sampling of one message type, newest first (schema inference)
+    List<ConfigMessageLog> findAllByLogOperationAndTableNameAndRecoveryKeyLessThanOrderByRecoveryKeyDesc(
+            String logOperation, String tableName, Double recoveryKey, Pageable pageable);
+
+    List<ConfigMessageLog> findAllByLogOperationAndTableNameIsNullAndRecoveryKeyLessThanOrderByRecoveryKeyDesc(
+            String logOperation, Double recoveryKey, Pageable pageable);
 } // class
@@ -0,0 +1,17 @@
+package sk.concentra.jcml.persistence;
+
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.annotation.MappedProperty;
+
+/**
+ * Row count and blob bytes of one {@code (LogOperation, TableName)} pair in a date range —
+ * the pre-flight size of a report, see {@link ConfigMessageLogRepository#sizeByDateTimeBetween}.
+ */
+@Introspected
+public record ConfigMessageLogSize(
+        @Nullable @MappedProperty("LogOperation") String logOperation,
+        @Nullable @MappedProperty("TableName") String tableName,
+        @MappedProperty("Messages") long messages,
+        @MappedProperty("Bytes") long bytes) {
+} // record ConfigMessageLogSize
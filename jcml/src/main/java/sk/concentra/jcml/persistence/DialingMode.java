@@ -10,9 +10,9 @@ import java.util.StringJoiner;
  * Not backed by a database table — values are hardcoded in
  * {@link DialingModeRepository}.
  *
- * <p>{@code @Id} is kept so that {@code EntityPreloadAction.findIdField()}
- * can locate the key field via reflection for map indexing. It does NOT
- * imply any database mapping.</p>
+ * <p>{@code @Id} is kept so that {@code PipelineRegistry} can locate the
+ * key property in the bean introspection {@code @Serdeable} generates, for
+ * map indexing. It does NOT imply any database mapping.</p>
  */
 @Serdeable
 public class DialingMode {
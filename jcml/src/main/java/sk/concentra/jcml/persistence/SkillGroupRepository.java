@@ -4,7 +4,11 @@ import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
 
+import java.util.Collection;
+import java.util.List;
+
 @JdbcRepository(dialect = Dialect.SQL_SERVER)
 public interface SkillGroupRepository extends CrudRepository<SkillGroup, Integer> {
     SkillGroup getBySkillTargetId(Integer skillTargetId);
+    List<SkillGroup> findBySkillTargetIdIn(Collection<Integer> skillTargetIds);
 }
@@ -0,0 +1,93 @@
+package sk.concentra.jcml.persistence;
+
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.core.order.Ordered;
+import jakarta.inject.Singleton;
+import sk.concentra.jcml.util.Cancellation;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+/**
+ * Wraps every {@link DataSource} bean so that statements created for a cancellable report
+ * request are registered with its {@link Cancellation} — a disconnect or deadline then calls
+ * {@link Statement#cancel()} and SQL Server stops the query instead of streaming rows nobody
+ * reads. Covers Micronaut Data repositories and the raw JDBC of
+ * {@code NativeSqlPreloadAction} alike.
+ *
+ * <p>Only connections obtained while a token is bound to the thread are wrapped; export jobs,
+ * warm-up and startup queries get the pool's connections untouched. Runs first, so Micronaut
+ * Data's own contextual wrapper ends up outside this one and still unwraps to it.</p>
+ */
+@Singleton
+public class StatementCancellingDataSource implements BeanCreatedEventListener<DataSource>, Ordered {
+
+    @Override
+    public DataSource onCreated(BeanCreatedEvent<DataSource> event) {
+        return new Tracking(event.getBean());
+    }
+
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+
+    private record Tracking(DataSource target) implements DataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return track(target.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return track(target.getConnection(username, password));
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return target.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            target.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            target.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return target.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return target.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> type) throws SQLException {
+            return type.isInstance(this) ? type.cast(this) : target.unwrap(type);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> type) throws SQLException {
+            return type.isInstance(this) || target.isWrapperFor(type);
+        }
+
+        /** {@code connection}, registering the statements it creates, while a request token is bound. */
+        private static Connection track(Connection connection) {
+            return Cancellation.current() == null ? connection : new TrackingConnection(connection);
+        }
+    }
+} // class StatementCancellingDataSource
@@ -0,0 +1,15 @@
+package sk.concentra.jcml.pipeline;
+
+import java.util.Map;
+
+/**
+ * Columnar counterpart of {@link RecordStep}: the same step operating on a
+ * {@link RecordBatch}, typically by narrowing or reordering its selection vector.
+ * Must produce the same records, in the same order, as the typed step.
+ */
+@FunctionalInterface
+public interface BatchStep {
+    RecordBatch process(RecordBatch input,
+                        Map<String, Object> globalContext,
+                        Map<String, Object> sessionContext);
+}
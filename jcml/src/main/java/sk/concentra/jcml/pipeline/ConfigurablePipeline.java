@@ -1,26 +1,42 @@
 package sk.concentra.jcml.pipeline;
 
-import io.micronaut.context.ApplicationContext;
 import io.micronaut.context.annotation.ConfigurationProperties;
 import io.micronaut.context.annotation.Requires;
 import io.micronaut.runtime.context.scope.refresh.RefreshEvent;
 import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Singleton;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import io.micronaut.context.event.ApplicationEventPublisher;
-import io.micronaut.scheduling.annotation.Scheduled;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.schema.FieldProjection;
+import sk.concentra.jcml.util.Cancellation;
+import sk.concentra.jcml.util.DirectoryWatcher;
+import sk.concentra.jcml.util.RequestTiming;
 import sk.concentra.jcml.util.StringUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.Files;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Singleton
 public class ConfigurablePipeline {
@@ -28,58 +44,90 @@ public class ConfigurablePipeline {
     private static final Logger log = LoggerFactory.getLogger(ConfigurablePipeline.class);
     private final ObjectMapper objectMapper;
     private final ApplicationEventPublisher<RefreshEvent> refreshPublisher;
-    private final ApplicationContext applicationContext;
+    private final PipelineRegistry pipelineRegistry;
 
     private final PipelineConfig pipelineConfig;
     private final String configPath;
     private final boolean isClasspathResource;
 
-    private volatile List<PipelineStep> steps = Collections.emptyList();
+    /** Everything derived from one pipeline.json load; replaced as a whole on reload. */
+    private record LoadedPipeline(List<PipelineStep> steps, FieldProjection fieldProjection, boolean recordLane,
+                                  boolean columnar, boolean partitioned) {}
+
+    private volatile LoadedPipeline loadedPipeline =
+            new LoadedPipeline(Collections.emptyList(), FieldProjection.ALL, false, false, false);
     private volatile long lastModified = 0;
+    private DirectoryWatcher watcher;
     private final ConcurrentHashMap<String, Object> globalContext = new ConcurrentHashMap<>();
 
     private static final String SESSION_KEY_KEY = "sessionKey";
     private static final String START_NANOS_KEY = "startNanos";
 
+    /** Matches {@code session.<key>} references anywhere in a step's params (templates, expressions). */
+    private static final Pattern SESSION_REFERENCE_PATTERN = Pattern.compile("session\\.([A-Za-z_][A-Za-z0-9_]*)");
+    /** Entity lookup {@code eval(concat('session.<key>.', item.<field>))}: group 1 the key, group 2 the id field. */
+    private static final Pattern ENTITY_REFERENCE_PATTERN =
+            Pattern.compile("'session\\.([A-Za-z_][A-Za-z0-9_]*)\\.'\\s*,\\s*item\\.([A-Za-z_][A-Za-z0-9_]*)");
+
     public ConfigurablePipeline(ObjectMapper objectMapper,
                                 ApplicationEventPublisher<RefreshEvent> refreshPublisher,
-                                ApplicationContext applicationContext,
+                                PipelineRegistry pipelineRegistry,
                                 PipelineConfig pipelineConfig) throws Exception {
         this.objectMapper = objectMapper;
         this.refreshPublisher = refreshPublisher;
-        this.applicationContext = applicationContext;
+        this.pipelineRegistry = pipelineRegistry;
         this.pipelineConfig = pipelineConfig;
         String configured = pipelineConfig.path();
         this.isClasspathResource = configured != null && configured.startsWith("classpath:");
         this.configPath = isClasspathResource ? configured.substring("classpath:".length()) : configured;
         log.warn("Look, ma, I'm a constructor now!");
         reloadConfig();  // Initial load
+        startWatcher();
     }
 
-    @Scheduled(fixedDelay = "${pipeline.auto-refresh-interval:3600s}", initialDelay = "${pipeline.auto-refresh-initial-delay:3600s}")
-    public void checkForConfigChanges() throws Exception {
-        log.info("pipelineConfig: {}", pipelineConfig);
+    /**
+     * With {@code pipeline.auto-refresh} on, watches the directory of a filesystem
+     * pipeline.json and reloads as soon as the file changes.
+     */
+    private void startWatcher() {
         if (!pipelineConfig.autoRefresh()) {
-            log.warn("Auto-refresh is disabled");
+            log.info("Pipeline auto-refresh is disabled");
             return;
-        } else {
-            log.warn("Auto-refresh is enabled");
         }
-
         if (isClasspathResource) {
-            log.debug("Skipping classpath resource check: {}", configPath);
+            log.debug("Skipping auto-refresh for classpath resource: {}", configPath);
             return;
         }
+        final Path configFile = Paths.get(configPath).toAbsolutePath().normalize();
+        try {
+            watcher = DirectoryWatcher.start("pipeline", configFile.getParent(), false, changed -> {
+                if (changed.contains(configFile) || changed.contains(configFile.getParent())) {
+                    onConfigFileChanged();
+                }
+            });
+        } catch (IOException e) {
+            log.error("Cannot watch pipeline configuration {} — changes need a RefreshEvent or restart", configFile, e);
+        }
+    }
 
-        File configFile = new File(configPath);
-        if (configFile.exists()) {
-            BasicFileAttributes attrs = Files.readAttributes(configFile.toPath(), BasicFileAttributes.class);
-            log.debug("Checking config file: {} last modified: {}", configFile.getAbsolutePath(), attrs.lastModifiedTime().toMillis());
-            if (attrs.lastModifiedTime().toMillis() > lastModified) {
-                reloadConfig();
-                refreshPublisher.publishEvent(new RefreshEvent());
-                log.info("Reloaded pipeline configuration from {}", configFile.getAbsolutePath());
-            }
+    private void onConfigFileChanged() {
+        if (!new File(configPath).exists()) {
+            log.warn("Pipeline configuration {} was removed — keeping the loaded pipeline", configPath);
+            return;
+        }
+        try {
+            reloadConfig();
+            refreshPublisher.publishEvent(new RefreshEvent());
+            log.info("Reloaded pipeline configuration from {}", configPath);
+        } catch (Exception e) {
+            log.error("Failed to reload pipeline configuration from {} — keeping the loaded pipeline", configPath, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
         }
     }
 
@@ -117,9 +165,11 @@ public class ConfigurablePipeline {
             throw new IllegalStateException("pipeline.json: 'steps' must be an array");
         }
 
-        steps = new ArrayList<>();
+        List<PipelineStep> loaded = new ArrayList<>();
         Set<String> seenNames = new HashSet<>();
+        int stepIndex = 0;
         for (JsonNode stepNode : stepsNodeArray) {
+            stepIndex++;
             String name = stepNode.path("name").asText(null);
             if (name == null || name.isBlank()) {
                 throw new IllegalStateException("pipeline.json: every step must have a non-blank 'name'");
@@ -130,19 +180,186 @@ public class ConfigurablePipeline {
             String description = stepNode.path("description").asText("");
             boolean enabled = stepNode.path("enabled").asBoolean(true);
             String className = stepNode.path("className").asText();
-            Class<?> actionClass = Class.forName(className);
-            PipelineAction action = (PipelineAction) applicationContext.getBean(actionClass);
+            PipelineAction action = pipelineRegistry.action(className);
             JsonNode params = stepNode.path("params").isObject() ? stepNode.path("params") : objectMapper.createObjectNode();
-            steps.add(new PipelineStep(name, description, className, action, enabled, params));
-            log.info("Loaded pipeline step class: {}; params: {}", className, params);
+            String parallelGroup = stepNode.path("parallelGroup").asText(null);
+            if (parallelGroup != null && parallelGroup.isBlank()) parallelGroup = null;
+            boolean lazy = stepNode.path("lazy").asBoolean(false);
+            boolean snapshotIsolation = stepNode.path("snapshotIsolation").asBoolean(false)
+                    || action.snapshotIsolation(params);
+            String providedKey = params.path("sessionContextKey").asText(null);
+            if (lazy && (providedKey == null || providedKey.isBlank())) {
+                throw new IllegalStateException("pipeline.json: lazy step '" + name
+                        + "' must declare params.sessionContextKey");
+            }
+            boolean demandMode = "demand".equalsIgnoreCase(params.path("mode").asText());
+            if (demandMode && !params.path("indexes").isEmpty()) {
+                // Only entities referenced by id are loaded — an index would miss the others
+                throw new IllegalStateException("pipeline.json: demand-mode step '" + name
+                        + "' cannot declare 'indexes' — use \"mode\": \"all\"");
+            }
+            if (demandMode && providedKey != null && !providedKey.isBlank()) {
+                if (!params.has("idFields")) {
+                    ObjectNode withIdFields = params.deepCopy();
+                    collectEntityIdFields(stepsNodeArray, stepIndex, providedKey)
+                            .forEach(withIdFields.putArray("idFields")::add);
+                    params = withIdFields;
+                }
+            }
+            Set<String> sessionReferences = collectSessionReferences(params);
+            Set<String> messageTypes = stepNode.has("messageTypes")
+                    ? Set.copyOf(readStringArray(stepNode.path("messageTypes")))
+                    : action.messageTypes(params);
+
+            // Declared data flow — see StepGraph. Undeclared steps are barriers, except inside
+            // a parallelGroup, whose members are item-preserving by contract. A demand-mode
+            // preload reads the items to collect its ids, so it defaults to (and needs) read.
+            boolean declared = stepNode.has("items") || stepNode.has("reads") || stepNode.has("writes");
+            StepGraph.ItemAccess items = stepNode.has("items")
+                    ? StepGraph.ItemAccess.parse(stepNode.path("items").asText(""), name)
+                    : demandMode ? StepGraph.ItemAccess.READ
+                    : (parallelGroup != null ? StepGraph.ItemAccess.NONE : StepGraph.ItemAccess.WRITE);
+            if (demandMode && items == StepGraph.ItemAccess.NONE) {
+                throw new IllegalStateException("pipeline.json: demand-mode step '" + name
+                        + "' must see the items — declare \"items\": \"read\"");
+            }
+            Set<String> reads = new LinkedHashSet<>(readStringArray(stepNode.path("reads")));
+            Set<String> writes = new LinkedHashSet<>(readStringArray(stepNode.path("writes")));
+            reads.addAll(sessionReferences);
+            if (providedKey != null && !providedKey.isBlank()) {
+                writes.add(providedKey);
+                writes.add(providedKey + "List");
+            }
+            writes.addAll(action.sessionContextKeys(params));
+            if (!declared) {
+                reads.add(StepGraph.ANY);
+                if (parallelGroup == null || writes.isEmpty()) writes.add(StepGraph.ANY);
+            }
+
+            loaded.add(new PipelineStep(name, description, className, action, enabled, params,
+                    parallelGroup, lazy, snapshotIsolation, providedKey, sessionReferences,
+                    declared, items, Set.copyOf(reads), Set.copyOf(writes), messageTypes, action.recordStep(params),
+                    action.batchStep(params)));
+            log.info("Loaded pipeline step class: {}; parallelGroup: {}; lazy: {}; snapshotIsolation: {}; items: {}; reads: {}; writes: {}; messageTypes: {}; params: {}",
+                    className, parallelGroup, lazy, snapshotIsolation, items, reads, writes,
+                    messageTypes == null ? "all" : messageTypes, params);
+        }
+        StepGraph.validateOrdering(loaded.stream().filter(PipelineStep::enabled).toList());
+        FieldProjection projection = pipelineConfig.fieldProjection()
+                ? deriveFieldProjection(loaded)
+                : FieldProjection.ALL;
+        boolean typed = pipelineConfig.recordLane() && supportsRecords(loaded);
+        boolean columnar = typed && pipelineConfig.columnar()
+                && loaded.stream().anyMatch(step -> step.enabled() && step.batchStep() != null);
+        boolean partitioned = pipelineConfig.partitionByType()
+                && loaded.stream().anyMatch(step -> step.enabled() && step.messageTypes() != null);
+        loadedPipeline = new LoadedPipeline(List.copyOf(loaded), projection, typed, columnar, partitioned);
+        log.info("Loaded {} pipeline steps; decode projection: {}; report record lane: {}; columnar: {}; type-partitioned: {}",
+                loaded.size(), projection, typed, columnar, partitioned);
+    }
+
+    private static boolean supportsRecords(List<PipelineStep> loaded) {
+        for (PipelineStep step : loaded) {
+            if (step.enabled() && step.recordStep() == null) {
+                log.info("Step '{}' ({}) has no typed version for its params — reports use the generic pipeline",
+                        step.name(), step.className());
+                return false;
+            }
         }
-        log.info("Loaded {} pipeline steps", steps.size());
+        return true;
     }
 
     /**
-     * Process a list of input items through all enabled pipeline steps sequentially.
-     * Each step receives the full output list of the previous step.
+     * Merges the field demand of every enabled step. A single step with unknown demand
+     * (e.g. a custom action, or a template condition that is not a message-type list)
+     * turns projection off.
+     */
+    private static FieldProjection deriveFieldProjection(List<PipelineStep> loaded) {
+        FieldProjection projection = FieldProjection.NONE;
+        for (PipelineStep step : loaded) {
+            if (!step.enabled()) continue;
+            FieldProjection demand = step.action().fieldDemand(step.params());
+            if (demand.isUnbounded()) {
+                log.info("Step '{}' does not declare its field demand — decoding all fields", step.name());
+                return FieldProjection.ALL;
+            }
+            projection = projection.merge(demand);
+        }
+        return projection;
+    }
+
+    /**
+     * Schema fields the enabled steps read, per message type, derived when the pipeline
+     * is loaded. {@link FieldProjection#ALL} unless {@code pipeline.field-projection} is on.
+     */
+    public FieldProjection fieldProjection() {
+        return loadedPipeline.fieldProjection();
+    }
+
+    /**
+     * {@code true} if {@code pipeline.record-lane} is on and every enabled step has a typed
+     * version ({@link PipelineAction#recordStep}), so reports can run on {@link ReportRecord}s.
+     */
+    public boolean supportsRecords() {
+        return loadedPipeline.recordLane();
+    }
+
+    private static List<String> readStringArray(JsonNode node) {
+        if (!node.isArray()) return Collections.emptyList();
+        List<String> values = new ArrayList<>();
+        node.forEach(n -> {
+            if (n.isTextual() && !n.asText().isBlank()) values.add(n.asText().trim());
+        });
+        return values;
+    }
+
+    /**
+     * Item fields that enabled steps after position {@code from} use as ids into the
+     * session entity map {@code key} ({@code eval(concat('session.<key>.', item.<field>))}).
+     */
+    private static Set<String> collectEntityIdFields(JsonNode stepsNodeArray, int from, String key) {
+        Set<String> fields = new LinkedHashSet<>();
+        for (int i = from; i < stepsNodeArray.size(); i++) {
+            JsonNode stepNode = stepsNodeArray.get(i);
+            if (!stepNode.path("enabled").asBoolean(true)) continue;
+            Matcher matcher = ENTITY_REFERENCE_PATTERN.matcher(stepNode.path("params").toString());
+            while (matcher.find()) {
+                if (matcher.group(1).equals(key)) fields.add(matcher.group(2));
+            }
+        }
+        return fields;
+    }
+
+    private static Set<String> collectSessionReferences(JsonNode params) {
+        Set<String> keys = new HashSet<>();
+        Matcher matcher = SESSION_REFERENCE_PATTERN.matcher(params.toString());
+        while (matcher.find()) {
+            keys.add(matcher.group(1));
+        }
+        return Set.copyOf(keys);
+    }
+
+    /**
+     * Process a list of input items through all enabled pipeline steps.
      * A per-step and total summary report is logged at INFO level at the end of each run.
+     *
+     * <p>Steps are scheduled as a dependency graph ({@link StepGraph}) on virtual threads:
+     * a step starts as soon as every earlier step it conflicts with has finished. Steps that
+     * write the item list form a chain in declaration order, each receiving the output of
+     * the previous item writer; steps that only read items see that same list, and
+     * {@code "items": "none"} steps receive an empty list. Without declarations every step
+     * is a barrier, i.e. the pipeline runs strictly sequentially as before.</p>
+     *
+     * <p>Steps marked {@code "lazy": true} run only if a later enabled step references
+     * their {@code params.sessionContextKey} as {@code session.<key>}.</p>
+     *
+     * <p>The pipeline owns the items and steps modify them in place (see
+     * {@link PipelineAction}); a step with snapshot isolation receives deep copies.</p>
+     *
+     * <p>With {@code pipeline.partition-by-type} on, the items are split by
+     * {@code _messageType} once ({@link TypePartitions}) and a step that declares its
+     * message types ({@link PipelineAction#messageTypes}) only visits those partitions;
+     * steps over all types, and the final result, get the partitions merged on RecoveryKey.</p>
      */
     public List<ObjectNode> process(List<ObjectNode> input) {
         return process(input, Collections.emptyList());
@@ -153,8 +370,151 @@ public class ConfigurablePipeline {
      * {@code ignoredStepNames} for this invocation only (does not modify config).
      */
     public List<ObjectNode> process(List<ObjectNode> input, Collection<String> ignoredStepNames) {
+        return process(loadedPipeline, input, ignoredStepNames, globalContext);
+    }
+
+    /**
+     * Isolated run of {@link #process(List)}, used by the startup warm-up: steps that read
+     * the database ({@link PipelineAction#readsDatabase}) are skipped and the steps get a
+     * private global context, so the run needs nothing outside its items and changes nothing
+     * a report could see.
+     */
+    public List<ObjectNode> processIsolated(List<ObjectNode> input) {
+        final LoadedPipeline pipeline = loadedPipeline;
+        return process(pipeline, input, databaseSteps(pipeline), new ConcurrentHashMap<>());
+    }
+
+    /** Isolated run of {@link #processRecords}, see {@link #processIsolated}. */
+    public List<ReportRecord> processRecordsIsolated(List<ReportRecord> input) {
+        final LoadedPipeline pipeline = loadedPipeline;
+        return processRecords(pipeline, input, databaseSteps(pipeline), new ConcurrentHashMap<>());
+    }
+
+    private static List<String> databaseSteps(LoadedPipeline pipeline) {
+        return pipeline.steps().stream()
+                .filter(step -> step.action().readsDatabase(step.params()))
+                .map(PipelineStep::name)
+                .toList();
+    }
+
+    private List<ObjectNode> process(LoadedPipeline pipeline, List<ObjectNode> input,
+                                     Collection<String> ignoredStepNames, Map<String, Object> globals) {
+        final Lane<List<ObjectNode>> lane = new Lane<>(List::size, Collections.emptyList(),
+                ConfigurablePipeline::snapshotNodes,
+                (step, stepInput, global, session) -> step.action().process(stepInput, global, session, step.params()));
+        if (pipeline.partitioned()) {
+            return run(pipeline, TypePartitions.of(input, NODE_KEYS), ignoredStepNames,
+                    partitioned(lane, NODE_KEYS), globals).all();
+        }
+        return run(pipeline, input, ignoredStepNames, lane, globals);
+    }
+
+    /**
+     * Report fast lane: runs the typed versions of the enabled steps on {@link ReportRecord}s,
+     * with the same scheduling, lazy-step and reporting behaviour as {@link #process(List, Collection)}.
+     * Only valid when {@link #supportsRecords()} is {@code true}.
+     *
+     * <p>With {@code pipeline.columnar} on and at least one step having a columnar form
+     * ({@link PipelineAction#batchStep}), the records travel as a {@link RecordBatch}:
+     * columnar steps work on its columns and selection vector, the others on its records.</p>
+     */
+    public List<ReportRecord> processRecords(List<ReportRecord> input, Collection<String> ignoredStepNames) {
+        return processRecords(loadedPipeline, input, ignoredStepNames, globalContext);
+    }
+
+    private List<ReportRecord> processRecords(LoadedPipeline pipeline, List<ReportRecord> input,
+                                              Collection<String> ignoredStepNames, Map<String, Object> globals) {
+        if (!pipeline.recordLane()) {
+            throw new IllegalStateException("Report record lane is not available for the current pipeline");
+        }
+        if (pipeline.columnar()) {
+            return run(pipeline, RecordBatch.of(input), ignoredStepNames,
+                    new Lane<>(RecordBatch::size, RecordBatch.EMPTY,
+                            batch -> RecordBatch.of(snapshotRecords(batch.records())),
+                            ConfigurablePipeline::applyBatchStep), globals).records();
+        }
+        final Lane<List<ReportRecord>> lane = new Lane<>(List::size, Collections.emptyList(),
+                ConfigurablePipeline::snapshotRecords,
+                (step, stepInput, global, session) -> step.recordStep().process(stepInput, global, session));
+        if (pipeline.partitioned()) {
+            return run(pipeline, TypePartitions.of(input, RECORD_KEYS), ignoredStepNames,
+                    partitioned(lane, RECORD_KEYS), globals).all();
+        }
+        return run(pipeline, input, ignoredStepNames, lane, globals);
+    }
+
+    private static RecordBatch applyBatchStep(PipelineStep step, RecordBatch input,
+                                              Map<String, Object> global, Map<String, Object> session) {
+        if (step.batchStep() != null) {
+            return step.batchStep().process(input, global, session);
+        }
+        final List<ReportRecord> records = input.records();
+        final List<ReportRecord> output = step.recordStep().process(records, global, session);
+        // A writing step may have modified the records in place, which the input's columns don't reflect.
+        return output == records && step.items() != StepGraph.ItemAccess.WRITE ? input : RecordBatch.of(output);
+    }
+
+    private static final TypePartitions.Keys<ObjectNode> NODE_KEYS = new TypePartitions.Keys<>(
+            item -> item.path("_messageType").asText(""),
+            item -> {
+                JsonNode recoveryKey = item.path("_dbMetadata").path("recoveryKey");
+                return recoveryKey.isNumber() ? recoveryKey.doubleValue() : null;
+            });
+
+    private static final TypePartitions.Keys<ReportRecord> RECORD_KEYS =
+            new TypePartitions.Keys<>(ReportRecord::messageType, ReportRecord::recoveryKey);
+
+    /**
+     * Type-partitioned form of an item list lane: a step with declared message types runs
+     * on their partitions only, any other step on all items. Falls back to all items while
+     * they are not in RecoveryKey order (e.g. after a sort on another field).
+     */
+    private static <T> Lane<TypePartitions<T>> partitioned(Lane<List<T>> items, TypePartitions.Keys<T> keys) {
+        return new Lane<>(TypePartitions::size, TypePartitions.of(List.of(), keys),
+                input -> TypePartitions.of(items.snapshot().apply(input.all()), keys),
+                (step, input, global, session) -> {
+                    final Set<String> types = step.messageTypes();
+                    final List<T> selected = types == null ? null : input.select(types);
+                    if (selected != null) {
+                        return input.replace(types, items.runner().apply(step, selected, global, session));
+                    }
+                    return TypePartitions.of(items.runner().apply(step, input.all(), global, session), keys);
+                });
+    }
+
+    private static List<ObjectNode> snapshotNodes(List<ObjectNode> items) {
+        final List<ObjectNode> copies = new ArrayList<>(items.size());
+        for (ObjectNode item : items) {
+            copies.add(item.deepCopy());
+        }
+        return copies;
+    }
+
+    private static List<ReportRecord> snapshotRecords(List<ReportRecord> records) {
+        final List<ReportRecord> copies = new ArrayList<>(records.size());
+        for (ReportRecord record : records) {
+            copies.add(record.deepCopy());
+        }
+        return copies;
+    }
+
+    /** Runs one step on one item representation. */
+    @FunctionalInterface
+    private interface StepRunner<B> {
+        B apply(PipelineStep step, B input, Map<String, Object> global, Map<String, Object> session);
+    }
+
+    /**
+     * One item representation: an item list ({@code ObjectNode}s, {@link ReportRecord}s) or
+     * a {@link RecordBatch}, with what the scheduler needs to know about it — including how
+     * to deep-copy it for a step with snapshot isolation.
+     */
+    private record Lane<B>(ToIntFunction<B> size, B empty, UnaryOperator<B> snapshot, StepRunner<B> runner) {}
+
+    private <B> B run(LoadedPipeline pipeline, B input, Collection<String> ignoredStepNames, Lane<B> lane,
+                      Map<String, Object> globals) {
         long startNanos = System.nanoTime();
-        Map<String, Object> sessionContext = new HashMap<>();
+        Map<String, Object> sessionContext = new ConcurrentHashMap<>();
         String sessionKey = StringUtils.generateRandomString();
         sessionContext.put(SESSION_KEY_KEY, sessionKey);
         sessionContext.put(START_NANOS_KEY, startNanos);
@@ -163,28 +523,35 @@ public class ConfigurablePipeline {
                 ? Collections.emptySet()
                 : new HashSet<>(ignoredStepNames);
 
-        List<PipelineStep> enabledSteps = steps.stream()
+        List<PipelineStep> enabledSteps = resolveLazySteps(pipeline.steps().stream()
                 .filter(PipelineStep::enabled)
                 .filter(s -> !ignored.contains(s.name()))
-                .toList();
+                .toList(), sessionKey);
 
         log.info("[{}] Processing {} items with {} enabled pipeline steps ({} explicitly ignored)",
-                sessionKey, input.size(), enabledSteps.size(), ignored.size());
+                sessionKey, lane.size().applyAsInt(input), enabledSteps.size(), ignored.size());
 
-        // Per-step stats collected for the final report
-        record StepStat(String name, int itemsIn, int itemsOut, long elapsedMs) {}
-        List<StepStat> stats = new ArrayList<>(enabledSteps.size());
+        // Per-step stats collected for the final report (declaration order)
+        StepGraph graph = StepGraph.build(enabledSteps);
+        StepStat<B>[] stepStats = runGraph(graph, input, lane, globals, sessionContext, Cancellation.current());
+        List<StepStat<B>> stats = Arrays.asList(stepStats);
 
-        List<ObjectNode> current = input;
-        for (PipelineStep step : enabledSteps) {
-            long stepStart = System.nanoTime();
-            int itemsIn = current.size();
-            current = applyStep(current, step, globalContext, sessionContext);
-            long stepMs = (System.nanoTime() - stepStart) / 1_000_000;
-            stats.add(new StepStat(step.name(), itemsIn, current.size(), stepMs));
+        B current = input;
+        for (int i = graph.size() - 1; i >= 0; i--) {
+            if (graph.step(i).items() == StepGraph.ItemAccess.WRITE) {
+                current = stepStats[i].output();
+                break;
+            }
         }
 
-        long totalMs = (System.nanoTime() - startNanos) / 1_000_000;
+        long totalNanos = System.nanoTime() - startNanos;
+        long totalMs = totalNanos / 1_000_000;
+
+        // Into the Server-Timing header and slow-request log of the request being served, if any
+        RequestTiming.record(RequestTiming.PIPELINE, totalNanos);
+        RequestTiming.recordSteps(stats.stream()
+                .map(s -> new RequestTiming.Step(s.name(), s.itemsIn(), s.itemsOut(), s.elapsedMs()))
+                .toList());
 
         // ── Pipeline run report ───────────────────────────────────────────────
         StringBuilder report = new StringBuilder();
@@ -193,31 +560,129 @@ public class ConfigurablePipeline {
         report.append("\n╠══╤═══════════════════════════════════════════╤════════╤════════╤═══════════");
         report.append("\n║  │ Step                                      │  In    │  Out   │  Time     ");
         report.append("\n╠══╪═══════════════════════════════════════════╪════════╪════════╪═══════════");
-        for (int i = 0; i < stats.size(); i++) {
-            StepStat s = stats.get(i);
+        for (int n = 0; n < stats.size(); n++) {
+            StepStat<B> s = stats.get(n);
             int delta = s.itemsOut() - s.itemsIn();
             String deltaStr = delta == 0 ? "=" : (delta > 0 ? "+" + delta : String.valueOf(delta));
             report.append(String.format("\n║%2d│ %-41s │%7d │%7d │%7dms  %s",
-                    i + 1, truncate(s.name(), 41), s.itemsIn(), s.itemsOut(), s.elapsedMs(), deltaStr));
+                    n + 1, truncate(s.name(), 41), s.itemsIn(), s.itemsOut(), s.elapsedMs(), deltaStr));
         }
         report.append("\n╠══╧═══════════════════════════════════════════╧════════╧════════╧═══════════");
-        report.append(String.format("\n║  TOTAL: %d → %d items  in %dms", input.size(), current.size(), totalMs));
+        report.append(String.format("\n║  TOTAL: %d → %d items  in %dms",
+                lane.size().applyAsInt(input), lane.size().applyAsInt(current), totalMs));
         report.append("\n╚══════════════════════════════════════════════════════════════════════════════");
         log.info(report.toString());
 
         return current;
     }
 
+    /**
+     * Drops lazy steps none of whose session context keys (the entity map, list or a
+     * secondary index) is referenced by any later step.
+     */
+    private List<PipelineStep> resolveLazySteps(List<PipelineStep> enabledSteps, String sessionKey) {
+        List<PipelineStep> result = new ArrayList<>(enabledSteps.size());
+        for (int i = 0; i < enabledSteps.size(); i++) {
+            PipelineStep step = enabledSteps.get(i);
+            if (step.lazy()) {
+                boolean referenced = false;
+                for (int j = i + 1; j < enabledSteps.size() && !referenced; j++) {
+                    referenced = !Collections.disjoint(enabledSteps.get(j).referencedSessionKeys(), step.writes());
+                }
+                if (!referenced) {
+                    log.info("[{}] Skipping lazy step '{}' — no later step references 'session.{}'",
+                            sessionKey, step.name(), step.providedKey());
+                    continue;
+                }
+            }
+            result.add(step);
+        }
+        return result;
+    }
+
+    /**
+     * Executes the step graph: every step is submitted to a virtual thread once all of its
+     * dependencies have completed. Returns the per-step stats indexed like the graph.
+     *
+     * <p>With the {@link Cancellation} of the request being served (or {@code null}), bound to
+     * every step thread: once it is cancelled, no further step is started and the run ends
+     * with a {@link java.util.concurrent.CancellationException}.</p>
+     */
+    private <B> StepStat<B>[] runGraph(StepGraph graph, B input, Lane<B> lane,
+                                       Map<String, Object> global, Map<String, Object> session,
+                                       Cancellation cancellation) {
+        var sessionKey = (String) session.get(SESSION_KEY_KEY);
+        int n = graph.size();
+        @SuppressWarnings("unchecked")
+        StepStat<B>[] stats = new StepStat[n];
+        int[] pending = new int[n];
+        for (int i = 0; i < n; i++) {
+            pending[i] = graph.dependencies(i).length;
+            log.debug("[{}] Step '{}' waits for {}", sessionKey, graph.step(i).name(), Arrays.toString(graph.dependencies(i)));
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+            for (int i = 0; i < n; i++) {
+                if (pending[i] == 0) submitStep(completion, graph, i, input, lane, stats, global, session, cancellation);
+            }
+            for (int done = 0; done < n; done++) {
+                int finished = completion.take().get();
+                if (cancellation != null) cancellation.throwIfCancelled();
+                for (int dependent : graph.dependents(finished)) {
+                    if (--pending[dependent] == 0) {
+                        submitStep(completion, graph, dependent, input, lane, stats, global, session, cancellation);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("[" + sessionKey + "] Interrupted while running pipeline", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("[" + sessionKey + "] Pipeline step failed", e.getCause());
+        }
+        return stats;
+    }
+
+    private <B> void submitStep(CompletionService<Integer> completion, StepGraph graph, int index,
+                                B pipelineInput, Lane<B> lane, StepStat<B>[] stats,
+                                Map<String, Object> global, Map<String, Object> session,
+                                Cancellation cancellation) {
+        PipelineStep step = graph.step(index);
+        int source = graph.itemSource(index);
+        // Dependencies guarantee the source step has finished before this one is submitted.
+        B stepInput = step.items() == StepGraph.ItemAccess.NONE
+                ? lane.empty()
+                : (source < 0 ? pipelineInput : stats[source].output());
+        Callable<Integer> task = () -> {
+            long stepStart = System.nanoTime();
+            B result = applyStep(stepInput, step, lane, global, session);
+            int itemsIn = lane.size().applyAsInt(stepInput);
+            int itemsOut = lane.size().applyAsInt(result);
+            if (step.items() != StepGraph.ItemAccess.WRITE && itemsOut != itemsIn) {
+                log.warn("[{}] Step '{}' declared items '{}' but changed the item count ({} → {}) — output ignored",
+                        session.get(SESSION_KEY_KEY), step.name(), step.items(), itemsIn, itemsOut);
+            }
+            stats[index] = new StepStat<>(step.name(), itemsIn, itemsOut,
+                    (System.nanoTime() - stepStart) / 1_000_000, result);
+            return index;
+        };
+        completion.submit(cancellation != null ? cancellation.propagate(task) : task);
+    }
+
     private static String truncate(String s, int max) {
         return s.length() <= max ? s : s.substring(0, max - 1) + "…";
     }
 
-    private List<ObjectNode> applyStep(List<ObjectNode> input, PipelineStep step,
-                                       Map<String, Object> global, Map<String, Object> session) {
+    private <B> B applyStep(B input, PipelineStep step, Lane<B> lane,
+                            Map<String, Object> global, Map<String, Object> session) {
+        Cancellation.checkpoint();
         long startNanos = System.nanoTime();
         var sessionKey = (String) session.get(SESSION_KEY_KEY);
-        log.info("[{}] Applying step '{}' with {} items, session key '{}'", sessionKey, step.name(), input.size(), sessionKey );
-        var result = step.action().process(input, global, session, step.params());
+        log.info("[{}] Applying step '{}' with {} items, session key '{}'", sessionKey, step.name(), lane.size().applyAsInt(input), sessionKey );
+        var stepInput = step.snapshotIsolation() ? lane.snapshot().apply(input) : input;
+        var result = lane.runner().apply(step, stepInput, global, session);
         log.info("[{}] Step '{}' completed in {}ms", sessionKey, step.name(), (System.nanoTime() - startNanos) / 1_000_000);
         return result;
     } // applyStep
@@ -225,7 +690,11 @@ public class ConfigurablePipeline {
     @ConfigurationProperties("pipeline")
     public record PipelineConfig(
             String path,
-            boolean autoRefresh
+            boolean autoRefresh,
+            boolean fieldProjection,
+            boolean recordLane,
+            boolean columnar,
+            boolean partitionByType
     ) {
         public PipelineConfig {
             if (path == null || path.isBlank()) {
@@ -234,6 +703,8 @@ public class ConfigurablePipeline {
         } // constructor
     } // class PipelineConfig
 
+    private record StepStat<B>(String name, int itemsIn, int itemsOut, long elapsedMs, B output) {}
+
 } // class ConfigurablePipeline
 
 record PipelineStep(
@@ -242,5 +713,17 @@ record PipelineStep(
         String className,
         PipelineAction action,
         boolean enabled,
-        JsonNode params
+        JsonNode params,
+        String parallelGroup,
+        boolean lazy,
+        boolean snapshotIsolation,
+        String providedKey,
+        Set<String> referencedSessionKeys,
+        boolean declared,
+        StepGraph.ItemAccess items,
+        Set<String> reads,
+        Set<String> writes,
+        Set<String> messageTypes,
+        RecordStep recordStep,
+        BatchStep batchStep
 ) {}
\ No newline at end of file
@@ -0,0 +1,431 @@
+package sk.concentra.jcml.pipeline;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.ClassBodyEvaluator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles the common subset of Josson expressions used by template rules into Java
+ * classes (Janino), so they are evaluated without building a Josson envelope per item.
+ *
+ * <p>Supported: item paths with nested fields and array indexes ({@code item._header[1]},
+ * {@code item._dbMetadata.dateTime}), {@code session.<key>} / {@code global.<key>} values,
+ * entity lookups {@code eval(concat('session.<map>.', <expr>)).<property>}, {@code concat(...)},
+ * {@code <expr>.in('A', 2, ...)}, comparisons ({@code = == != < <= > >=}), {@code & | !},
+ * parentheses and string / number / boolean / null literals. Anything else — other
+ * functions, filters, projections — is reported as unsupported and the caller keeps
+ * using Josson for it.</p>
+ *
+ * <p>The generated code works on both item representations through {@link ExpressionRuntime}.
+ * Results are cached per expression, so compiling the same rules again is a map lookup.
+ * A native image cannot define classes at runtime; there every expression stays on Josson.</p>
+ */
+public final class ExpressionCompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpressionCompiler.class);
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+    /** Set by GraalVM while building and when running a native image. */
+    private static final boolean NATIVE_IMAGE = System.getProperty("org.graalvm.nativeimage.imagecode") != null;
+
+    /** What bare identifiers refer to. */
+    public enum Mode {
+        /** Template placeholder: the root is the envelope {@code {item, session, global}}. */
+        TEMPLATE,
+        /** Rule condition: the root is the item itself ({@code _messageType.in(...)}). */
+        CONDITION
+    }
+
+    /** Generated code implements this; {@code item} is an {@code ObjectNode} or a {@link ReportRecord}. */
+    public interface Evaluator {
+        Object evaluate(Object item, Scope scope);
+    }
+
+    /** Session, global and entity values an expression may read besides the item. */
+    public interface Scope {
+        Object session(String key);
+
+        Object global(String key);
+
+        /** Entity {@code id} of the session entity map {@code mapKey}, or {@code null}. */
+        Object entity(String mapKey, Object id);
+    }
+
+    /**
+     * A compiled expression.
+     *
+     * @param itemFields top-level item fields it reads
+     * @param entityMaps session entity maps it looks entities up in
+     * @param usesScope  whether it reads anything besides the item
+     */
+    public record CompiledExpression(String source, Evaluator evaluator, Set<String> itemFields,
+                                     Set<String> entityMaps, boolean usesScope) {
+
+        public Object evaluate(Object item, Scope scope) {
+            return evaluator.evaluate(item, scope);
+        }
+
+        public boolean test(Object item, Scope scope) {
+            return ExpressionRuntime.truthy(evaluator.evaluate(item, scope));
+        }
+
+        /** True if the result depends on nothing but the item's {@code _messageType}. */
+        public boolean dependsOnMessageTypeOnly() {
+            return !usesScope && Set.of("_messageType").containsAll(itemFields);
+        }
+    }
+
+    private final Map<String, Optional<CompiledExpression>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Compiled form of {@code expression}, or {@code null} if it uses constructs outside the
+     * supported subset.
+     */
+    public CompiledExpression compile(String expression, Mode mode) {
+        return cache.computeIfAbsent(mode + ":" + expression, key -> Optional.ofNullable(doCompile(expression, mode)))
+                .orElse(null);
+    }
+
+    private CompiledExpression doCompile(String expression, Mode mode) {
+        if (NATIVE_IMAGE) return null;
+        final Parser parser;
+        final String java;
+        try {
+            parser = new Parser(tokenize(expression), mode);
+            java = parser.parse();
+        } catch (UnsupportedExpressionException | NumberFormatException e) {
+            log.debug("Expression [{}] not compiled: {}", expression, e.getMessage());
+            return null;
+        }
+        try {
+            final ClassBodyEvaluator evaluator = new ClassBodyEvaluator();
+            evaluator.setParentClassLoader(ExpressionCompiler.class.getClassLoader());
+            evaluator.setClassName(ExpressionCompiler.class.getPackageName()
+                    + ".GeneratedExpression" + CLASS_COUNTER.incrementAndGet());
+            evaluator.setImplementedInterfaces(new Class<?>[] {Evaluator.class});
+            evaluator.setDefaultImports(ExpressionRuntime.class.getName(), Scope.class.getCanonicalName());
+            evaluator.cook("public Object evaluate(Object item, Scope scope) {\n    return " + java + ";\n}\n");
+            final Evaluator compiled = (Evaluator) evaluator.getClazz().getDeclaredConstructor().newInstance();
+            log.debug("Expression [{}] compiled to: {}", expression, java);
+            return new CompiledExpression(expression, compiled, Set.copyOf(parser.itemFields),
+                    Set.copyOf(parser.entityMaps), parser.usesScope);
+        } catch (CompileException | ReflectiveOperationException e) {
+            log.warn("Expression [{}] could not be compiled ({}) — using Josson", expression, e.getMessage());
+            return null;
+        }
+    }
+
+    // ── Tokenizer ────────────────────────────────────────────────────────────
+
+    private enum Kind { IDENT, STRING, NUMBER, SYMBOL, END }
+
+    private record Token(Kind kind, String text) {}
+
+    private static final List<String> SYMBOLS = List.of(
+            "==", "!=", "<=", ">=", "&&", "||", "=", "<", ">", "&", "|", "!", "(", ")", "[", "]", ",", ".", "-");
+
+    private static List<Token> tokenize(String expression) {
+        final List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        outer:
+        while (i < expression.length()) {
+            final char ch = expression.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                i++;
+            } else if (Character.isLetter(ch) || ch == '_') {
+                int end = i + 1;
+                while (end < expression.length()
+                        && (Character.isLetterOrDigit(expression.charAt(end)) || expression.charAt(end) == '_')) end++;
+                tokens.add(new Token(Kind.IDENT, expression.substring(i, end)));
+                i = end;
+            } else if (Character.isDigit(ch)) {
+                int end = i + 1;
+                while (end < expression.length()
+                        && (Character.isDigit(expression.charAt(end)) || expression.charAt(end) == '.')) end++;
+                tokens.add(new Token(Kind.NUMBER, expression.substring(i, end)));
+                i = end;
+            } else if (ch == '\'') {
+                final StringBuilder text = new StringBuilder();
+                int end = i + 1;
+                while (true) {
+                    if (end >= expression.length()) throw new UnsupportedExpressionException("unterminated string");
+                    final char c = expression.charAt(end);
+                    if (c == '\'') {
+                        if (end + 1 < expression.length() && expression.charAt(end + 1) == '\'') {
+                            text.append('\'');   // '' escapes a quote
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    text.append(c);
+                    end++;
+                }
+                tokens.add(new Token(Kind.STRING, text.toString()));
+                i = end + 1;
+            } else {
+                for (String symbol : SYMBOLS) {
+                    if (expression.startsWith(symbol, i)) {
+                        tokens.add(new Token(Kind.SYMBOL, symbol));
+                        i += symbol.length();
+                        continue outer;
+                    }
+                }
+                throw new UnsupportedExpressionException("character '" + ch + "'");
+            }
+        }
+        tokens.add(new Token(Kind.END, ""));
+        return tokens;
+    }
+
+    // ── Parser / code generator ──────────────────────────────────────────────
+
+    /** Recursive descent over the supported grammar, emitting one Java expression of type {@code Object}. */
+    private static final class Parser {
+        private final List<Token> tokens;
+        private final Mode mode;
+        private int position;
+        final Set<String> itemFields = new LinkedHashSet<>();
+        final Set<String> entityMaps = new LinkedHashSet<>();
+        boolean usesScope;
+
+        Parser(List<Token> tokens, Mode mode) {
+            this.tokens = tokens;
+            this.mode = mode;
+        }
+
+        String parse() {
+            final String java = or();
+            if (peek().kind() != Kind.END) throw new UnsupportedExpressionException("unexpected '" + peek().text() + "'");
+            return java;
+        }
+
+        private String or() {
+            String left = and();
+            while (acceptSymbol("|") || acceptSymbol("||")) {
+                left = "Boolean.valueOf(ExpressionRuntime.truthy(" + left + ") || ExpressionRuntime.truthy(" + and() + "))";
+            }
+            return left;
+        }
+
+        private String and() {
+            String left = not();
+            while (acceptSymbol("&") || acceptSymbol("&&")) {
+                left = "Boolean.valueOf(ExpressionRuntime.truthy(" + left + ") && ExpressionRuntime.truthy(" + not() + "))";
+            }
+            return left;
+        }
+
+        private String not() {
+            if (acceptSymbol("!")) return "Boolean.valueOf(!ExpressionRuntime.truthy(" + not() + "))";
+            return comparison();
+        }
+
+        private String comparison() {
+            final String left = postfix();
+            final String operator = switch (peek().kind() == Kind.SYMBOL ? peek().text() : "") {
+                case "=", "==" -> "EQ";
+                case "!=" -> "NE";
+                case "<" -> "LT";
+                case "<=" -> "LE";
+                case ">" -> "GT";
+                case ">=" -> "GE";
+                default -> null;
+            };
+            if (operator == null) return left;
+            position++;
+            return "ExpressionRuntime.compare(" + left + ", " + postfix() + ", ExpressionRuntime." + operator + ")";
+        }
+
+        private String postfix() {
+            String value = primary();
+            while (true) {
+                if (acceptSymbol(".")) {
+                    final String name = expect(Kind.IDENT);
+                    if (peekSymbol("(")) {
+                        if (!name.equals("in")) throw new UnsupportedExpressionException("function " + name + "()");
+                        value = "ExpressionRuntime.in(" + value + ", " + arguments(true) + ")";
+                    } else {
+                        value = "ExpressionRuntime.field(" + value + ", " + literal(name) + ")";
+                    }
+                } else if (acceptSymbol("[")) {
+                    final String index = expect(Kind.NUMBER);
+                    if (index.contains(".")) throw new UnsupportedExpressionException("index " + index);
+                    expectSymbol("]");
+                    value = "ExpressionRuntime.index(" + value + ", " + Integer.parseInt(index) + ")";
+                } else {
+                    return value;
+                }
+            }
+        }
+
+        private String primary() {
+            final Token token = tokens.get(position++);
+            switch (token.kind()) {
+                case STRING:
+                    return literal(token.text());
+                case NUMBER:
+                    return number(token.text());
+                case SYMBOL:
+                    if (token.text().equals("(")) {
+                        final String inner = or();
+                        expectSymbol(")");
+                        return inner;
+                    }
+                    if (token.text().equals("-") && peek().kind() == Kind.NUMBER) {
+                        return number("-" + tokens.get(position++).text());
+                    }
+                    throw new UnsupportedExpressionException("unexpected '" + token.text() + "'");
+                case IDENT:
+                    return identifier(token.text());
+                default:
+                    throw new UnsupportedExpressionException("unexpected end");
+            }
+        }
+
+        private String identifier(String name) {
+            switch (name) {
+                case "true":
+                    return "Boolean.TRUE";
+                case "false":
+                    return "Boolean.FALSE";
+                case "null":
+                    return "null";
+                case "concat":
+                    return "ExpressionRuntime.concat(" + arguments(false) + ")";
+                case "eval":
+                    // In a condition the root is the item, so 'session.<map>' is not the session.
+                    if (mode == Mode.CONDITION) throw new UnsupportedExpressionException("eval in a condition");
+                    return entityLookup();
+                default:
+                    break;
+            }
+            if (peekSymbol("(")) throw new UnsupportedExpressionException("function " + name + "()");
+            if (mode == Mode.CONDITION) {
+                itemFields.add(name);
+                return "ExpressionRuntime.field(item, " + literal(name) + ")";
+            }
+            switch (name) {
+                case "item": {
+                    // The whole item (rendered as JSON) is left to Josson.
+                    if (!peekSymbol(".")) throw new UnsupportedExpressionException("bare item");
+                    final Token next = tokens.get(position + 1);
+                    if (next.kind() == Kind.IDENT) itemFields.add(next.text());
+                    return "item";
+                }
+                case "session":
+                case "global": {
+                    expectSymbol(".");
+                    final String key = expect(Kind.IDENT);
+                    usesScope = true;
+                    return "scope." + name + "(" + literal(key) + ")";
+                }
+                default:
+                    throw new UnsupportedExpressionException("identifier " + name);
+            }
+        }
+
+        /** {@code eval(concat('session.<map>.', <expr>))} — an entity lookup; any other eval is unsupported. */
+        private String entityLookup() {
+            expectSymbol("(");
+            if (!expect(Kind.IDENT).equals("concat")) throw new UnsupportedExpressionException("eval");
+            expectSymbol("(");
+            final String prefix = expect(Kind.STRING);
+            if (!prefix.startsWith("session.") || !prefix.endsWith(".")
+                    || prefix.indexOf('.', 8) != prefix.length() - 1 || prefix.length() < 10) {
+                throw new UnsupportedExpressionException("eval of '" + prefix + "'");
+            }
+            expectSymbol(",");
+            final String id = or();
+            expectSymbol(")");
+            expectSymbol(")");
+            final String mapKey = prefix.substring(8, prefix.length() - 1);
+            entityMaps.add(mapKey);
+            usesScope = true;
+            return "scope.entity(" + literal(mapKey) + ", " + id + ")";
+        }
+
+        /** {@code (a, b, ...)} as a Java {@code Object[]}; {@code literalsOnly} for {@code in(...)}. */
+        private String arguments(boolean literalsOnly) {
+            expectSymbol("(");
+            final List<String> values = new ArrayList<>();
+            if (!acceptSymbol(")")) {
+                do {
+                    if (literalsOnly) {
+                        final Token token = tokens.get(position++);
+                        if (token.kind() == Kind.STRING) values.add(literal(token.text()));
+                        else if (token.kind() == Kind.NUMBER) values.add(number(token.text()));
+                        else throw new UnsupportedExpressionException("non-literal in()");
+                    } else {
+                        values.add(or());
+                    }
+                } while (acceptSymbol(","));
+                expectSymbol(")");
+            }
+            return "new Object[] {" + String.join(", ", values) + "}";
+        }
+
+        private static String number(String text) {
+            if (text.contains(".")) return "Double.valueOf(" + Double.parseDouble(text) + "D)";
+            return "Long.valueOf(" + Long.parseLong(text) + "L)";
+        }
+
+        private static String literal(String text) {
+            final StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+            for (char c : text.toCharArray()) {
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    default -> {
+                        if (c < 0x20 || c > 0x7e) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                    }
+                }
+            }
+            return sb.append('"').toString();
+        }
+
+        private Token peek() {
+            return tokens.get(position);
+        }
+
+        private boolean peekSymbol(String symbol) {
+            return peek().kind() == Kind.SYMBOL && peek().text().equals(symbol);
+        }
+
+        private boolean acceptSymbol(String symbol) {
+            if (!peekSymbol(symbol)) return false;
+            position++;
+            return true;
+        }
+
+        private void expectSymbol(String symbol) {
+            if (!acceptSymbol(symbol)) throw new UnsupportedExpressionException("expected '" + symbol + "'");
+        }
+
+        private String expect(Kind kind) {
+            final Token token = peek();
+            if (token.kind() != kind) throw new UnsupportedExpressionException("expected " + kind);
+            position++;
+            return token.text();
+        }
+    }
+
+    /** The expression is valid Josson but outside the compiled subset (or not valid at all). */
+    private static final class UnsupportedExpressionException extends RuntimeException {
+        UnsupportedExpressionException(String message) {
+            super(message, null, false, false);
+        }
+    }
+} // class ExpressionCompiler
@@ -0,0 +1,111 @@
+package sk.concentra.jcml.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operations called by the classes {@link ExpressionCompiler} generates. Values are what
+ * the item representation holds — {@link JsonNode}s for {@code ObjectNode} items and
+ * entities, plain Java values for {@link ReportRecord}s — and {@code null} for missing.
+ *
+ * <p>The semantics follow Josson's for the supported subset: a missing operand makes
+ * {@code concat} missing and {@code in}/ordering comparisons false, numbers compare
+ * numerically, everything else by text.</p>
+ */
+public final class ExpressionRuntime {
+
+    public static final int EQ = 0;
+    public static final int NE = 1;
+    public static final int LT = 2;
+    public static final int LE = 3;
+    public static final int GT = 4;
+    public static final int GE = 5;
+
+    private ExpressionRuntime() {
+    }
+
+    public static Object field(Object value, String name) {
+        if (value instanceof JsonNode node) return present(node.get(name));
+        if (value instanceof ReportRecord record) return record.get(name);
+        if (value instanceof Map<?, ?> map) return map.get(name);
+        return null;
+    }
+
+    public static Object index(Object value, int index) {
+        if (value instanceof JsonNode node) return present(node.get(index));
+        if (value instanceof List<?> list) return index < list.size() ? list.get(index) : null;
+        if (value instanceof int[] array) return index < array.length ? array[index] : null;
+        return null;
+    }
+
+    public static Object concat(Object[] parts) {
+        final StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            final String text = text(part);
+            if (text == null) return null;
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+
+    public static Object in(Object value, Object[] options) {
+        if (value == null) return Boolean.FALSE;
+        for (Object option : options) {
+            if (compareTo(value, option) == 0) return Boolean.TRUE;
+        }
+        return Boolean.FALSE;
+    }
+
+    public static Object compare(Object a, Object b, int operator) {
+        if (a == null || b == null) {
+            final boolean bothMissing = a == null && b == null;
+            return switch (operator) {
+                case EQ -> bothMissing;
+                case NE -> !bothMissing;
+                default -> Boolean.FALSE;
+            };
+        }
+        final int cmp = compareTo(a, b);
+        return switch (operator) {
+            case EQ -> cmp == 0;
+            case NE -> cmp != 0;
+            case LT -> cmp < 0;
+            case LE -> cmp <= 0;
+            case GT -> cmp > 0;
+            default -> cmp >= 0;
+        };
+    }
+
+    public static boolean truthy(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean b) return b;
+        if (value instanceof JsonNode node) return node.asBoolean();
+        if (value instanceof Number n) return n.doubleValue() != 0;
+        return "true".equals(text(value).trim());
+    }
+
+    /** Text of a scalar; containers as JSON for nodes, as {@link ReportRecord#text} otherwise. */
+    public static String text(Object value) {
+        if (value instanceof JsonNode node) return node.isValueNode() ? node.asText() : node.toString();
+        return ReportRecord.text(value);
+    }
+
+    private static int compareTo(Object a, Object b) {
+        final Double x = number(a);
+        final Double y = number(b);
+        if (x != null && y != null) return Double.compare(x, y);
+        return text(a).compareTo(text(b));
+    }
+
+    private static Double number(Object value) {
+        if (value instanceof JsonNode node) return node.isNumber() ? node.doubleValue() : null;
+        if (value instanceof Number n) return n.doubleValue();
+        return null;
+    }
+
+    private static JsonNode present(JsonNode node) {
+        return node == null || node.isNull() || node.isMissingNode() ? null : node;
+    }
+} // class ExpressionRuntime
@@ -2,18 +2,105 @@ package sk.concentra.jcml.pipeline;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import sk.concentra.jcml.schema.FieldProjection;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Contract for a pipeline processing step.
  * Receives a list of items and returns a (potentially transformed) list of items.
  * Implementations may add, remove, or modify items.
+ *
+ * <h3>Item ownership</h3>
+ * <p>The pipeline owns the items: they are decoded for one run and not visible anywhere
+ * else, so a step may modify the items it receives in place and return them (or the same
+ * list) instead of copying. The same applies to {@link ReportRecord}s in the typed lane.
+ * The rules that make this safe:</p>
+ * <ul>
+ *   <li>Only steps whose {@code items} access is {@code write} (the default) may modify
+ *       items; the step graph never runs them concurrently with another step that touches
+ *       the items. {@code read} steps must leave them unchanged.</li>
+ *   <li>Modify items at the top level only — set, replace or remove fields. Nested objects
+ *       and arrays may be shared between items (e.g. the parent fields of unwrapped array
+ *       elements) or with the session context, so replace them instead of changing them.</li>
+ *   <li>An input item must not be used after it has been modified into an output item —
+ *       the step that needs the original afterwards asks for a snapshot.</li>
+ * </ul>
+ * <p>A step that does need the items untouched (e.g. it keeps references across runs, or
+ * mutates nested values) declares {@link #snapshotIsolation}; the pipeline then hands it
+ * deep copies.</p>
  */
 public interface PipelineAction {
     List<ObjectNode> process(List<ObjectNode> input,
                              Map<String, Object> globalContext,
                              Map<String, Object> sessionContext,
                              JsonNode params);
-}
\ No newline at end of file
+
+    /**
+     * Whether this step must receive private deep copies of the items for the given
+     * {@code params} instead of the pipeline's own items. Default {@code false}: the step
+     * follows the ownership rules above. A step may also be isolated from pipeline.json
+     * with {@code "snapshotIsolation": true}.
+     */
+    default boolean snapshotIsolation(JsonNode params) {
+        return false;
+    }
+
+    /**
+     * Whether this step queries the database for the given {@code params}. Such steps are
+     * left out of isolated runs (the startup warm-up), which must work without a database.
+     */
+    default boolean readsDatabase(JsonNode params) {
+        return false;
+    }
+
+    /**
+     * Session context keys this step writes for the given {@code params} besides
+     * {@code params.sessionContextKey} and its {@code List} variant (e.g. secondary indexes).
+     * Counted as the step's writes in the step graph and as its keys for {@code lazy}.
+     */
+    default Set<String> sessionContextKeys(JsonNode params) {
+        return Set.of();
+    }
+
+    /**
+     * Schema fields this step reads from the items for the given {@code params}, used to
+     * derive the decode projection when the pipeline is loaded. The default
+     * {@link FieldProjection#ALL} means "unknown" and disables projection for the whole
+     * pipeline, so custom actions stay correct without implementing this.
+     */
+    default FieldProjection fieldDemand(JsonNode params) {
+        return FieldProjection.ALL;
+    }
+
+    /**
+     * Message types ({@code _messageType}) whose items this step reads or changes for the
+     * given {@code params}, or {@code null} for all of them. Used by the type-partitioned
+     * mode to hand the step only those items; the step must pass every other item through
+     * unchanged and keep the RecoveryKey order of the items it returns. Can be overridden
+     * from pipeline.json with {@code "messageTypes": [...]}.
+     */
+    default Set<String> messageTypes(JsonNode params) {
+        return null;
+    }
+
+    /**
+     * Typed version of this step for the given {@code params}, used by the report fast lane,
+     * or {@code null} if the params need the generic {@code ObjectNode} representation.
+     * A single step without a typed version sends the whole report through {@link #process}.
+     */
+    default RecordStep recordStep(JsonNode params) {
+        return null;
+    }
+
+    /**
+     * Columnar version of this step for the given {@code params}, or {@code null}. Optional
+     * on top of {@link #recordStep}: in the columnar lane, steps without it receive the
+     * batch's records and their output is wrapped into a new batch.
+     */
+    default BatchStep batchStep(JsonNode params) {
+        return null;
+    }
+}
@@ -0,0 +1,197 @@
+package sk.concentra.jcml.pipeline;
+
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.core.beans.BeanIntrospection;
+import io.micronaut.core.beans.BeanIntrospector;
+import io.micronaut.core.beans.BeanProperty;
+import io.micronaut.data.annotation.Id;
+import io.micronaut.data.annotation.MappedProperty;
+import io.micronaut.data.repository.CrudRepository;
+import io.micronaut.inject.BeanDefinition;
+import io.micronaut.inject.ExecutableMethod;
+import jakarta.inject.Singleton;
+import sk.concentra.jcml.persistence.FindAllRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Resolves the class names in pipeline.json from Micronaut's compile-time metadata.
+ *
+ * <p>Actions and repositories come from their bean definitions, entities from their bean
+ * introspections (generated for {@code @MappedEntity}, {@code @Serdeable} and
+ * {@code @Introspected} classes). Repository methods are called through the generated
+ * {@link ExecutableMethod}s and entity properties through the generated
+ * {@link BeanProperty} accessors. Nothing loads classes by name, reads fields or invokes
+ * methods reflectively, so the pipeline runs unchanged in a native image and a preload
+ * costs no reflection on the JVM. Lookups are cached — the beans do not change at runtime.</p>
+ */
+@Singleton
+public class PipelineRegistry {
+
+    /** ID property names tried when an entity has no {@code @Id}. */
+    private static final List<String> COMMON_ID_NAMES =
+            List.of("id", "skillTargetId", "agentTeamId", "precisionQueueId");
+
+    private final ApplicationContext applicationContext;
+    private final Map<String, PipelineAction> actions = new ConcurrentHashMap<>();
+    private final Map<String, Repository> repositories = new ConcurrentHashMap<>();
+    private final Map<String, Entity> entities = new ConcurrentHashMap<>();
+
+    public PipelineRegistry(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    // ── Actions ───────────────────────────────────────────────────────────────
+
+    /** The {@link PipelineAction} bean of the given class. */
+    public PipelineAction action(String className) {
+        return actions.computeIfAbsent(className, name -> {
+            for (BeanDefinition<PipelineAction> definition : applicationContext.getBeanDefinitions(PipelineAction.class)) {
+                if (definition.getBeanType().getName().equals(name)) {
+                    return applicationContext.getBean(definition);
+                }
+            }
+            throw new IllegalArgumentException("No pipeline action bean of class '" + name
+                    + "' — actions must be beans implementing PipelineAction");
+        });
+    }
+
+    // ── Repositories ──────────────────────────────────────────────────────────
+
+    /**
+     * The repository bean of the given class or interface. Micronaut Data repositories are
+     * found by the interface they implement (the bean itself is the generated
+     * {@code $Intercepted} class).
+     */
+    public Repository repository(String className) {
+        return repositories.computeIfAbsent(className, name -> {
+            BeanDefinition<?> match = null;
+            for (BeanDefinition<?> definition : applicationContext.getAllBeanDefinitions()) {
+                if (definition.getBeanType().getName().equals(name)) {
+                    match = definition;
+                    break;
+                }
+                if (match == null && isIntroducedFor(definition, name)) {
+                    match = definition;
+                }
+            }
+            if (match == null) {
+                throw new IllegalArgumentException("No repository bean of type '" + name + "'");
+            }
+            return new Repository(name, applicationContext.getBean(match), match);
+        });
+    }
+
+    private static boolean isIntroducedFor(BeanDefinition<?> definition, String interfaceName) {
+        for (Class<?> type : definition.getBeanType().getInterfaces()) {
+            if (type.getName().equals(interfaceName)) return true;
+        }
+        return false;
+    }
+
+    /** A repository bean and the methods its bean definition makes executable. */
+    public record Repository(String name, Object bean, BeanDefinition<?> definition) {
+
+        /**
+         * Result of the no-argument finder {@code methodName}. {@code findAll} is called
+         * directly on {@link CrudRepository} and {@link FindAllRepository} beans.
+         */
+        public Iterable<?> find(String methodName) {
+            if ("findAll".equals(methodName)) {
+                if (bean instanceof CrudRepository<?, ?> crud) return crud.findAll();
+                if (bean instanceof FindAllRepository<?> repo) return repo.findAll();
+            }
+            return (Iterable<?>) method(methodName)
+                    .orElseThrow(() -> new IllegalArgumentException(
+                            "Repository '" + name + "' has no executable method " + methodName + "()"))
+                    .invoke(bean);
+        }
+
+        /** The finder {@code methodName(Collection)} as a function, if the repository declares it. */
+        public Optional<Function<Collection<?>, Iterable<?>>> finder(String methodName) {
+            return method(methodName, Collection.class)
+                    .map(method -> ids -> (Iterable<?>) method.invoke(bean, ids));
+        }
+
+        @SuppressWarnings("unchecked")
+        private Optional<ExecutableMethod<Object, Object>> method(String methodName, Class<?>... argumentTypes) {
+            return ((BeanDefinition<Object>) definition).findMethod(methodName, argumentTypes)
+                    .map(method -> (ExecutableMethod<Object, Object>) method);
+        }
+    }
+
+    // ── Entities ──────────────────────────────────────────────────────────────
+
+    /** The introspection of the given entity class. */
+    public Entity entity(String className) {
+        return entities.computeIfAbsent(className, name -> {
+            Collection<BeanIntrospection<Object>> found =
+                    BeanIntrospector.SHARED.findIntrospections(reference -> reference.getName().equals(name));
+            if (found.isEmpty()) {
+                throw new IllegalArgumentException("No bean introspection for entity class '" + name
+                        + "' — annotate it with @MappedEntity, @Serdeable or @Introspected");
+            }
+            return new Entity(found.iterator().next());
+        });
+    }
+
+    /** An entity type and its ID property ({@code @Id}, else a common ID name), if any. */
+    public static final class Entity {
+
+        private final BeanIntrospection<Object> introspection;
+        private final BeanProperty<Object, Object> idProperty;
+
+        Entity(BeanIntrospection<Object> introspection) {
+            this.introspection = introspection;
+            this.idProperty = findIdProperty(introspection);
+        }
+
+        public Class<Object> type() {
+            return introspection.getBeanType();
+        }
+
+        public String simpleName() {
+            return introspection.getBeanType().getSimpleName();
+        }
+
+        /** The ID property, or {@code null}. */
+        public BeanProperty<Object, Object> idProperty() {
+            return idProperty;
+        }
+
+        /** Property by Java name or by its {@code @MappedProperty} column name, ignoring case; or {@code null}. */
+        public BeanProperty<Object, Object> property(String name) {
+            for (BeanProperty<Object, Object> property : introspection.getBeanProperties()) {
+                if (property.getName().equalsIgnoreCase(name)
+                        || property.stringValue(MappedProperty.class).map(name::equalsIgnoreCase).orElse(false)) {
+                    return property;
+                }
+            }
+            return null;
+        }
+
+        private static BeanProperty<Object, Object> findIdProperty(BeanIntrospection<Object> introspection) {
+            List<BeanProperty<Object, Object>> properties = new ArrayList<>(introspection.getBeanProperties());
+            for (BeanProperty<Object, Object> property : properties) {
+                if (property.hasAnnotation(Id.class)) return property;
+            }
+            for (String name : COMMON_ID_NAMES) {
+                for (BeanProperty<Object, Object> property : properties) {
+                    if (property.getName().equalsIgnoreCase(name)) return property;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Entity[" + introspection.getBeanType().getName() + "]";
+        }
+    }
+} // class PipelineRegistry
@@ -0,0 +1,273 @@
+package sk.concentra.jcml.pipeline;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Columnar view of a list of {@link ReportRecord}s for the columnar report lane.
+ *
+ * <p>A batch is the row list plus a <em>selection vector</em> — the row ids visible in this
+ * batch, in order. Filtering replaces the selection, sorting permutes it; neither touches
+ * the rows. Field values are read through {@link Column}s: one primitive
+ * ({@code int}/{@code long}/{@code double}) or dictionary-encoded ({@code String}) array
+ * per field, built on first use from all rows and shared by every batch derived from the
+ * same rows. A step therefore pays one map lookup per field instead of one per item, and
+ * comparisons run on primitives or dictionary ranks.</p>
+ *
+ * <p>Steps without a columnar form get the selected rows back as records through
+ * {@link #records()}, and their output becomes a new batch ({@link #of}); consecutive
+ * record steps thus pass the same list without conversion.</p>
+ *
+ * <p>Columns reflect the rows at the time they are built, so a batch must not be read
+ * after its records have been modified — record steps hand on a new batch instead.</p>
+ */
+public final class RecordBatch {
+
+    public static final RecordBatch EMPTY = of(List.of());
+
+    private final List<ReportRecord> rows;
+    private final int[] selection; // null = all rows in order
+    private final Map<String, Column> columns;
+
+    private RecordBatch(List<ReportRecord> rows, int[] selection, Map<String, Column> columns) {
+        this.rows = rows;
+        this.selection = selection;
+        this.columns = columns;
+    }
+
+    public static RecordBatch of(List<ReportRecord> records) {
+        return new RecordBatch(records, null, new ConcurrentHashMap<>());
+    }
+
+    /** Number of selected rows. */
+    public int size() {
+        return selection == null ? rows.size() : selection.length;
+    }
+
+    /** Row id of the {@code i}-th selected row — the index to pass to {@link Column} accessors. */
+    public int row(int i) {
+        return selection == null ? i : selection[i];
+    }
+
+    /**
+     * Column of the value at {@code path} ({@link ReportRecord#path} semantics) for every
+     * row, built on first use.
+     */
+    public Column column(String path) {
+        return columns.computeIfAbsent(path, this::buildColumn);
+    }
+
+    /** Batch with the selected rows that match {@code rowFilter} (called with row ids). */
+    public RecordBatch select(IntPredicate rowFilter) {
+        final int n = size();
+        final int[] selected = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            final int row = row(i);
+            if (rowFilter.test(row)) selected[count++] = row;
+        }
+        return count == n ? this : new RecordBatch(rows, Arrays.copyOf(selected, count), columns);
+    }
+
+    /** Batch with the selected rows in the order of {@code rowOrder} (compares row ids; stable). */
+    public RecordBatch sort(Comparator<Integer> rowOrder) {
+        final Integer[] order = new Integer[size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = row(i);
+        }
+        Arrays.sort(order, rowOrder);
+        final int[] sorted = new int[order.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = order[i];
+        }
+        return new RecordBatch(rows, sorted, columns);
+    }
+
+    /** The selected rows, in order; the row list itself when nothing was filtered or reordered. */
+    public List<ReportRecord> records() {
+        if (selection == null) return rows;
+        final List<ReportRecord> selected = new ArrayList<>(selection.length);
+        for (int row : selection) {
+            selected.add(rows.get(row));
+        }
+        return selected;
+    }
+
+    private Column buildColumn(String path) {
+        final int n = rows.size();
+        final Object[] values = new Object[n];
+        Class<?> type = null;
+        boolean uniform = true;
+        for (int row = 0; row < n; row++) {
+            final Object value = rows.get(row).path(path);
+            values[row] = value;
+            if (value == null) continue;
+            if (type == null) type = value.getClass();
+            else uniform &= type == value.getClass();
+        }
+        if (type == null || !uniform) return new ObjectColumn(values);
+        if (type == Integer.class) return IntColumn.of(values);
+        if (type == Long.class) return LongColumn.of(values);
+        if (type == Double.class) return DoubleColumn.of(values);
+        if (type == String.class) return DictionaryColumn.of(values);
+        return new ObjectColumn(values);
+    }
+
+    @Override
+    public String toString() {
+        return "RecordBatch[" + size() + "/" + rows.size() + " rows, columns=" + columns.keySet() + "]";
+    }
+
+    // ── Columns ──────────────────────────────────────────────────────────────
+
+    /** Values of one field for all rows of a batch, indexed by row id. */
+    public sealed interface Column permits IntColumn, LongColumn, DoubleColumn, DictionaryColumn, ObjectColumn {
+        boolean isNull(int row);
+
+        /** The value as the record holds it ({@code Integer}, {@code String}, …), {@code null} if absent. */
+        Object get(int row);
+
+        /** {@link ReportRecord#text} of the value. */
+        default String text(int row) {
+            return ReportRecord.text(get(row));
+        }
+    }
+
+    public static final class IntColumn implements Column {
+        private final int[] values;
+        private final BitSet present;
+
+        private IntColumn(int[] values, BitSet present) {
+            this.values = values;
+            this.present = present;
+        }
+
+        static IntColumn of(Object[] boxed) {
+            final int[] values = new int[boxed.length];
+            final BitSet present = new BitSet(boxed.length);
+            for (int i = 0; i < boxed.length; i++) {
+                if (boxed[i] == null) continue;
+                values[i] = (Integer) boxed[i];
+                present.set(i);
+            }
+            return new IntColumn(values, present);
+        }
+
+        public int value(int row)           { return values[row]; }
+        @Override public boolean isNull(int row) { return !present.get(row); }
+        @Override public Object get(int row)     { return present.get(row) ? values[row] : null; }
+    }
+
+    public static final class LongColumn implements Column {
+        private final long[] values;
+        private final BitSet present;
+
+        private LongColumn(long[] values, BitSet present) {
+            this.values = values;
+            this.present = present;
+        }
+
+        static LongColumn of(Object[] boxed) {
+            final long[] values = new long[boxed.length];
+            final BitSet present = new BitSet(boxed.length);
+            for (int i = 0; i < boxed.length; i++) {
+                if (boxed[i] == null) continue;
+                values[i] = (Long) boxed[i];
+                present.set(i);
+            }
+            return new LongColumn(values, present);
+        }
+
+        public long value(int row)          { return values[row]; }
+        @Override public boolean isNull(int row) { return !present.get(row); }
+        @Override public Object get(int row)     { return present.get(row) ? values[row] : null; }
+    }
+
+    public static final class DoubleColumn implements Column {
+        private final double[] values;
+        private final BitSet present;
+
+        private DoubleColumn(double[] values, BitSet present) {
+            this.values = values;
+            this.present = present;
+        }
+
+        static DoubleColumn of(Object[] boxed) {
+            final double[] values = new double[boxed.length];
+            final BitSet present = new BitSet(boxed.length);
+            for (int i = 0; i < boxed.length; i++) {
+                if (boxed[i] == null) continue;
+                values[i] = (Double) boxed[i];
+                present.set(i);
+            }
+            return new DoubleColumn(values, present);
+        }
+
+        public double value(int row)        { return values[row]; }
+        @Override public boolean isNull(int row) { return !present.get(row); }
+        @Override public Object get(int row)     { return present.get(row) ? values[row] : null; }
+    }
+
+    /** Strings as codes into a dictionary of the distinct values; code {@code -1} is null. */
+    public static final class DictionaryColumn implements Column {
+        private final int[] codes;
+        private final String[] dictionary;
+        private volatile int[] ranks;
+
+        private DictionaryColumn(int[] codes, String[] dictionary) {
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        static DictionaryColumn of(Object[] values) {
+            final int[] codes = new int[values.length];
+            final Map<String, Integer> index = new HashMap<>();
+            final List<String> dictionary = new ArrayList<>();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    codes[i] = -1;
+                    continue;
+                }
+                codes[i] = index.computeIfAbsent((String) values[i], value -> {
+                    dictionary.add(value);
+                    return dictionary.size() - 1;
+                });
+            }
+            return new DictionaryColumn(codes, dictionary.toArray(String[]::new));
+        }
+
+        public int code(int row)                 { return codes[row]; }
+        public int dictionarySize()              { return dictionary.length; }
+        public String entry(int code)            { return dictionary[code]; }
+        @Override public boolean isNull(int row) { return codes[row] < 0; }
+        @Override public Object get(int row)     { return codes[row] < 0 ? null : dictionary[codes[row]]; }
+        @Override public String text(int row)    { return codes[row] < 0 ? null : dictionary[codes[row]]; }
+
+        /** Position of the row's value in {@link String#compareTo} order of the dictionary (non-null rows only). */
+        public int rank(int row) {
+            int[] r = ranks;
+            if (r == null) {
+                final Integer[] order = new Integer[dictionary.length];
+                for (int i = 0; i < order.length; i++) order[i] = i;
+                Arrays.sort(order, Comparator.comparing(code -> dictionary[code]));
+                r = new int[dictionary.length];
+                for (int i = 0; i < order.length; i++) r[order[i]] = i;
+                ranks = r;
+            }
+            return r[codes[row]];
+        }
+    }
+
+    /** Fallback for nested maps, lists, characters and fields holding values of different types. */
+    public static final class ObjectColumn implements Column {
+        private final Object[] values;
+
+        private ObjectColumn(Object[] values) {
+            this.values = values;
+        }
+
+        @Override public boolean isNull(int row) { return values[row] == null; }
+        @Override public Object get(int row)     { return values[row]; }
+    }
+} // class RecordBatch
@@ -0,0 +1,16 @@
+package sk.concentra.jcml.pipeline;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed counterpart of {@link PipelineAction#process} for the report fast lane: the same
+ * step, with its params already applied, operating on {@link ReportRecord}s instead of
+ * {@code ObjectNode}s. Must produce the same report columns as the generic step.
+ */
+@FunctionalInterface
+public interface RecordStep {
+    List<ReportRecord> process(List<ReportRecord> input,
+                               Map<String, Object> globalContext,
+                               Map<String, Object> sessionContext);
+}
@@ -0,0 +1,168 @@
+package sk.concentra.jcml.pipeline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, typed message representation used by the report fast lane.
+ *
+ * <p>Carries the same information as the decoded {@code ObjectNode} for the parts a report
+ * needs: the {@code Config_Message_Log} metadata and the 24-byte header as plain fields,
+ * and the (projected) schema fields plus everything the steps add as plain Java values —
+ * {@code Integer}/{@code Long}/{@code Float}/{@code Double}/{@code Character}/{@code String},
+ * {@code Map} for nested objects and {@code List} for arrays. No Jackson nodes are built.</p>
+ *
+ * <p>{@link #get(String)} understands the synthetic names of the generic node
+ * ({@code _messageType}, {@code _header}, {@code _dbMetadata}); {@link #path(String)}
+ * additionally resolves {@code _dbMetadata.recoveryKey}, {@code _header[1]} and nested
+ * map paths. The diagnostic {@code _dataLength} / {@code _schema*} fields are not kept.</p>
+ */
+public final class ReportRecord {
+
+    private final String messageType;
+    private final Double recoveryKey;
+    private final String logOperation;
+    private final String tableName;
+    private final long dateTime;
+    private int[] header;
+    private final Map<String, Object> fields;
+
+    public ReportRecord(String messageType, Double recoveryKey, String logOperation, String tableName,
+                        long dateTime) {
+        this(messageType, recoveryKey, logOperation, tableName, dateTime, null, new LinkedHashMap<>());
+    }
+
+    private ReportRecord(String messageType, Double recoveryKey, String logOperation, String tableName,
+                         long dateTime, int[] header, Map<String, Object> fields) {
+        this.messageType  = messageType;
+        this.recoveryKey  = recoveryKey;
+        this.logOperation = logOperation;
+        this.tableName    = tableName;
+        this.dateTime     = dateTime;
+        this.header       = header;
+        this.fields       = fields;
+    }
+
+    public String messageType()  { return messageType; }
+    public Double recoveryKey()  { return recoveryKey; }
+    public String logOperation() { return logOperation; }
+    public String tableName()    { return tableName; }
+    public long dateTime()       { return dateTime; }
+    public int[] header()        { return header; }
+
+    public void setHeader(int[] header) {
+        this.header = header;
+    }
+
+    /** Schema fields and fields written by steps, in insertion order. */
+    public Map<String, Object> fields() {
+        return fields;
+    }
+
+    public Object get(String name) {
+        return switch (name) {
+            case "_messageType" -> messageType;
+            case "_header"      -> header;
+            case "_dbMetadata"  -> dbMetadata();
+            default             -> fields.get(name);
+        };
+    }
+
+    public void put(String name, Object value) {
+        fields.put(name, value);
+    }
+
+    /** Dotted path with optional {@code [n]} indexes, e.g. {@code _dbMetadata.recoveryKey}. */
+    public Object path(String path) {
+        if (path.startsWith("_dbMetadata.") && path.indexOf('.', 12) < 0) {
+            return dbMetadataField(path.substring(12));
+        }
+        Object current = this;
+        for (String segment : path.split("\\.")) {
+            final int bracket = segment.indexOf('[');
+            final String name = bracket < 0 ? segment : segment.substring(0, bracket);
+            current = current == this ? get(name) : current instanceof Map<?, ?> m ? m.get(name) : null;
+            if (bracket >= 0 && current != null) {
+                final int index = Integer.parseInt(segment.substring(bracket + 1, segment.indexOf(']', bracket)));
+                current = indexed(current, index);
+            }
+            if (current == null) return null;
+        }
+        return current;
+    }
+
+    /** Same core and header; an independent copy of the field map (values are shared). */
+    public ReportRecord copy() {
+        return new ReportRecord(messageType, recoveryKey, logOperation, tableName, dateTime, header,
+                new LinkedHashMap<>(fields));
+    }
+
+    /**
+     * Fully independent copy: nested maps, lists and the header are copied as well — for
+     * steps with snapshot isolation.
+     */
+    public ReportRecord deepCopy() {
+        final Map<String, Object> copied = new LinkedHashMap<>(fields.size() * 2);
+        fields.forEach((name, value) -> copied.put(name, deepCopyValue(value)));
+        return new ReportRecord(messageType, recoveryKey, logOperation, tableName, dateTime,
+                header == null ? null : header.clone(), copied);
+    }
+
+    /**
+     * Text of a value the way {@code JsonNode.asText()} renders the equivalent node:
+     * {@code null} stays {@code null}, containers (objects, arrays) render as {@code ""}.
+     */
+    public static String text(Object value) {
+        if (value == null || value instanceof String) return (String) value;
+        if (value instanceof Map<?, ?> || value instanceof List<?> || value instanceof int[]) return "";
+        return String.valueOf(value);
+    }
+
+    private Map<String, Object> dbMetadata() {
+        final Map<String, Object> meta = new HashMap<>(); // same key order as the generic _dbMetadata
+        meta.put("recoveryKey", recoveryKey);
+        meta.put("logOperation", logOperation);
+        meta.put("tableName", tableName);
+        meta.put("dateTime", dateTime);
+        return meta;
+    }
+
+    private Object dbMetadataField(String name) {
+        return switch (name) {
+            case "recoveryKey"  -> recoveryKey;
+            case "logOperation" -> logOperation;
+            case "tableName"    -> tableName;
+            case "dateTime"     -> dateTime;
+            default             -> null;
+        };
+    }
+
+    private static Object deepCopyValue(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            final Map<Object, Object> copy = new LinkedHashMap<>(map.size() * 2);
+            map.forEach((k, v) -> copy.put(k, deepCopyValue(v)));
+            return copy;
+        }
+        if (value instanceof List<?> list) {
+            final List<Object> copy = new ArrayList<>(list.size());
+            for (Object element : list) copy.add(deepCopyValue(element));
+            return copy;
+        }
+        if (value instanceof int[] ints) return ints.clone();
+        return value;
+    }
+
+    private static Object indexed(Object value, int index) {
+        if (value instanceof int[] ints) return index < ints.length ? ints[index] : null;
+        if (value instanceof List<?> list) return index < list.size() ? list.get(index) : null;
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "ReportRecord[" + messageType + ", rk=" + recoveryKey + ", fields=" + fields.keySet() + "]";
+    }
+} // class ReportRecord
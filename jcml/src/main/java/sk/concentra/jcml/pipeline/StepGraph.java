@@ -0,0 +1,174 @@
+package sk.concentra.jcml.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Dependency graph over the enabled steps of one pipeline run.
+ *
+ * <p>Each step declares how it touches the item list ({@code "items"}: {@code none},
+ * {@code read} or {@code write}) and which resources it {@code "reads"} and
+ * {@code "writes"}. Resources are session context keys ({@code agents},
+ * {@code cml_*}) or item fields ({@code item._cmlTransactionId}); a trailing
+ * {@code *} matches any key with that prefix. A later step depends on an earlier
+ * one if their item access or their resources conflict (read-after-write,
+ * write-after-read, write-after-write). Members of the same {@code parallelGroup}
+ * never depend on each other.</p>
+ *
+ * <p>A step without any declaration is treated as a barrier: it writes the items and
+ * reads/writes everything, so undeclared pipelines keep running strictly in order.</p>
+ */
+final class StepGraph {
+
+    static final String ANY = "*";
+
+    enum ItemAccess {
+        NONE, READ, WRITE;
+
+        static ItemAccess parse(String raw, String stepName) {
+            try {
+                return valueOf(raw.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("pipeline.json: step '" + stepName
+                        + "' has invalid 'items' value '" + raw + "' (expected none, read or write)");
+            }
+        }
+    }
+
+    private final List<PipelineStep> steps;
+    private final int[][] dependencies;
+    private final int[][] dependents;
+    private final int[] itemSource;
+
+    private StepGraph(List<PipelineStep> steps, int[][] dependencies, int[][] dependents, int[] itemSource) {
+        this.steps        = steps;
+        this.dependencies = dependencies;
+        this.dependents   = dependents;
+        this.itemSource   = itemSource;
+    }
+
+    static StepGraph build(List<PipelineStep> steps) {
+        int n = steps.size();
+        List<List<Integer>> deps = new ArrayList<>(n);
+        List<List<Integer>> rdeps = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            deps.add(new ArrayList<>());
+            rdeps.add(new ArrayList<>());
+        }
+        int[] itemSource = new int[n];
+        int lastWriter = -1;
+        for (int j = 0; j < n; j++) {
+            PipelineStep later = steps.get(j);
+            for (int i = 0; i < j; i++) {
+                if (conflicts(steps.get(i), later)) {
+                    deps.get(j).add(i);
+                    rdeps.get(i).add(j);
+                }
+            }
+            itemSource[j] = lastWriter;
+            if (later.items() == ItemAccess.WRITE) {
+                lastWriter = j;
+            }
+        }
+        return new StepGraph(steps, toArrays(deps), toArrays(rdeps), itemSource);
+    }
+
+    /**
+     * Load-time ordering check over declared resources: a step must not read a resource
+     * that only a <em>later</em> step writes (e.g. filtering on {@code item._cmlTransactionId}
+     * before the step that stamps it has run).
+     */
+    static void validateOrdering(List<PipelineStep> steps) {
+        for (int j = 0; j < steps.size(); j++) {
+            PipelineStep reader = steps.get(j);
+            if (!reader.declared()) continue;
+            for (String resource : reader.reads()) {
+                if (ANY.equals(resource)) continue;
+                boolean writtenBefore = false;
+                for (int i = 0; i < j && !writtenBefore; i++) {
+                    PipelineStep writer = steps.get(i);
+                    writtenBefore = writer.declared() && overlapsAny(writer.writes(), resource);
+                }
+                if (writtenBefore) continue;
+                for (int k = j + 1; k < steps.size(); k++) {
+                    PipelineStep writer = steps.get(k);
+                    if (writer.declared() && overlapsAny(writer.writes(), resource)) {
+                        throw new IllegalStateException("pipeline.json: step '" + reader.name() + "' reads '"
+                                + resource + "', which is only written by the later step '" + writer.name()
+                                + "' — move '" + reader.name() + "' after it");
+                    }
+                }
+            }
+        }
+    }
+
+    int size() {
+        return steps.size();
+    }
+
+    PipelineStep step(int index) {
+        return steps.get(index);
+    }
+
+    int[] dependencies(int index) {
+        return dependencies[index];
+    }
+
+    int[] dependents(int index) {
+        return dependents[index];
+    }
+
+    /** Index of the step whose item list {@code index} consumes, or -1 for the pipeline input. */
+    int itemSource(int index) {
+        return itemSource[index];
+    }
+
+    static boolean conflicts(PipelineStep earlier, PipelineStep later) {
+        if (earlier.parallelGroup() != null && earlier.parallelGroup().equals(later.parallelGroup())) {
+            return false;
+        }
+        ItemAccess a = earlier.items();
+        ItemAccess b = later.items();
+        if ((a == ItemAccess.WRITE && b != ItemAccess.NONE) || (a != ItemAccess.NONE && b == ItemAccess.WRITE)) {
+            return true;
+        }
+        return overlaps(earlier.writes(), later.reads())
+                || overlaps(earlier.reads(), later.writes())
+                || overlaps(earlier.writes(), later.writes());
+    }
+
+    private static boolean overlaps(Set<String> left, Set<String> right) {
+        for (String resource : right) {
+            if (overlapsAny(left, resource)) return true;
+        }
+        return false;
+    }
+
+    private static boolean overlapsAny(Set<String> resources, String resource) {
+        for (String candidate : resources) {
+            if (overlaps(candidate, resource)) return true;
+        }
+        return false;
+    }
+
+    static boolean overlaps(String a, String b) {
+        boolean aWildcard = a.endsWith(ANY);
+        boolean bWildcard = b.endsWith(ANY);
+        String aPrefix = aWildcard ? a.substring(0, a.length() - 1) : a;
+        String bPrefix = bWildcard ? b.substring(0, b.length() - 1) : b;
+        if (aWildcard && bWildcard) return aPrefix.startsWith(bPrefix) || bPrefix.startsWith(aPrefix);
+        if (aWildcard) return b.startsWith(aPrefix);
+        if (bWildcard) return a.startsWith(bPrefix);
+        return a.equals(b);
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists) {
+        int[][] result = new int[lists.size()][];
+        for (int i = 0; i < lists.size(); i++) {
+            result[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return result;
+    }
+} // class StepGraph
@@ -0,0 +1,141 @@
+package sk.concentra.jcml.pipeline;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The items of one pipeline run, split by {@code _messageType} (type-partitioned mode).
+ *
+ * <p>Holds the items as one list in RecoveryKey order, as one list per message type, or
+ * both — each form is derived from the other on first use. A step restricted to some
+ * message types gets only their partitions ({@link #select}), and its output replaces
+ * them ({@link #replace}); a step over all types gets the partitions merged back on
+ * RecoveryKey ({@link #all}). Items of one message log row (e.g. unwrapped array
+ * elements) share the RecoveryKey and the type, so the merge restores the original
+ * order exactly.</p>
+ *
+ * <p>Partitions are only formed from a list that is in RecoveryKey order; after a step
+ * that reorders the items by anything else, restricted steps see the whole list again.
+ * Instances are immutable; the lazily derived forms are safe to compute concurrently.</p>
+ *
+ * @param <T> item type ({@code ObjectNode} or {@link ReportRecord})
+ */
+final class TypePartitions<T> {
+
+    /** How to read an item's message type and RecoveryKey. */
+    record Keys<T>(Function<T, String> type, Function<T, Double> recoveryKey) {
+        Comparator<T> order() {
+            return Comparator.comparing(recoveryKey, Comparator.nullsFirst(Comparator.naturalOrder()));
+        }
+    }
+
+    private final Keys<T> keys;
+    private final int size;
+    private volatile List<T> all;
+    private volatile Map<String, List<T>> partitions;
+    private volatile boolean unordered;
+
+    private TypePartitions(Keys<T> keys, int size, List<T> all, Map<String, List<T>> partitions) {
+        this.keys       = keys;
+        this.size       = size;
+        this.all        = all;
+        this.partitions = partitions;
+    }
+
+    static <T> TypePartitions<T> of(List<T> items, Keys<T> keys) {
+        return new TypePartitions<>(keys, items.size(), items, null);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** All items in order: the original list, or the partitions merged on RecoveryKey. */
+    List<T> all() {
+        List<T> merged = all;
+        if (merged == null) {
+            merged = new ArrayList<>(size);
+            for (List<T> partition : partitions.values()) {
+                merged.addAll(partition);
+            }
+            merged.sort(keys.order()); // stable; the partitions are sorted runs
+            all = merged;
+        }
+        return merged;
+    }
+
+    /**
+     * Items of the given message types in RecoveryKey order, or {@code null} if the items
+     * are not in RecoveryKey order and cannot be partitioned.
+     */
+    List<T> select(Set<String> types) {
+        final Map<String, List<T>> split = partitions();
+        if (split == null) return null;
+        final List<List<T>> selected = new ArrayList<>(types.size());
+        for (String type : types) {
+            final List<T> partition = split.get(type);
+            if (partition != null) selected.add(partition);
+        }
+        if (selected.isEmpty()) return List.of();
+        if (selected.size() == 1) return selected.getFirst();
+        final List<T> merged = new ArrayList<>();
+        selected.forEach(merged::addAll);
+        merged.sort(keys.order());
+        return merged;
+    }
+
+    /** These items with the partitions of {@code types} replaced by {@code output} (split by type). */
+    TypePartitions<T> replace(Set<String> types, List<T> output) {
+        final Map<String, List<T>> next = new LinkedHashMap<>(partitions());
+        next.keySet().removeAll(types);
+        split(output).forEach((type, items) -> next.merge(type, items, (existing, added) -> {
+            final List<T> merged = new ArrayList<>(existing.size() + added.size());
+            merged.addAll(existing);
+            merged.addAll(added);
+            merged.sort(keys.order());
+            return merged;
+        }));
+        int count = 0;
+        for (List<T> partition : next.values()) {
+            count += partition.size();
+        }
+        return new TypePartitions<>(keys, count, null, next);
+    }
+
+    private Map<String, List<T>> partitions() {
+        Map<String, List<T>> split = partitions;
+        if (split == null && !unordered) {
+            final List<T> items = all;
+            final Comparator<T> order = keys.order();
+            for (int i = 1; i < items.size(); i++) {
+                if (order.compare(items.get(i - 1), items.get(i)) > 0) {
+                    unordered = true;
+                    return null;
+                }
+            }
+            split = split(items);
+            partitions = split;
+        }
+        return split;
+    }
+
+    private Map<String, List<T>> split(List<T> items) {
+        final Map<String, List<T>> split = new LinkedHashMap<>();
+        for (T item : items) {
+            final String type = keys.type().apply(item);
+            split.computeIfAbsent(type == null ? "" : type, t -> new ArrayList<>()).add(item);
+        }
+        return split;
+    }
+
+    @Override
+    public String toString() {
+        return "TypePartitions[" + size + " items, "
+                + (partitions != null ? partitions.size() + " types" : "unsplit") + "]";
+    }
+} // class TypePartitions
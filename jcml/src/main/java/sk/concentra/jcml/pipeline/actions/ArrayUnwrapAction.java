@@ -11,6 +11,9 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -99,16 +102,16 @@ public class ArrayUnwrapAction implements PipelineAction {
             // Collect target arrays
             Map<String, JsonNode> targetArrays = new LinkedHashMap<>();
             for (String arrayKey : arraysToUnwrap) {
-                log.info("[{}] Looking for array: {}", sessionKey, arrayKey);
+                log.debug("[{}] Looking for array: {}", sessionKey, arrayKey);
                 JsonNode arr = original.path(arrayKey);
-                log.info("[{}] Found array: {}, type: {}, isEmpty: {}", sessionKey, arr, arr.getNodeType(), arr.isEmpty());
+                log.debug("[{}] Found array: {}, type: {}, isEmpty: {}", sessionKey, arr, arr.getNodeType(), arr.isEmpty());
 
                 // Unwrap POJO collections
                 if (arr.isPojo()) {
                     Object pojoValue = ((POJONode) arr).getPojo();
                     if (pojoValue instanceof Collection<?> || pojoValue instanceof Object[]) {
                         arr = objectMapper.valueToTree(pojoValue);
-                        log.info("[{}] Converted POJO collection - now type: {}, size: {}", sessionKey, arr.getNodeType(), arr.size());
+                        log.debug("[{}] Converted POJO collection - now type: {}, size: {}", sessionKey, arr.getNodeType(), arr.size());
                     }
                 }
 
@@ -118,7 +121,7 @@ public class ArrayUnwrapAction implements PipelineAction {
             }
 
             if (targetArrays.isEmpty()) {
-                log.info("[{}] No arrays to unwrap, passing through unchanged", sessionKey);
+                log.debug("[{}] No arrays to unwrap, passing through unchanged", sessionKey);
                 return Collections.singletonList(original);
             }
 
@@ -127,17 +130,18 @@ public class ArrayUnwrapAction implements PipelineAction {
             for (Map.Entry<String, JsonNode> entry : targetArrays.entrySet()) {
                 String arrayKey   = entry.getKey();
                 JsonNode arrayNode = entry.getValue();
-                log.info("[{}] Array key: {}, size: {}", sessionKey, arrayKey, arrayNode.size());
+                log.debug("[{}] Array key: {}, size: {}", sessionKey, arrayKey, arrayNode.size());
 
                 long idx = 0;
                 for (JsonNode element : arrayNode) {
                     if (!element.isObject()) {
-                        log.info("[{}] Non-object element in array – skipping", sessionKey);
+                        log.debug("[{}] Non-object element in array – skipping", sessionKey);
                         idx++;
                         continue;
                     }
 
-                    ObjectNode out = original.deepCopy();
+                    // Top-level copy only: nested values stay shared (see PipelineAction item ownership)
+                    ObjectNode out = original.objectNode().setAll(original);
 
                     // 1. Remove all arrays being unwrapped
                     for (String key : arraysToUnwrap) out.remove(key);
@@ -168,4 +172,94 @@ public class ArrayUnwrapAction implements PipelineAction {
             return Collections.emptyList();
         }
     }
+
+    /**
+     * Each message type needs only its own arrays; the nested element fields that later
+     * steps read are selected by their own demand.
+     */
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        FieldProjection demand = FieldProjection.forAllTypes(
+                List.of(params.path("messageTypeField").asText("_messageType")));
+        final Iterator<Map.Entry<String, JsonNode>> entries = params.path("arraysToUnwrap").fields();
+        while (entries.hasNext()) {
+            final Map.Entry<String, JsonNode> e = entries.next();
+            final List<String> arrays = new ArrayList<>();
+            e.getValue().forEach(n -> { if (n.asText(null) != null) arrays.add(n.asText()); });
+            demand = demand.merge(FieldProjection.forTypes(List.of(e.getKey()), arrays));
+        }
+        return demand;
+    }
+
+
+    /** Only the message types listed in {@code arraysToUnwrap}; all others pass through. */
+    @Override
+    public Set<String> messageTypes(JsonNode params) {
+        if (!"_messageType".equals(params.path("messageTypeField").asText("_messageType"))) return null;
+        final Set<String> types = new HashSet<>();
+        params.path("arraysToUnwrap").fieldNames().forEachRemaining(types::add);
+        return types;
+    }
+
+    /**
+     * Typed version. The record core ({@code _messageType}, {@code _header},
+     * {@code _dbMetadata}) is always kept, so a {@code fieldsToCopy} list that drops any
+     * of them needs the generic pipeline.
+     */
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        final Map<String, List<String>> arraysToUnwrapByType = new LinkedHashMap<>();
+        params.path("arraysToUnwrap").fields().forEachRemaining(e -> {
+            List<String> fields = new ArrayList<>();
+            e.getValue().forEach(n -> { if (n.asText(null) != null) fields.add(n.asText()); });
+            if (!fields.isEmpty()) arraysToUnwrapByType.put(e.getKey(), fields);
+        });
+        final Set<String> fieldsToCopy = new HashSet<>();
+        params.path("fieldsToCopy").forEach(n -> {
+            String f = n.asText(null);
+            if (f != null && !f.isBlank()) fieldsToCopy.add(f);
+        });
+        if (!"_messageType".equals(params.path("messageTypeField").asText("_messageType"))
+                || (!fieldsToCopy.isEmpty()
+                    && !fieldsToCopy.containsAll(List.of("_messageType", "_header", "_dbMetadata")))) {
+            return null;
+        }
+        final String indexFieldName = params.path("indexFieldName").asText("idx").isBlank()
+                ? "idx" : params.path("indexFieldName").asText("idx");
+        final String arrayKeyFieldName = params.path("arrayKeyFieldName").asText(null);
+        final boolean preserveArrayKey = arrayKeyFieldName != null && !arrayKeyFieldName.trim().isEmpty();
+
+        return (input, globalContext, sessionContext) -> {
+            if (arraysToUnwrapByType.isEmpty()) return input;
+            final List<ReportRecord> result = new ArrayList<>(input.size());
+            for (final ReportRecord original : input) {
+                final List<String> arraysToUnwrap = arraysToUnwrapByType.get(original.messageType());
+                if (arraysToUnwrap == null) {
+                    result.add(original);
+                    continue;
+                }
+                boolean unwrapped = false;
+                for (final String arrayKey : arraysToUnwrap) {
+                    if (!(original.get(arrayKey) instanceof List<?> elements) || elements.isEmpty()) continue;
+                    unwrapped = true;
+                    long idx = 0;
+                    for (final Object element : elements) {
+                        if (element instanceof Map<?, ?> elementFields) {
+                            final ReportRecord out = original.copy();
+                            arraysToUnwrap.forEach(out.fields()::remove);
+                            if (!fieldsToCopy.isEmpty()) out.fields().keySet().retainAll(fieldsToCopy);
+                            out.put(indexFieldName, idx);
+                            if (preserveArrayKey) out.put(arrayKeyFieldName, arrayKey);
+                            elementFields.forEach((k, v) -> out.put((String) k, v));
+                            result.add(out);
+                        }
+                        idx++;
+                    }
+                }
+                if (!unwrapped) result.add(original); // no non-empty array to unwrap
+            }
+            return result;
+        };
+    }
+
 } // class
\ No newline at end of file
@@ -8,7 +8,13 @@ import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.pipeline.ExpressionCompiler;
+import sk.concentra.jcml.pipeline.ExpressionCompiler.CompiledExpression;
+import sk.concentra.jcml.pipeline.ExpressionRuntime;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -53,9 +59,13 @@ import java.util.regex.Pattern;
  *   <li>{@code eval(concat('session.&lt;map&gt;.', item.&lt;field&gt;)).&lt;property&gt;}
  *       — resolved via pre-built entity node cache</li>
  *   <li>{@code item.&lt;field&gt;} — resolved via direct {@code ObjectNode.path()} call</li>
+ *   <li>anything else {@link ExpressionCompiler} supports (nested paths, indexes, session /
+ *       global values, {@code concat}, {@code in(...)}, comparisons) — a generated class</li>
  * </ul>
- * <p>Expressions not matching either pattern fall back to Josson against a lightweight
- * envelope (entity maps excluded).</p>
+ * <p>Expressions outside that subset fall back to Josson against a lightweight envelope
+ * (entity maps excluded). Rule conditions are compiled the same way; a condition that reads
+ * only {@code _messageType} (or is left to Josson) is evaluated once per message type, any
+ * other compiled condition once per item.</p>
  */
 @Singleton
 public class BatchTemplateAction implements PipelineAction {
@@ -75,26 +85,42 @@ public class BatchTemplateAction implements PipelineAction {
     );
 
     /** Fast-path 2: direct item field. {@code item.<field>} — simple identifiers only;
-     *  bracket/dot sub-expressions (e.g. {@code item._header[1]}) fall through to Josson. */
+     *  bracket/dot sub-expressions (e.g. {@code item._header[1]}) go to {@link ExpressionCompiler},
+     *  and to Josson only if they cannot be compiled. */
     private static final Pattern ITEM_FIELD_PATTERN = Pattern.compile("item\\.(\\w+)");
 
+    /** Rule condition restricted to message types: {@code _messageType.in('A', 'B')}. */
+    private static final Pattern MESSAGE_TYPE_CONDITION_PATTERN = Pattern.compile(
+            "\\s*_messageType\\.in\\(\\s*('[^']*'(\\s*,\\s*'[^']*')*)\\s*\\)\\s*");
+
+    /** Any reference to the item inside a placeholder; group 1 is the dotted path, if any. */
+    private static final Pattern ITEM_REFERENCE_PATTERN = Pattern.compile("(?<![\\w.'])item\\b((?:\\.\\w+)*)");
+
     @Inject
     private ObjectMapper objectMapper;
 
+    /** Compiled placeholders and conditions, cached for the lifetime of the singleton. */
+    private final ExpressionCompiler expressionCompiler = new ExpressionCompiler();
+
     // ── Records / sealed types ────────────────────────────────────────────────
 
     private record ParsedTemplate(String targetField, List<String> segments, int expressionCount) {}
 
-    private sealed interface FastPath permits EntityLookup, ItemFieldLookup {}
+    private sealed interface FastPath permits EntityLookup, ItemFieldLookup, CompiledLookup {}
     private record EntityLookup(String mapKey, String idField, String property) implements FastPath {}
     private record ItemFieldLookup(String field) implements FastPath {}
+    private record CompiledLookup(CompiledExpression expression) implements FastPath {}
 
     /**
-     * A fully pre-processed rule: condition string, parsed templates, fast-path
-     * index, and a flag indicating whether any expression needs Josson.
+     * A fully pre-processed rule: condition string and its compiled form ({@code null} for
+     * {@code "true"} or a Josson condition), whether the condition can be cached per message
+     * type, parsed templates, fast-path index, and a flag indicating whether any expression
+     * needs Josson.
      */
     private record CompiledRule(
             String condition,
+            CompiledExpression compiledCondition,
+            boolean conditionByType,
             List<ParsedTemplate> parsedTemplates,
             Map<Integer, Map<Integer, FastPath>> fastPathIndex,
             boolean needsJosson
@@ -141,9 +167,14 @@ public class BatchTemplateAction implements PipelineAction {
             log.debug("[{}] All expressions on fast-path — Josson not needed", sessionKey);
         }
 
+        final TemplateScope scope = new TemplateScope(globalContext, sessionContext, entityNodeCache);
+
         // ── Condition cache: messageType -> matching rule index (or -1) ────────
-        // Evaluated once per distinct _messageType, not per item.
+        // Evaluated once per distinct _messageType, not per item, unless a compiled
+        // condition reads more than the message type.
+        final boolean byType = compiledRules.stream().allMatch(CompiledRule::conditionByType);
         final Map<String, Integer> conditionCache = new HashMap<>();
+        final Set<String> matchedTypes = new HashSet<>();
 
         // ── Process items ─────────────────────────────────────────────────────
         final List<ObjectNode> output = new ArrayList<>(input.size());
@@ -152,19 +183,15 @@ public class BatchTemplateAction implements PipelineAction {
             final String messageType = item.path("_messageType").asText("");
 
             // Find matching rule — cached by messageType
-            final int ruleIndex = conditionCache.computeIfAbsent(messageType, mt -> {
-                for (int i = 0; i < compiledRules.size(); i++) {
-                    if (evaluateCondition(compiledRules.get(i).condition(), item)) {
-                        return i;
-                    }
-                }
-                return -1; // no rule matched
-            });
+            final int ruleIndex = byType
+                    ? conditionCache.computeIfAbsent(messageType, mt -> matchRule(compiledRules, item, scope))
+                    : matchRule(compiledRules, item, scope);
 
             if (ruleIndex == -1) {
                 output.add(item); // no matching rule — pass through unchanged
                 continue;
             }
+            matchedTypes.add(messageType);
 
             final CompiledRule rule = compiledRules.get(ruleIndex);
 
@@ -177,20 +204,24 @@ public class BatchTemplateAction implements PipelineAction {
                 josson = null;
             }
 
-            final ObjectNode result = item.deepCopy();
-            for (int ti = 0; ti < rule.parsedTemplates().size(); ti++) {
-                final ParsedTemplate pt = rule.parsedTemplates().get(ti);
-                result.put(pt.targetField(),
-                        resolveSegments(
-                                pt,
-                                rule.fastPathIndex().getOrDefault(ti, Collections.emptyMap()),
-                                josson, item, entityNodeCache, sessionKey));
+            // The pipeline owns the item — write in place, but only after every template
+            // has been resolved, so all of them see the item as it was.
+            final List<ParsedTemplate> templates = rule.parsedTemplates();
+            final String[] values = new String[templates.size()];
+            for (int ti = 0; ti < values.length; ti++) {
+                values[ti] = resolveSegments(
+                        templates.get(ti),
+                        rule.fastPathIndex().getOrDefault(ti, Collections.emptyMap()),
+                        josson, item, entityNodeCache, scope, sessionKey);
+            }
+            for (int ti = 0; ti < values.length; ti++) {
+                item.put(templates.get(ti).targetField(), values[ti]);
             }
-            output.add(result);
+            output.add(item);
         }
 
         log.info("[{}] BatchTemplateAction: processed {} items, {} distinct messageTypes matched",
-                sessionKey, input.size(), conditionCache.values().stream().filter(i -> i >= 0).count());
+                sessionKey, input.size(), matchedTypes.size());
 
         return output;
     }
@@ -201,6 +232,9 @@ public class BatchTemplateAction implements PipelineAction {
         final List<CompiledRule> compiled = new ArrayList<>();
         for (final JsonNode ruleNode : rulesNode) {
             final String condition  = ruleNode.path("condition").asText("true");
+            final CompiledExpression compiledCondition = condition.equals("true")
+                    ? null : expressionCompiler.compile(condition, ExpressionCompiler.Mode.CONDITION);
+            final boolean conditionByType = compiledCondition == null || compiledCondition.dependsOnMessageTypeOnly();
             final JsonNode tmplNode = ruleNode.path("templates");
             if (!tmplNode.isObject()) {
                 log.warn("[{}] Rule with condition '{}' has no valid 'templates' object — skipping",
@@ -224,10 +258,12 @@ public class BatchTemplateAction implements PipelineAction {
                         < pt.expressionCount();
             });
 
-            compiled.add(new CompiledRule(condition, parsedTemplates, fastPathIndex, needsJosson));
-            log.info("[{}] Compiled rule: condition='{}', templates={}, needsJosson={}",
-                    sessionKey, condition, parsedTemplates.stream()
-                            .map(ParsedTemplate::targetField).toList(), needsJosson);
+            compiled.add(new CompiledRule(condition, compiledCondition, conditionByType,
+                    parsedTemplates, fastPathIndex, needsJosson));
+            log.info("[{}] Compiled rule: condition='{}' ({}), templates={}, needsJosson={}",
+                    sessionKey, condition,
+                    condition.equals("true") ? "always" : compiledCondition != null ? "compiled" : "josson",
+                    parsedTemplates.stream().map(ParsedTemplate::targetField).toList(), needsJosson);
         }
         return compiled;
     }
@@ -260,6 +296,10 @@ public class BatchTemplateAction implements PipelineAction {
                         fastPath = new ItemFieldLookup(itemMatcher.group(1));
                     }
                 }
+                if (fastPath == null) {
+                    final CompiledExpression compiled = expressionCompiler.compile(expr, ExpressionCompiler.Mode.TEMPLATE);
+                    if (compiled != null) fastPath = new CompiledLookup(compiled);
+                }
 
                 if (fastPath != null) {
                     if (exprMap == null) exprMap = new HashMap<>();
@@ -283,6 +323,7 @@ public class BatchTemplateAction implements PipelineAction {
             for (final Map<Integer, FastPath> exprMap : rule.fastPathIndex().values()) {
                 for (final FastPath fp : exprMap.values()) {
                     if (fp instanceof EntityLookup lookup) keys.add(lookup.mapKey());
+                    if (fp instanceof CompiledLookup lookup) keys.addAll(lookup.expression().entityMaps());
                 }
             }
         }
@@ -346,6 +387,7 @@ public class BatchTemplateAction implements PipelineAction {
             final Josson josson,
             final ObjectNode item,
             final Map<String, Map<Object, JsonNode>> entityNodeCache,
+            final TemplateScope scope,
             final String sessionKey
     ) {
         if (pt.expressionCount() == 0) return pt.segments().getFirst();
@@ -395,6 +437,9 @@ public class BatchTemplateAction implements PipelineAction {
                         sb.append(val.isContainerNode() ? val : val.asText());
                     }
 
+                } else if (fastPath instanceof CompiledLookup lookup) {
+                    appendValue(sb, evaluateCompiled(lookup.expression(), item, scope, sessionKey));
+
                 } else {
                     // Josson fallback
                     if (josson != null) {
@@ -420,6 +465,37 @@ public class BatchTemplateAction implements PipelineAction {
 
     // ── Condition evaluation ──────────────────────────────────────────────────
 
+    /** Index of the first rule whose condition holds for {@code item}, or -1. */
+    private int matchRule(final List<CompiledRule> compiledRules, final ObjectNode item, final TemplateScope scope) {
+        for (int i = 0; i < compiledRules.size(); i++) {
+            final CompiledRule rule = compiledRules.get(i);
+            final boolean matches = rule.compiledCondition() != null
+                    ? testCompiled(rule.compiledCondition(), item, scope)
+                    : evaluateCondition(rule.condition(), item);
+            if (matches) return i;
+        }
+        return -1; // no rule matched
+    }
+
+    private boolean testCompiled(final CompiledExpression condition, final Object item, final TemplateScope scope) {
+        try {
+            return condition.test(item, scope);
+        } catch (RuntimeException e) {
+            log.warn("Condition evaluation failed for expr='{}': {}", condition.source(), e.getMessage());
+            return false;
+        }
+    }
+
+    private Object evaluateCompiled(final CompiledExpression expression, final Object item,
+                                    final TemplateScope scope, final String sessionKey) {
+        try {
+            return expression.evaluate(item, scope);
+        } catch (RuntimeException e) {
+            log.warn("[{}] Error in expression [{}]: {}", sessionKey, expression.source(), e.getMessage());
+            return null;
+        }
+    }
+
     private boolean evaluateCondition(final String expr, final ObjectNode item) {
         if (expr == null || expr.equals("true")) return true;
         try {
@@ -431,4 +507,259 @@ public class BatchTemplateAction implements PipelineAction {
         }
     }
 
+
+    // ── Field demand ──────────────────────────────────────────────────────────
+
+    /**
+     * A rule whose condition is a {@code _messageType.in(...)} list needs its template
+     * fields only for those types. Any other condition, or a placeholder that uses the
+     * item as a whole, makes the demand unknown.
+     */
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        FieldProjection demand = FieldProjection.forAllTypes(List.of("_messageType"));
+        for (final JsonNode ruleNode : params.path("rules")) {
+            final List<String> messageTypes = parseMessageTypes(ruleNode.path("condition").asText("true"));
+            if (messageTypes == null) return FieldProjection.ALL;
+
+            final Set<String> fields = new HashSet<>();
+            final Iterator<JsonNode> templates = ruleNode.path("templates").elements();
+            while (templates.hasNext()) {
+                final Matcher placeholder = PLACEHOLDER_PATTERN.matcher(templates.next().asText());
+                while (placeholder.find()) {
+                    final Matcher reference = ITEM_REFERENCE_PATTERN.matcher(placeholder.group(1));
+                    while (reference.find()) {
+                        if (reference.group(1).isEmpty()) return FieldProjection.ALL;
+                        fields.addAll(List.of(reference.group(1).substring(1).split("\\.")));
+                    }
+                }
+            }
+            demand = demand.merge(FieldProjection.forTypes(messageTypes, fields));
+        }
+        return demand;
+    }
+
+    /**
+     * The message types of the rules' {@code _messageType.in(...)} conditions; items of
+     * other types match no rule and pass through. {@code null} if any rule has another condition.
+     */
+    @Override
+    public Set<String> messageTypes(JsonNode params) {
+        final Set<String> types = new HashSet<>();
+        for (final JsonNode ruleNode : params.path("rules")) {
+            final List<String> ruleTypes = parseMessageTypes(ruleNode.path("condition").asText("true"));
+            if (ruleTypes == null) return null;
+            types.addAll(ruleTypes);
+        }
+        return types;
+    }
+
+    /** Message types of a {@code _messageType.in(...)} condition, or {@code null} for any other condition. */
+    private static List<String> parseMessageTypes(final String condition) {
+        final Matcher conditionMatcher = MESSAGE_TYPE_CONDITION_PATTERN.matcher(condition);
+        if (!conditionMatcher.matches()) return null;
+        final List<String> messageTypes = new ArrayList<>();
+        for (final String quoted : conditionMatcher.group(1).split(",")) {
+            final String trimmed = quoted.trim();
+            messageTypes.add(trimmed.substring(1, trimmed.length() - 1));
+        }
+        return messageTypes;
+    }
+
+    // ── Typed lane ────────────────────────────────────────────────────────────
+
+    /**
+     * Available when every rule condition is {@code true} or compiled, and every placeholder
+     * is on a fast path — i.e. nothing needs Josson. The rules are compiled here, once, when
+     * the pipeline loads.
+     */
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        final JsonNode rulesNode = params.path("rules");
+        if (!rulesNode.isArray() || rulesNode.isEmpty()) {
+            return (input, globalContext, sessionContext) -> input;
+        }
+        final List<CompiledRule> compiledRules = compileRules(rulesNode, "pipeline");
+        for (final CompiledRule rule : compiledRules) {
+            if (rule.needsJosson()) return null;
+            if (rule.compiledCondition() == null && !rule.condition().equals("true")) return null;
+        }
+        return (input, globalContext, sessionContext) ->
+                processRecords(input, globalContext, sessionContext, compiledRules);
+    }
+
+    private List<ReportRecord> processRecords(
+            final List<ReportRecord> input,
+            final Map<String, Object> globalContext,
+            final Map<String, Object> sessionContext,
+            final List<CompiledRule> compiledRules
+    ) {
+        final String sessionKey = (String) sessionContext.getOrDefault(SESSION_KEY_KEY, "???");
+
+        final Map<String, Map<Object, JsonNode>> entityNodeCache =
+                buildEntityNodeCache(sessionContext, collectNeededMapKeys(compiledRules));
+        log.debug("[{}] Entity cache built for {} maps", sessionKey, entityNodeCache.size());
+        final TemplateScope scope = new TemplateScope(globalContext, sessionContext, entityNodeCache);
+
+        final boolean byType = compiledRules.stream().allMatch(CompiledRule::conditionByType);
+        final Map<String, Integer> ruleByType = new HashMap<>();
+        final Set<String> matchedTypes = new HashSet<>();
+        final List<ReportRecord> output = new ArrayList<>(input.size());
+
+        for (final ReportRecord record : input) {
+            final String messageType = record.messageType() == null ? "" : record.messageType();
+            final int ruleIndex = byType
+                    ? ruleByType.computeIfAbsent(messageType, mt -> matchRecordRule(compiledRules, record, scope))
+                    : matchRecordRule(compiledRules, record, scope);
+
+            if (ruleIndex == -1) {
+                output.add(record);
+                continue;
+            }
+            matchedTypes.add(messageType);
+
+            final CompiledRule rule = compiledRules.get(ruleIndex);
+            final List<ParsedTemplate> templates = rule.parsedTemplates();
+            final String[] values = new String[templates.size()];
+            for (int ti = 0; ti < values.length; ti++) {
+                values[ti] = resolveRecordSegments(templates.get(ti),
+                        rule.fastPathIndex().getOrDefault(ti, Collections.emptyMap()),
+                        record, entityNodeCache, scope, sessionKey);
+            }
+            for (int ti = 0; ti < values.length; ti++) {
+                record.put(templates.get(ti).targetField(), values[ti]);
+            }
+            output.add(record);
+        }
+
+        log.info("[{}] BatchTemplateAction: processed {} records, {} distinct messageTypes matched",
+                sessionKey, input.size(), matchedTypes.size());
+        return output;
+    }
+
+    /** Index of the first rule whose (compiled or {@code true}) condition holds for {@code record}, or -1. */
+    private int matchRecordRule(final List<CompiledRule> compiledRules, final ReportRecord record,
+                                final TemplateScope scope) {
+        for (int i = 0; i < compiledRules.size(); i++) {
+            final CompiledExpression condition = compiledRules.get(i).compiledCondition();
+            if (condition == null || testCompiled(condition, record, scope)) return i;
+        }
+        return -1;
+    }
+
+    private String resolveRecordSegments(
+            final ParsedTemplate pt,
+            final Map<Integer, FastPath> fastPathExprs,
+            final ReportRecord record,
+            final Map<String, Map<Object, JsonNode>> entityNodeCache,
+            final TemplateScope scope,
+            final String sessionKey
+    ) {
+        if (pt.expressionCount() == 0) return pt.segments().getFirst();
+
+        final List<String> segs = pt.segments();
+        final StringBuilder sb = new StringBuilder();
+        int exprSlot = 0;
+
+        for (int i = 0; i < segs.size(); i++) {
+            if ((i & 1) == 0) {
+                sb.append(segs.get(i));
+                continue;
+            }
+            final FastPath fastPath = fastPathExprs.get(exprSlot++);
+            if (fastPath instanceof EntityLookup lookup) {
+                final Object id = record.get(lookup.idField());
+                final Map<Object, JsonNode> entityMap = id == null ? null : entityNodeCache.get(lookup.mapKey());
+                if (entityMap == null) continue;
+                final String idText = ReportRecord.text(id);
+                JsonNode entityNode = entityMap.get(
+                        id instanceof Integer || id instanceof Long ? (Object) ((Number) id).intValue() : idText);
+                if (entityNode == null) entityNode = entityMap.get(idText);
+                if (entityNode != null) {
+                    final JsonNode propNode = entityNode.path(lookup.property());
+                    if (!propNode.isMissingNode() && !propNode.isNull()) {
+                        sb.append(propNode.asText());
+                    } else {
+                        log.debug("[{}] Property '{}' not found on entity id={}",
+                                sessionKey, lookup.property(), idText);
+                    }
+                } else {
+                    log.debug("[{}] No entity in '{}' for id={}", sessionKey, lookup.mapKey(), idText);
+                }
+            } else if (fastPath instanceof ItemFieldLookup lookup) {
+                appendValue(sb, record.get(lookup.field()));
+            } else if (fastPath instanceof CompiledLookup lookup) {
+                appendValue(sb, evaluateCompiled(lookup.expression(), record, scope, sessionKey));
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Containers render as JSON, scalars as their text — like {@code resolveSegments}. */
+    private void appendValue(final StringBuilder sb, final Object value) {
+        if (value == null) return;
+        if (value instanceof JsonNode node) {
+            sb.append(node.isContainerNode() ? node : node.asText());
+        } else if (value instanceof Map<?, ?> || value instanceof List<?> || value instanceof int[]) {
+            sb.append(objectMapper.valueToTree(value).toString());
+        } else {
+            sb.append(value);
+        }
+    }
+
+    // ── Expression scope ──────────────────────────────────────────────────────
+
+    /**
+     * What compiled expressions see besides the item — the same values the Josson envelope
+     * holds: scalar session values, the global context and the entity node cache.
+     */
+    private final class TemplateScope implements ExpressionCompiler.Scope {
+        private final Map<String, Object> globalContext;
+        private final Map<String, Object> sessionContext;
+        private final Map<String, Map<Object, JsonNode>> entityNodeCache;
+        private final Map<String, JsonNode> sessionNodes = new HashMap<>();
+        private final Map<String, JsonNode> globalNodes = new HashMap<>();
+
+        TemplateScope(final Map<String, Object> globalContext, final Map<String, Object> sessionContext,
+                      final Map<String, Map<Object, JsonNode>> entityNodeCache) {
+            this.globalContext = globalContext;
+            this.sessionContext = sessionContext;
+            this.entityNodeCache = entityNodeCache;
+        }
+
+        @Override
+        public Object session(final String key) {
+            // Entity maps and lists are not part of the lightweight session node either.
+            return present(sessionNodes.computeIfAbsent(key, k -> {
+                final Object value = sessionContext.get(k);
+                return value instanceof Map || value instanceof List ? null : toNode(value);
+            }));
+        }
+
+        @Override
+        public Object global(final String key) {
+            return present(globalNodes.computeIfAbsent(key, k -> toNode(globalContext.get(k))));
+        }
+
+        @Override
+        public Object entity(final String mapKey, final Object id) {
+            final Map<Object, JsonNode> entityMap = entityNodeCache.get(mapKey);
+            if (entityMap == null || id == null) return null;
+            final String idText = ExpressionRuntime.text(id);
+            final Object key;
+            if (id instanceof JsonNode node) key = node.isInt() || node.isLong() ? (Object) node.asInt() : idText;
+            else key = id instanceof Integer || id instanceof Long ? (Object) ((Number) id).intValue() : idText;
+            final JsonNode entityNode = entityMap.get(key);
+            return entityNode != null ? entityNode : entityMap.get(idText);
+        }
+
+        private JsonNode toNode(final Object value) {
+            return value == null ? null : objectMapper.valueToTree(value);
+        }
+
+        private static Object present(final JsonNode node) {
+            return node == null || node.isNull() ? null : node;
+        }
+    }
+
 } // class
\ No newline at end of file
@@ -6,6 +6,9 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
 
 import java.util.*;
 import java.util.TreeMap;
@@ -73,6 +76,12 @@ public class CmlHeaderExtractorAction implements PipelineAction {
         log.info("[{}] CmlHeaderExtractorAction: {} total items, {} matched filter, {} session entries stored.",
                 sessionKey, input.size(), matched, extracted);
 
+        reportRecycledIds(sessionKey, keyPrefix, sessionContext);
+        return input; // all items pass through unchanged
+    }
+
+    private void reportRecycledIds(final String sessionKey, final String keyPrefix,
+                                   final Map<String, Object> sessionContext) {
         // ── Recycled CML ID report ────────────────────────────────────────────
         // Collect all CML IDs that have 2+ occurrences and report them.
         List<String> recycledKeys = sessionContext.entrySet().stream()
@@ -107,8 +116,6 @@ public class CmlHeaderExtractorAction implements PipelineAction {
             report.append("\n╚══════════════════════════════════════════════════════════════════════════════");
             log.warn(report.toString());
         }
-
-        return input; // all items pass through unchanged
     }
 
     private boolean extractAndStore(
@@ -142,6 +149,14 @@ public class CmlHeaderExtractorAction implements PipelineAction {
         // a "closest preceding" lookup when the CML ID has been recycled.
         final JsonNode rkNode = node.path("_dbMetadata").path("recoveryKey");
         final double recoveryKey = rkNode.isMissingNode() ? 0d : rkNode.asDouble();
+        storeOccurrence(sessionKey, cmlId, recoveryKey, info, keyPrefix, sessionContext);
+        return true;
+    }
+
+    private void storeOccurrence(
+            final String sessionKey, final int cmlId, final double recoveryKey,
+            final Map<String, Object> info, final String keyPrefix, final Map<String, Object> sessionContext
+    ) {
         info.put("_recoveryKey", recoveryKey);
 
         // Store as TreeMap<Double, Map> keyed by recoveryKey — sorted ascending,
@@ -156,9 +171,69 @@ public class CmlHeaderExtractorAction implements PipelineAction {
         }
         final int occurrenceNumber = occurrences.size() + 1;
         occurrences.put(recoveryKey, info);
-        log.info("[{}] Stored session entry '{}' occurrence #{} at recoveryKey={}: {}",
+        log.debug("[{}] Stored session entry '{}' occurrence #{} at recoveryKey={}: {}",
                 sessionKey, transactionKey, occurrenceNumber, recoveryKey, info);
-        return true;
+    }
+
+    // ── Typed version ─────────────────────────────────────────────────────────
+
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        final String headerKey     = params.path("headerKey").asText(DEFAULT_HEADER_KEY);
+        final int cmlIdIndex       = params.path("cmlId").path("lookupIndex").asInt(DEFAULT_CML_ID_INDEX);
+        final String keyPrefix     = params.path("keyPrefix").asText(DEFAULT_KEY_PREFIX);
+        final List<HeaderField> fields = parseFields("pipeline-load", params.path("fields"));
+        final String filterField = params.path("filterField").asText(null);
+        final String filterValue = params.path("filterValue").asText(null);
+        final boolean hasFilter  = filterField != null && !filterField.isBlank()
+                                && filterValue != null && !filterValue.isBlank();
+
+        return (input, globalContext, sessionContext) -> {
+            final String sessionKey = (String) sessionContext.getOrDefault(SESSION_KEY_KEY, "???");
+            if (sessionContext.containsKey(EXECUTION_FLAG)) {
+                return input;
+            }
+            sessionContext.put(EXECUTION_FLAG, true);
+
+            int matched = 0, extracted = 0;
+            for (final ReportRecord record : input) {
+                if (hasFilter) {
+                    final String value = ReportRecord.text(record.get(filterField));
+                    if (!(value == null ? "" : value).equalsIgnoreCase(filterValue)) continue;
+                }
+                matched++;
+                final Object cmlIdValue = record.path(headerKey + "[" + cmlIdIndex + "]");
+                if (!(cmlIdValue instanceof Integer || cmlIdValue instanceof Long)) {
+                    log.warn("[{}] Invalid CML ID at index {} in header '{}' — skipping: {}",
+                            sessionKey, cmlIdIndex, headerKey, record);
+                    continue;
+                }
+                final int cmlId = ((Number) cmlIdValue).intValue();
+                final Map<String, Object> info = new HashMap<>();
+                info.put("cmlId", cmlId);
+                for (final HeaderField headerField : fields) {
+                    final Object value = convertValue(record.get(headerField.lookupKey), headerField.type);
+                    if (value != null) info.put(headerField.targetKey, value);
+                }
+                final Double recoveryKey = record.recoveryKey();
+                storeOccurrence(sessionKey, cmlId, recoveryKey == null ? 0d : recoveryKey, info, keyPrefix, sessionContext);
+                extracted++;
+            }
+            log.info("[{}] CmlHeaderExtractorAction: {} total records, {} matched filter, {} session entries stored.",
+                    sessionKey, input.size(), matched, extracted);
+            reportRecycledIds(sessionKey, keyPrefix, sessionContext);
+            return input;
+        };
+    }
+
+    /** Typed counterpart of {@link #convertValue(String, JsonNode, Class)}, with the same node-type rules. */
+    private static Object convertValue(final Object value, final Class<?> targetType) {
+        if (targetType == String.class)  return ReportRecord.text(value);
+        if (targetType == Integer.class) return value instanceof Integer ? value : null;
+        if (targetType == Long.class)    return value instanceof Integer || value instanceof Long ? ((Number) value).longValue() : null;
+        if (targetType == Boolean.class) return value instanceof Boolean b ? b
+                : value instanceof Number n ? n.doubleValue() != 0 : Boolean.parseBoolean(ReportRecord.text(value));
+        return null;
     }
 
     private List<HeaderField> parseFields(final String sessionKey, final JsonNode fieldsNode) {
@@ -197,4 +272,36 @@ public class CmlHeaderExtractorAction implements PipelineAction {
     }
 
     private record HeaderField(String lookupKey, String targetKey, Class<?> type) {}
+
+    /** With a {@code _messageType} filter the header fields are needed for that type only. */
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        final String filterField = params.path("filterField").asText(null);
+        final String filterValue = params.path("filterValue").asText(null);
+        final Set<String> lookupKeys = new HashSet<>();
+        parseFields("pipeline-load", params.path("fields")).forEach(f -> lookupKeys.add(f.lookupKey));
+        lookupKeys.add(params.path("headerKey").asText(DEFAULT_HEADER_KEY));
+
+        final boolean hasFilter = filterField != null && !filterField.isBlank()
+                               && filterValue != null && !filterValue.isBlank();
+        if (!hasFilter) {
+            return FieldProjection.forAllTypes(lookupKeys);
+        }
+        if ("_messageType".equals(filterField)) {
+            return FieldProjection.forAllTypes(List.of(filterField))
+                    .merge(FieldProjection.forTypes(List.of(filterValue.toUpperCase(Locale.ROOT)), lookupKeys));
+        }
+        lookupKeys.add(filterField);
+        return FieldProjection.forAllTypes(lookupKeys);
+    }
+
+    /** With a {@code _messageType} filter only that type is read; all items pass through anyway. */
+    @Override
+    public Set<String> messageTypes(JsonNode params) {
+        final String filterField = params.path("filterField").asText(null);
+        final String filterValue = params.path("filterValue").asText(null);
+        if (!"_messageType".equals(filterField) || filterValue == null || filterValue.isBlank()) return null;
+        return Set.of(filterValue.toUpperCase(Locale.ROOT));
+    }
+
 } // class
\ No newline at end of file
@@ -7,10 +7,16 @@ import io.micronaut.scheduling.annotation.ExecuteOn;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.pipeline.BatchStep;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.RecordBatch;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.schema.FieldProjection;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 /**
@@ -121,4 +127,104 @@ public class CmlTransactionFilterAction implements PipelineAction {
             return item.path(field).asText("").equalsIgnoreCase(value);
         }
     }
+
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        final Set<String> fields = new HashSet<>();
+        fields.add("_cmlTransactionId");
+        parseConditions(params, "pipeline-load").forEach(cond -> fields.add(cond.field()));
+        return FieldProjection.forAllTypes(fields);
+    }
+
+
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        final List<Condition> conditions = parseConditions(params, "pipeline-load");
+        return (input, globalContext, sessionContext) -> {
+            final String sessionKey = (String) sessionContext.getOrDefault(SESSION_KEY_KEY, "???");
+            if (conditions.isEmpty()) {
+                log.warn("[{}] No valid conditions configured — passing all items through", sessionKey);
+                return input;
+            }
+            final Set<String> excluded = ConcurrentHashMap.newKeySet();
+            input.parallelStream().forEach(record -> {
+                final Object txId = record.get("_cmlTransactionId");
+                if (txId == null || excluded.contains(txId.toString())) return;
+                for (Condition cond : conditions) {
+                    final String text = ReportRecord.text(record.get(cond.field()));
+                    if ((text == null ? "" : text).equalsIgnoreCase(cond.value())) {
+                        excluded.add(txId.toString());
+                        break;
+                    }
+                }
+            });
+            if (excluded.isEmpty()) return input;
+
+            final List<ReportRecord> result = input.parallelStream()
+                    .filter(record -> {
+                        final Object txId = record.get("_cmlTransactionId");
+                        return txId == null || !excluded.contains(txId.toString());
+                    })
+                    .collect(Collectors.toList());
+            log.info("[{}] Filtered {} transaction(s) {} — removed {}/{} records",
+                    sessionKey, excluded.size(), excluded, input.size() - result.size(), input.size());
+            return result;
+        };
+    }
+
+    // ── Columnar lane ────────────────────────────────────────────────────────
+
+    @Override
+    public BatchStep batchStep(JsonNode params) {
+        final List<Condition> conditions = parseConditions(params, "pipeline-load");
+        // Dotted and indexed fields are not plain record fields (recordStep uses record.get).
+        if (conditions.stream().anyMatch(cond -> cond.field().indexOf('.') >= 0 || cond.field().indexOf('[') >= 0)) {
+            return null;
+        }
+        return (batch, globalContext, sessionContext) -> {
+            final String sessionKey = (String) sessionContext.getOrDefault(SESSION_KEY_KEY, "???");
+            if (conditions.isEmpty()) {
+                log.warn("[{}] No valid conditions configured — passing all items through", sessionKey);
+                return batch;
+            }
+            final RecordBatch.Column tx = batch.column("_cmlTransactionId");
+            final List<IntPredicate> matchers = conditions.stream().map(cond -> matcher(batch, cond)).toList();
+
+            final Set<String> excluded = new HashSet<>();
+            for (int i = 0; i < batch.size(); i++) {
+                final int row = batch.row(i);
+                if (tx.isNull(row)) continue;
+                for (IntPredicate matcher : matchers) {
+                    if (matcher.test(row)) {
+                        excluded.add(tx.get(row).toString());
+                        break;
+                    }
+                }
+            }
+            if (excluded.isEmpty()) return batch;
+
+            final RecordBatch result = batch.select(row -> tx.isNull(row) || !excluded.contains(tx.get(row).toString()));
+            log.info("[{}] Filtered {} transaction(s) {} — removed {}/{} records",
+                    sessionKey, excluded.size(), excluded, batch.size() - result.size(), batch.size());
+            return result;
+        };
+    }
+
+    /** Row matcher for one condition; dictionary columns are compared once per distinct value. */
+    private static IntPredicate matcher(RecordBatch batch, Condition cond) {
+        final RecordBatch.Column column = batch.column(cond.field());
+        if (column instanceof RecordBatch.DictionaryColumn dictionary) {
+            final boolean[] matches = new boolean[dictionary.dictionarySize()];
+            for (int code = 0; code < matches.length; code++) {
+                matches[code] = dictionary.entry(code).equalsIgnoreCase(cond.value());
+            }
+            final boolean nullMatches = cond.value().isEmpty();
+            return row -> dictionary.isNull(row) ? nullMatches : matches[dictionary.code(row)];
+        }
+        return row -> {
+            final String text = column.text(row);
+            return (text == null ? "" : text).equalsIgnoreCase(cond.value());
+        };
+    }
+
 }
@@ -9,7 +9,10 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.schema.FieldProjection;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -116,4 +119,21 @@ public class ContextDumpAction implements PipelineAction {
             }
         }
     }
+
+    /** Reads only the global and session context, never item fields. */
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        return FieldProjection.NONE;
+    }
+
+
+    /** Session-only step: the typed version runs it unchanged and passes the records through. */
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        return (input, globalContext, sessionContext) -> {
+            process(Collections.emptyList(), globalContext, sessionContext, params);
+            return input;
+        };
+    }
+
 }
\ No newline at end of file
@@ -2,26 +2,54 @@ package sk.concentra.jcml.pipeline.actions;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import io.micronaut.context.ApplicationContext;
+import io.micronaut.core.beans.BeanProperty;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.PipelineRegistry;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
+import sk.concentra.jcml.util.Cancellation;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
+/**
+ * Loads a repository's entities into the session context as a map (by entity ID) and a list.
+ *
+ * <p>By default ({@code "mode": "all"}) the whole table is loaded with {@code finderMethod}
+ * ({@code findAll}). In {@code "mode": "demand"} the step reads the items instead
+ * ({@code "items": "read"}), collects the distinct values of {@code idFields} — on the item
+ * or on the objects of its arrays, so ids inside not yet unwrapped arrays count too — and
+ * loads only those entities with batched {@code findBy<Id>In(Collection)} queries
+ * ({@code batchSize} ids each). {@code idFields} defaults to the item fields that later steps
+ * use with this step's key in {@code eval(concat('session.<key>.', item.<field>))}. The
+ * session context entries have the same shape in both modes.</p>
+ *
+ * <p>{@code indexes} (secondary indexes by another entity field) require {@code "mode": "all"}:
+ * a demand load holds only the entities referenced by id, so an index lookup by any other key
+ * would miss the rest. The pipeline rejects {@code indexes} on a demand-mode step at load.</p>
+ */
 @Singleton
 public class EntityPreloadAction implements PipelineAction {
 
     private static final Logger log = LoggerFactory.getLogger(EntityPreloadAction.class);
     private static final String SESSION_KEY_KEY = "sessionKey";
+    /** SQL Server accepts at most 2100 parameters per statement. */
+    private static final int DEFAULT_BATCH_SIZE = 1000;
 
     @Inject
-    private ApplicationContext applicationContext;
+    private PipelineRegistry registry;
 
     @Override
     public List<ObjectNode> process(
@@ -32,7 +60,9 @@ public class EntityPreloadAction implements PipelineAction {
     ) {
         String sessionKey = (String) sessionContext.get(SESSION_KEY_KEY);
         try {
-            preloadAllEntitiesIfNeeded(sessionContext, params);
+            preloadAllEntitiesIfNeeded(input, sessionContext, params);
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             log.error("[{}] Error during entity preload: {}", sessionKey, e.getMessage(), e);
             // continue — items pass through
@@ -40,11 +70,11 @@ public class EntityPreloadAction implements PipelineAction {
         return input;
     }
 
-    private void preloadAllEntitiesIfNeeded(Map<String, Object> sessionContext, JsonNode params) {
+    private void preloadAllEntitiesIfNeeded(List<?> items, Map<String, Object> sessionContext, JsonNode params) {
         String sessionKey         = (String) sessionContext.get(SESSION_KEY_KEY);
         String entityClassName    = params.path("entityClassName").asText(null);
         String repositoryClassName = params.path("repositoryClassName").asText(null);
-        String contextKey         = params.path("sessionContextKey").asText(null);
+        String contextKey         = contextKey(params);
 
         if (entityClassName == null || entityClassName.isBlank()) {
             throw new IllegalArgumentException("[" + sessionKey + "] Missing or empty 'entityClassName' in params");
@@ -52,10 +82,6 @@ public class EntityPreloadAction implements PipelineAction {
         if (repositoryClassName == null || repositoryClassName.isBlank()) {
             throw new IllegalArgumentException("[" + sessionKey + "] Missing or empty 'repositoryClassName' in params");
         }
-        if (contextKey == null || contextKey.isBlank()) {
-            String simpleName = entityClassName.substring(entityClassName.lastIndexOf('.') + 1);
-            contextKey = Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
-        }
 
         String mapKey  = contextKey;
         String listKey = contextKey + "List";
@@ -68,30 +94,29 @@ public class EntityPreloadAction implements PipelineAction {
         log.info("[{}] Preloading {} into session context (keys: {}, {})", sessionKey, entityClassName, mapKey, listKey);
 
         try {
-            Class<?> entityClass = Class.forName(entityClassName);
-            Class<?> repoClass   = Class.forName(repositoryClassName);
-            Object repo          = applicationContext.getBean(repoClass);
+            // Resolved from compile-time bean definitions and introspections — see PipelineRegistry
+            PipelineRegistry.Entity entity         = registry.entity(entityClassName);
+            PipelineRegistry.Repository repository = registry.repository(repositoryClassName);
+            BeanProperty<Object, Object> idProperty = entity.idProperty();
 
-            // Use reflection — repository may extend any Micronaut Data interface
-            // (CrudRepository, GenericRepository, JpaRepository, etc.)
-            String finderMethod = params.path("finderMethod").asText("findAll");
-            Iterable<?> allEntities = (Iterable<?>) repoClass.getMethod(finderMethod).invoke(repo);
+            Iterable<?> allEntities = isDemandMode(params) && idProperty != null
+                    ? loadReferencedEntities(items, repository, idProperty, params, sessionKey)
+                    : null;
+            if (allEntities == null) {
+                allEntities = repository.find(params.path("finderMethod").asText("findAll"));
+            }
 
             ConcurrentHashMap<Object, Object> entityMap = new ConcurrentHashMap<>();
             List<Object> entityList = new ArrayList<>();
 
-            for (Object entity : allEntities) {
-                entityList.add(entity);
-                try {
-                    java.lang.reflect.Field idField = findIdField(entityClass);
-                    if (idField != null) {
-                        idField.setAccessible(true);
-                        Object id = idField.get(entity);
-                        if (id != null) {
-                            entityMap.put(id, entity);
-                        }
+            for (Object loaded : allEntities) {
+                entityList.add(loaded);
+                if (idProperty != null) {
+                    Object id = idProperty.get(loaded);
+                    if (id != null) {
+                        entityMap.put(id, loaded);
                     }
-                } catch (Exception ignored) {}
+                }
             }
 
             sessionContext.put(listKey, entityList);
@@ -103,24 +128,230 @@ public class EntityPreloadAction implements PipelineAction {
                 log.info("[{}] Preloaded {} entities (list only) into session context under key '{}List'",
                         sessionKey, entityList.size(), contextKey);
             }
+            buildSecondaryIndexes(entity, entityList, params, contextKey, sessionContext, sessionKey);
 
-        } catch (ClassNotFoundException e) {
-            throw new IllegalArgumentException("[" + sessionKey + "] Class not found: " + e.getMessage(), e);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("[" + sessionKey + "] " + e.getMessage(), e);
         } catch (Exception e) {
+            // A cancelled request's query fails with an SQLException — expected, not an error
+            Cancellation cancellation = Cancellation.current();
+            if (cancellation != null && cancellation.isCancelled()) {
+                log.debug("[{}] Preload of {} stopped by cancellation: {}", sessionKey, entityClassName, e.getMessage());
+                cancellation.throwIfCancelled();
+            }
             throw new RuntimeException("[" + sessionKey + "] Failed to preload entities from " + repositoryClassName, e);
         }
     }
 
-    private java.lang.reflect.Field findIdField(Class<?> entityClass) {
-        for (java.lang.reflect.Field field : entityClass.getDeclaredFields()) {
-            if (field.isAnnotationPresent(io.micronaut.data.annotation.Id.class)) {
-                return field;
+    // ── Secondary indexes ─────────────────────────────────────────────────────
+
+    /** The session context keys of the secondary indexes. */
+    @Override
+    public Set<String> sessionContextKeys(JsonNode params) {
+        String contextKey = contextKey(params);
+        if (contextKey == null) return Set.of();
+        Set<String> keys = new LinkedHashSet<>();
+        params.path("indexes").forEach(index -> keys.add(indexKey(contextKey, index)));
+        return keys;
+    }
+
+    /** {@code params.sessionContextKey}, or the entity's simple name in lower camel case. */
+    private static String contextKey(JsonNode params) {
+        String contextKey = params.path("sessionContextKey").asText("");
+        if (!contextKey.isBlank()) return contextKey;
+        String entityClassName = params.path("entityClassName").asText("");
+        if (entityClassName.isBlank()) return null;
+        String simpleName = entityClassName.substring(entityClassName.lastIndexOf('.') + 1);
+        return Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
+    }
+
+    /**
+     * Session context key of a secondary index: its {@code sessionContextKey}, or
+     * {@code <key>By<Field>} (e.g. {@code agentsByPeripheralNumber}).
+     */
+    private static String indexKey(String contextKey, JsonNode indexNode) {
+        String explicit = indexNode.path("sessionContextKey").asText("");
+        if (!explicit.isBlank()) return explicit;
+        String field = indexNode.path("field").asText("");
+        return field.isEmpty() ? contextKey + "By"
+                : contextKey + "By" + Character.toUpperCase(field.charAt(0)) + field.substring(1);
+    }
+
+    /**
+     * One hash index per {@code indexes} entry over the loaded snapshot, stored like the ID
+     * map ({@code ConcurrentHashMap}), so {@code eval(concat('session.<index>.', item.<field>))}
+     * resolves through the same fast path. A unique index maps a key to the entity (the first
+     * one on duplicates), a multi-valued one ({@code "unique": false}) to the list of entities.
+     */
+    private void buildSecondaryIndexes(PipelineRegistry.Entity entityType, List<Object> entities, JsonNode params,
+                                       String contextKey, Map<String, Object> sessionContext,
+                                       String sessionKey) {
+        for (JsonNode indexNode : params.path("indexes")) {
+            String fieldName = indexNode.path("field").asText("");
+            BeanProperty<Object, Object> field = fieldName.isBlank() ? null : entityType.property(fieldName);
+            if (field == null) {
+                log.warn("[{}] Index on '{}' skipped — {} has no such property", sessionKey, fieldName,
+                        entityType.simpleName());
+                continue;
+            }
+            boolean unique = indexNode.path("unique").asBoolean(true);
+            ConcurrentHashMap<Object, Object> index = new ConcurrentHashMap<>(Math.max(16, entities.size() * 2));
+            int duplicates = 0;
+            for (Object entity : entities) {
+                Object key = indexKeyValue(field.get(entity));
+                if (key == null) continue;
+                if (unique) {
+                    if (index.putIfAbsent(key, entity) != null) duplicates++;
+                } else {
+                    @SuppressWarnings("unchecked")
+                    List<Object> bucket = (List<Object>) index.computeIfAbsent(key, k -> new ArrayList<>());
+                    bucket.add(entity);
+                }
+            }
+            String indexKey = indexKey(contextKey, indexNode);
+            sessionContext.put(indexKey, index);
+            if (duplicates > 0) {
+                log.warn("[{}] Unique index '{}' on {}.{}: {} duplicate keys — first entity kept",
+                        sessionKey, indexKey, entityType.simpleName(), field.getName(), duplicates);
+            }
+            log.info("[{}] Index '{}' on {}.{} ({}): {} keys", sessionKey, indexKey,
+                    entityType.simpleName(), field.getName(), unique ? "unique" : "multi-valued", index.size());
+        }
+    }
+
+    /** Integral numbers become {@code Integer} where they fit — the key type template lookups try first. */
+    private static Object indexKeyValue(Object value) {
+        if (value instanceof Integer || value instanceof String) return value;
+        if (value instanceof Short || value instanceof Byte) return ((Number) value).intValue();
+        if (value instanceof Long l) return l == l.intValue() ? (Object) l.intValue() : l;
+        if (value instanceof Character c) return String.valueOf(c);
+        return value;
+    }
+
+    // ── Demand mode ───────────────────────────────────────────────────────────
+
+    private static boolean isDemandMode(JsonNode params) {
+        return "demand".equalsIgnoreCase(params.path("mode").asText("all"));
+    }
+
+    /**
+     * Entities whose ID appears in the items' {@code idFields}, loaded in batches with
+     * {@code findBy<Id>In(Collection)}; {@code null} to fall back to a full load.
+     */
+    private List<Object> loadReferencedEntities(List<?> items, PipelineRegistry.Repository repository,
+                                                BeanProperty<Object, Object> idProperty, JsonNode params,
+                                                String sessionKey) {
+        List<String> idFields = new ArrayList<>();
+        params.path("idFields").forEach(n -> { if (!n.asText("").isBlank()) idFields.add(n.asText()); });
+        if (idFields.isEmpty()) {
+            log.warn("[{}] Demand preload of {} has no idFields — loading the whole table",
+                    sessionKey, repository.name());
+            return null;
+        }
+        String finderName = params.path("finderByIdsMethod").asText(
+                "findBy" + Character.toUpperCase(idProperty.getName().charAt(0)) + idProperty.getName().substring(1) + "In");
+        Function<Collection<?>, Iterable<?>> finder = repository.finder(finderName).orElse(null);
+        if (finder == null) {
+            log.warn("[{}] {} has no {}(Collection) — loading the whole table",
+                    sessionKey, repository.name(), finderName);
+            return null;
+        }
+
+        Set<Object> ids = collectIds(items, idFields, idProperty.getType());
+        int batchSize = Math.max(1, params.path("batchSize").asInt(DEFAULT_BATCH_SIZE));
+        List<Object> ordered = new ArrayList<>(ids);
+        List<Object> entities = new ArrayList<>();
+        for (int from = 0; from < ordered.size(); from += batchSize) {
+            Cancellation.checkpoint();
+            List<Object> batch = ordered.subList(from, Math.min(ordered.size(), from + batchSize));
+            for (Object entity : finder.apply(batch)) {
+                entities.add(entity);
+            }
+        }
+        log.info("[{}] Demand preload: {} distinct ids in {} from {} items, {} quer{} via {}, {} entities",
+                sessionKey, ids.size(), idFields, items.size(), (ordered.size() + batchSize - 1) / batchSize,
+                ordered.size() > batchSize ? "ies" : "y", finderName, entities.size());
+        return entities;
+    }
+
+    /** Distinct values of {@code idFields} on the items and on the objects in their arrays. */
+    private static Set<Object> collectIds(List<?> items, List<String> idFields, Class<?> idType) {
+        Set<Object> ids = new LinkedHashSet<>();
+        for (Object item : items) {
+            if (item instanceof ObjectNode node) {
+                for (String field : idFields) addId(ids, node.get(field), idType);
+                for (JsonNode value : node) {
+                    if (!value.isArray()) continue;
+                    for (JsonNode element : value) {
+                        for (String field : idFields) addId(ids, element.get(field), idType);
+                    }
+                }
+            } else if (item instanceof ReportRecord record) {
+                for (String field : idFields) addId(ids, record.get(field), idType);
+                for (Object value : record.fields().values()) {
+                    if (!(value instanceof List<?> elements)) continue;
+                    for (Object element : elements) {
+                        if (!(element instanceof Map<?, ?> fields)) continue;
+                        for (String field : idFields) addId(ids, fields.get(field), idType);
+                    }
+                }
             }
         }
-        List<String> commonIdNames = List.of("id", "skillTargetId", "agentTeamId", "precisionQueueId", "agentTeamID", "precisionQueueID");
-        for (String name : commonIdNames) {
-            try { return entityClass.getDeclaredField(name); } catch (NoSuchFieldException ignored) {}
+        return ids;
+    }
+
+    /** Adds {@code value} converted to the entity's ID type; anything not convertible is ignored. */
+    private static void addId(Set<Object> ids, Object value, Class<?> idType) {
+        if (value instanceof JsonNode node) {
+            if (node.isNull() || node.isContainerNode()) return;
+            value = node.isNumber() ? node.numberValue() : node.asText();
+        }
+        if (value == null) return;
+        try {
+            if (idType == Integer.class || idType == int.class) {
+                ids.add(value instanceof Number n ? n.intValue() : Integer.valueOf(value.toString().trim()));
+            } else if (idType == Long.class || idType == long.class) {
+                ids.add(value instanceof Number n ? n.longValue() : Long.valueOf(value.toString().trim()));
+            } else if (idType == String.class) {
+                ids.add(value.toString());
+            }
+        } catch (NumberFormatException ignored) {
+            // not an id of this entity
         }
-        return null;
     }
+
+    /** Treated as a database step even for in-memory repositories such as {@code DialingModeRepository}. */
+    @Override
+    public boolean readsDatabase(JsonNode params) {
+        return true;
+    }
+
+    /** Reads only the database — in demand mode also the id fields (of items or array elements). */
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        if (!isDemandMode(params)) return FieldProjection.NONE;
+        List<String> idFields = new ArrayList<>();
+        params.path("idFields").forEach(n -> { if (!n.asText("").isBlank()) idFields.add(n.asText()); });
+        return FieldProjection.forAllTypes(idFields);
+    }
+
+
+    /** Session-only step: the typed version runs it unchanged and passes the records through. */
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        return (input, globalContext, sessionContext) -> {
+            String sessionKey = (String) sessionContext.get(SESSION_KEY_KEY);
+            try {
+                preloadAllEntitiesIfNeeded(input, sessionContext, params);
+            } catch (CancellationException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("[{}] Error during entity preload: {}", sessionKey, e.getMessage(), e);
+            }
+            return input;
+        };
+    }
+
 } // class
\ No newline at end of file
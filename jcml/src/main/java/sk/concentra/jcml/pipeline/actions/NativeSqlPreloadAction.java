@@ -7,6 +7,9 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.schema.FieldProjection;
+import sk.concentra.jcml.util.Cancellation;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -14,6 +17,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +43,12 @@ public class NativeSqlPreloadAction implements PipelineAction {
         try {
             preloadIfNeeded(sessionContext, params);
         } catch (Exception e) {
+            // A cancelled request's query fails with an SQLException — expected, not an error
+            Cancellation cancellation = Cancellation.current();
+            if (cancellation != null && cancellation.isCancelled()) {
+                log.debug("[{}] Native SQL preload stopped by cancellation: {}", sessionKey, e.getMessage());
+                cancellation.throwIfCancelled();
+            }
             log.error("[{}] Error during native SQL preload: {}", sessionKey, e.getMessage(), e);
             // continue — items pass through
         }
@@ -104,4 +114,26 @@ public class NativeSqlPreloadAction implements PipelineAction {
                     sessionKey, rowList.size(), sessionContextKey);
         }
     }
+
+    /** Reads only the database, never item fields. */
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        return FieldProjection.NONE;
+    }
+
+    @Override
+    public boolean readsDatabase(JsonNode params) {
+        return true;
+    }
+
+
+    /** Session-only step: the typed version runs it unchanged and passes the records through. */
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        return (input, globalContext, sessionContext) -> {
+            process(Collections.emptyList(), globalContext, sessionContext, params);
+            return input;
+        };
+    }
+
 } // class
@@ -10,6 +10,9 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
 
 import java.util.*;
 
@@ -60,7 +63,7 @@ public class SessionEnrichAction implements PipelineAction {
             try {
                 final Josson josson = Josson.create(item);
                 final JsonNode idNode = josson.getNode(idExpression);
-                log.info("[{}] idExpression '{}' resolved to: {}", sessionKey, idExpression, idNode);
+                log.debug("[{}] idExpression '{}' resolved to: {}", sessionKey, idExpression, idNode);
 
                 if (idNode == null || idNode.isMissingNode() || idNode.isNull()) {
                     log.warn("[{}] idExpression '{}' resolved to missing or null — skipping item", sessionKey, idExpression);
@@ -124,4 +127,73 @@ public class SessionEnrichAction implements PipelineAction {
         }
         return result;
     }
+
+    /** The id expression is evaluated by Josson; only a plain path can be projected. */
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        final Set<String> fields = FieldProjection.fieldsOfPath(params.path("idExpression").asText(null));
+        if (fields == null) return FieldProjection.ALL;
+        final Set<String> demand = new HashSet<>(fields);
+        demand.add("_dbMetadata");
+        return FieldProjection.forAllTypes(demand);
+    }
+
+
+    /** Typed version; only a plain-path {@code idExpression} (e.g. {@code _header[1]}) is supported. */
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        final String prefix = params.path("prefix").asText(null);
+        final String idExpression = params.path("idExpression").asText(null);
+        if (prefix == null || prefix.isBlank() || FieldProjection.fieldsOfPath(idExpression) == null) {
+            return null;
+        }
+        final String idPath = idExpression.trim();
+        final String idType = params.path("idType").asText("integer").toLowerCase();
+        if (!idType.equals("integer") && !idType.equals("string")) return null;
+
+        final JsonNode includeNode = params.path("includeFields");
+        final Set<String> includeFields = includeNode.isArray()
+                ? Set.copyOf(List.of(objectMapper.convertValue(includeNode, String[].class)))
+                : Collections.emptySet();
+        final JsonNode mappingsNode = params.path("fieldMappings");
+        final Map<String, String> fieldMappings = mappingsNode.isObject()
+                ? objectMapper.convertValue(mappingsNode, new TypeReference<Map<String, String>>() {})
+                : Collections.emptyMap();
+
+        return (input, globalContext, sessionContext) -> {
+            final String sessionKey = (String) sessionContext.get(SESSION_KEY_KEY);
+            for (final ReportRecord record : input) {
+                final Object rawId = record.path(idPath);
+                if (rawId == null) continue;
+                final Object id = idType.equals("integer")
+                        ? (rawId instanceof Number n ? n.intValue() : parseIntOrZero(ReportRecord.text(rawId)))
+                        : ReportRecord.text(rawId);
+
+                @SuppressWarnings("unchecked")
+                final TreeMap<Double, Map<String, Object>> occurrences =
+                        (TreeMap<Double, Map<String, Object>>) sessionContext.get(prefix + id);
+                if (occurrences == null || occurrences.isEmpty()) continue;
+
+                final double itemRecoveryKey = record.recoveryKey() == null ? 0d : record.recoveryKey();
+                Map.Entry<Double, Map<String, Object>> floorEntry = occurrences.floorEntry(itemRecoveryKey);
+                if (floorEntry == null) floorEntry = occurrences.firstEntry();
+                record.put("_cmlTransactionId", id + "_" + floorEntry.getKey());
+                floorEntry.getValue().forEach((originalKey, value) -> {
+                    if (!includeFields.isEmpty() && !includeFields.contains(originalKey)) return;
+                    record.put(fieldMappings.getOrDefault(originalKey, originalKey), value);
+                });
+            }
+            log.debug("[{}] Enriched {} records from '{}*'", sessionKey, input.size(), prefix);
+            return input;
+        };
+    }
+
+    private static int parseIntOrZero(final String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
 } // class
\ No newline at end of file
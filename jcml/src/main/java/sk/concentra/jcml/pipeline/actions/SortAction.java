@@ -5,8 +5,14 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.pipeline.BatchStep;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.RecordBatch;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
 
+import java.math.BigDecimal;
 import java.util.*;
 
 /**
@@ -123,9 +129,148 @@ public class SortAction implements PipelineAction {
         return result;
     }
 
+    // ── Typed lane ───────────────────────────────────────────────────────────
+
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        return (input, globalContext, sessionContext) -> {
+            String sessionKey = (String) sessionContext.getOrDefault(SESSION_KEY_KEY, "???");
+            if (sessionContext.containsKey(EXECUTION_FLAG)) {
+                log.debug("[{}] SortAction already executed for this session — skipping sort, re-emitting as-is.", sessionKey);
+                return input;
+            }
+            sessionContext.put(EXECUTION_FLAG, true);
+
+            List<SortKey> sortKeys = parseSortKeys(sessionKey, params);
+            if (sortKeys.isEmpty()) {
+                log.warn("[{}] SortAction: no valid sortKeys configured — items passed through unchanged.", sessionKey);
+                return input;
+            }
+
+            log.info("[{}] SortAction: sorting {} records by keys: {}", sessionKey, input.size(), sortKeys);
+            Comparator<ReportRecord> comparator = null;
+            for (SortKey sk : sortKeys) {
+                Comparator<ReportRecord> keyComparator = (a, b) -> compareRecordsByKey(a, b, sk);
+                comparator = (comparator == null) ? keyComparator : comparator.thenComparing(keyComparator);
+            }
+            List<ReportRecord> sorted = new ArrayList<>(input);
+            sorted.sort(comparator);
+            log.info("[{}] SortAction: sort complete.", sessionKey);
+            return sorted;
+        };
+    }
+
+    // ── Columnar lane ────────────────────────────────────────────────────────
+
+    @Override
+    public BatchStep batchStep(JsonNode params) {
+        return (batch, globalContext, sessionContext) -> {
+            String sessionKey = (String) sessionContext.getOrDefault(SESSION_KEY_KEY, "???");
+            if (sessionContext.containsKey(EXECUTION_FLAG)) {
+                log.debug("[{}] SortAction already executed for this session — skipping sort, re-emitting as-is.", sessionKey);
+                return batch;
+            }
+            sessionContext.put(EXECUTION_FLAG, true);
+
+            List<SortKey> sortKeys = parseSortKeys(sessionKey, params);
+            if (sortKeys.isEmpty()) {
+                log.warn("[{}] SortAction: no valid sortKeys configured — items passed through unchanged.", sessionKey);
+                return batch;
+            }
+
+            log.info("[{}] SortAction: sorting {} rows by keys: {}", sessionKey, batch.size(), sortKeys);
+            Comparator<Integer> comparator = null;
+            for (SortKey sk : sortKeys) {
+                Comparator<Integer> keyComparator = rowComparator(batch, sk);
+                if (keyComparator == null) continue; // missing everywhere — all rows tie
+                comparator = (comparator == null) ? keyComparator : comparator.thenComparing(keyComparator);
+            }
+            RecordBatch sorted = comparator == null ? batch : batch.sort(comparator);
+            log.info("[{}] SortAction: sort complete.", sessionKey);
+            return sorted;
+        };
+    }
+
+    /**
+     * Row id comparator for one key with the ordering of {@link #compareRecordsByKey}:
+     * primitive columns compare values, dictionary columns compare ranks.
+     */
+    private static Comparator<Integer> rowComparator(RecordBatch batch, SortKey sk) {
+        if (sk.field().indexOf('[') >= 0) return null;
+        final RecordBatch.Column column = batch.column(sk.field());
+        final Comparator<Integer> values = switch (column) {
+            case RecordBatch.IntColumn c        -> (a, b) -> Integer.compare(c.value(a), c.value(b));
+            case RecordBatch.LongColumn c       -> (a, b) -> Long.compare(c.value(a), c.value(b));
+            case RecordBatch.DoubleColumn c     -> (a, b) -> c.value(a) == c.value(b) ? 0 : Double.compare(c.value(a), c.value(b));
+            case RecordBatch.DictionaryColumn c -> (a, b) -> Integer.compare(c.rank(a), c.rank(b));
+            case RecordBatch.ObjectColumn c     -> (a, b) -> compareValues(c.get(a), c.get(b));
+        };
+        return (a, b) -> {
+            boolean aMissing = column.isNull(a);
+            boolean bMissing = column.isNull(b);
+            if (aMissing && bMissing) return 0;
+            if (aMissing) return sk.nullsFirst() ? -1 :  1;
+            if (bMissing) return sk.nullsFirst() ?  1 : -1;
+            int cmp = values.compare(a, b);
+            return sk.ascending() ? cmp : -cmp;
+        };
+    }
+
+    private int compareRecordsByKey(ReportRecord a, ReportRecord b, SortKey sk) {
+        // resolveNode() does not understand [n] indexes either — such keys never match.
+        Object va = sk.field().indexOf('[') < 0 ? a.path(sk.field()) : null;
+        Object vb = sk.field().indexOf('[') < 0 ? b.path(sk.field()) : null;
+
+        if (va == null && vb == null) return 0;
+        if (va == null) return sk.nullsFirst() ? -1 :  1;
+        if (vb == null) return sk.nullsFirst() ?  1 : -1;
+
+        int cmp = compareValues(va, vb);
+        return sk.ascending() ? cmp : -cmp;
+    }
+
+    /** Same ordering rules as {@link #compareNodes} for the equivalent plain values. */
+    private static int compareValues(Object a, Object b) {
+        if (a instanceof Number na && b instanceof Number nb) {
+            if (isIntegral(na) && isIntegral(nb)) {
+                return Long.compare(na.longValue(), nb.longValue());
+            }
+            return toDecimal(na).compareTo(toDecimal(nb));
+        }
+        if (a instanceof Boolean ba && b instanceof Boolean bb) {
+            return Boolean.compare(ba, bb);
+        }
+        return textOrEmpty(a).compareTo(textOrEmpty(b));
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+    }
+
+    private static BigDecimal toDecimal(Number n) {
+        return isIntegral(n) ? BigDecimal.valueOf(n.longValue()) : BigDecimal.valueOf(n.doubleValue());
+    }
+
+    private static String textOrEmpty(Object value) {
+        String text = ReportRecord.text(value);
+        return text == null ? "" : text;
+    }
+
     private record SortKey(String field, boolean ascending, boolean nullsFirst) {
         @Override public String toString() {
             return "'" + field + "' " + (ascending ? "ASC" : "DESC") + " NULLS " + (nullsFirst ? "FIRST" : "LAST");
         }
     }
+
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        final Set<String> fields = new HashSet<>();
+        for (JsonNode keyNode : params.path("sortKeys")) {
+            final Set<String> pathFields = FieldProjection.fieldsOfPath(keyNode.path("field").asText(null));
+            if (pathFields == null) return FieldProjection.ALL;
+            fields.addAll(pathFields);
+        }
+        return FieldProjection.forAllTypes(fields);
+    }
+
 } // class
\ No newline at end of file
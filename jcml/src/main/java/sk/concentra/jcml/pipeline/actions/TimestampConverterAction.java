@@ -6,6 +6,9 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.concentra.jcml.pipeline.PipelineAction;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.pipeline.RecordStep;
+import sk.concentra.jcml.schema.FieldProjection;
 
 import java.time.Instant;
 import java.time.ZoneId;
@@ -14,7 +17,18 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
+/**
+ * Converts a Windows FILETIME field into Unix epoch milliseconds and an ISO-8601
+ * string in a configurable zone.
+ *
+ * <p>Items of one CML transaction share the same second (and often the very same
+ * {@code DateTimeStamp}), so the zone-dependent part of the ISO string is formatted
+ * once per epoch-second and kept in a small fixed-size cache for the duration of the
+ * call. Only the millisecond fraction is appended per item, which
+ * yields exactly what {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME} would produce.</p>
+ */
 @Singleton
 public class TimestampConverterAction implements PipelineAction {
 
@@ -37,39 +51,151 @@ public class TimestampConverterAction implements PipelineAction {
         final String unixTimestampField = params.path("unixTimestampFieldName").asText(DEFAULT_UNIX_TIMESTAMP_FIELD);
         final String humanReadableTimestampField = params.path("humanReadableTimestampFieldName").asText(DEFAULT_HUMAN_READABLE_TIMESTAMP_FIELD);
 
+        final String[] fieldNames = inputFieldNames(params).toArray(String[]::new);
+
+        final int formatted = convert(input, zoneId,
+                node -> {
+                    for (final String fieldName : fieldNames) {
+                        final JsonNode timestampNode = node.get(fieldName);
+                        if (timestampNode != null) return timestampNode.asLong();
+                    }
+                    log.debug("[{}] No timestamp field — skipping node of type '{}'",
+                            sessionKey, node.path("_messageType").asText("?"));
+                    return null;
+                },
+                (node, unixMillis, humanReadable) -> {
+                    node.put(unixTimestampField,          unixMillis);
+                    node.put(humanReadableTimestampField, humanReadable);
+                });
+        log.debug("[{}] Converted timestamps of {} items, {} seconds formatted",
+                sessionKey, input.size(), formatted);
+        return new ArrayList<>(input);
+    }
+
+    /** Writes the converted timestamp of one item. */
+    @FunctionalInterface
+    private interface TimestampWriter<T> {
+        void write(T item, long unixMillis, String humanReadable);
+    }
+
+    /**
+     * Converts the FILETIME of every item ({@code fileTimeOf}, {@code null} to skip the item)
+     * and hands the results to {@code writer}; returns the number of seconds formatted.
+     */
+    private static <T> int convert(final List<T> items, final ZoneId zoneId,
+                                   final Function<T, Long> fileTimeOf, final TimestampWriter<T> writer) {
+        final SecondCache seconds = new SecondCache(zoneId);
+        for (final T item : items) {
+            final Long fileTime = fileTimeOf.apply(item);
+            if (fileTime == null) continue;
+
+            final long unixMillis  = (fileTime / 10_000L) - FILETIME_TO_UNIX_EPOCH_MILLIS;
+            final long epochSecond = Math.floorDiv(unixMillis, 1000L);
+            final int  millis      = (int) Math.floorMod(unixMillis, 1000L);
+            writer.write(item, unixMillis, assemble(seconds.parts(epochSecond), millis));
+        }
+        return seconds.formatted;
+    }
+
+    /**
+     * Formatted seconds of one call, direct-mapped by epoch-second: items arrive in
+     * RecoveryKey (time) order, so a few slots catch the repeats and interleaved
+     * transactions while memory stays fixed however long the report range is.
+     */
+    private static final class SecondCache {
+
+        private static final int SLOTS = 64; // power of two
+
+        private final ZoneId zoneId;
+        private final long[] seconds = new long[SLOTS];
+        private final String[][] parts = new String[SLOTS][];
+        private int formatted;
+
+        SecondCache(final ZoneId zoneId) {
+            this.zoneId = zoneId;
+        }
+
+        /** {"yyyy-MM-ddTHH:mm:ss", "+01:00"} of {@code epochSecond}. */
+        String[] parts(final long epochSecond) {
+            final int slot = (int) (epochSecond & (SLOTS - 1));
+            if (parts[slot] == null || seconds[slot] != epochSecond) {
+                parts[slot]   = formatSecond(epochSecond, zoneId);
+                seconds[slot] = epochSecond;
+                formatted++;
+            }
+            return parts[slot];
+        }
+    }
+
+    /**
+     * Formats a whole second with the regular formatter and splits the result into the
+     * local date-time part and the offset part, so a fraction can be inserted between them.
+     */
+    private static String[] formatSecond(final long epochSecond, final ZoneId zoneId) {
+        final ZonedDateTime zdt = Instant.ofEpochSecond(epochSecond).atZone(zoneId);
+        final String formatted = zdt.format(FORMATTER);
+        final String offset    = zdt.getOffset().getId();
+        return new String[] { formatted.substring(0, formatted.length() - offset.length()), offset };
+    }
+
+    /**
+     * Mirrors {@code ISO_LOCAL_TIME}'s fraction printing: no fraction for a whole second,
+     * otherwise up to three digits with trailing zeros stripped.
+     */
+    private static String assemble(final String[] parts, final int millis) {
+        if (millis == 0) {
+            return parts[0].concat(parts[1]);
+        }
+        final StringBuilder sb = new StringBuilder(parts[0].length() + 4 + parts[1].length());
+        sb.append(parts[0]).append('.');
+        sb.append((char) ('0' + millis / 100));
+        final int rest = millis % 100;
+        if (rest != 0) {
+            sb.append((char) ('0' + rest / 10));
+            if (rest % 10 != 0) {
+                sb.append((char) ('0' + rest % 10));
+            }
+        }
+        return sb.append(parts[1]).toString();
+    }
+
+    @Override
+    public FieldProjection fieldDemand(JsonNode params) {
+        return FieldProjection.forAllTypes(inputFieldNames(params));
+    }
+
+    private static List<String> inputFieldNames(final JsonNode params) {
         final JsonNode fieldsNode = params.path("inputFieldNames");
-        final List<String> inputFieldNames;
         if (fieldsNode.isArray() && !fieldsNode.isEmpty()) {
             List<String> fromParams = new ArrayList<>();
             fieldsNode.forEach(n -> { if (n.isTextual()) fromParams.add(n.asText()); });
-            inputFieldNames = fromParams.isEmpty() ? DEFAULT_INPUT_FIELD_NAMES : fromParams;
-        } else {
-            inputFieldNames = DEFAULT_INPUT_FIELD_NAMES;
+            return fromParams.isEmpty() ? DEFAULT_INPUT_FIELD_NAMES : fromParams;
         }
+        return DEFAULT_INPUT_FIELD_NAMES;
+    }
 
-        List<ObjectNode> result = new ArrayList<>(input.size());
-        for (ObjectNode node : input) {
-            final String fieldName = inputFieldNames.stream()
-                    .filter(node::has)
-                    .findFirst()
-                    .orElse(null);
-
-            if (fieldName == null) {
-                log.debug("[{}] No timestamp field — skipping node of type '{}'",
-                        sessionKey, node.path("_messageType").asText("?"));
-                result.add(node);
-                continue;
-            }
-
-            final long fileTime   = node.get(fieldName).asLong();
-            final long unixMillis = (fileTime / 10_000L) - FILETIME_TO_UNIX_EPOCH_MILLIS;
-            final Instant instant = Instant.ofEpochMilli(unixMillis);
-            final ZonedDateTime zdt = instant.atZone(zoneId);
 
-            node.put(unixTimestampField,          zdt.toInstant().toEpochMilli());
-            node.put(humanReadableTimestampField, zdt.format(FORMATTER));
-            result.add(node);
-        }
-        return result;
+    @Override
+    public RecordStep recordStep(JsonNode params) {
+        final ZoneId zoneId = ZoneId.of(params.path("zoneIdForHumanReadableTimestamp").asText("UTC"));
+        final String unixTimestampField = params.path("unixTimestampFieldName").asText(DEFAULT_UNIX_TIMESTAMP_FIELD);
+        final String humanReadableTimestampField = params.path("humanReadableTimestampFieldName").asText(DEFAULT_HUMAN_READABLE_TIMESTAMP_FIELD);
+        final String[] fieldNames = inputFieldNames(params).toArray(String[]::new);
+        return (input, globalContext, sessionContext) -> {
+            convert(input, zoneId,
+                    record -> {
+                        for (final String fieldName : fieldNames) {
+                            final Object timestamp = record.get(fieldName);
+                            if (timestamp != null) return timestamp instanceof Number number ? number.longValue() : 0L;
+                        }
+                        return null;
+                    },
+                    (record, unixMillis, humanReadable) -> {
+                        record.put(unixTimestampField,          unixMillis);
+                        record.put(humanReadableTimestampField, humanReadable);
+                    });
+            return input;
+        };
     }
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,110 @@
+package sk.concentra.jcml.schema;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The set of schema fields that must be decoded, per message type.
+ *
+ * <p>Derived from the configured pipeline steps: each step reports the item fields it
+ * reads, either for every message type or only for specific ones. A field name applies
+ * to top-level and nested ({@code OBJECT}) schema fields alike, because
+ * {@code ArrayUnwrapAction} merges nested element fields into the top level of the
+ * unwrapped items. {@link #ALL} means "no projection" — every field is decoded.</p>
+ *
+ * <p>Instances are immutable; {@link #merge(FieldProjection)} returns a new one.</p>
+ */
+public final class FieldProjection {
+
+    /** No projection: every field of every message type is decoded. */
+    public static final FieldProjection ALL = new FieldProjection(true, Set.of(), Map.of());
+
+    /** Empty demand: the step reads no schema fields at all (e.g. preloads). */
+    public static final FieldProjection NONE = new FieldProjection(false, Set.of(), Map.of());
+
+    /** {@code a.b[1].c} — dotted identifiers with optional numeric indexes. */
+    private static final Pattern PLAIN_PATH = Pattern.compile(
+            "[A-Za-z_]\\w*(\\[\\d+])*(\\.[A-Za-z_]\\w*(\\[\\d+])*)*");
+
+    private final boolean unbounded;
+    private final Set<String> commonFields;
+    private final Map<String, Set<String>> fieldsByType;
+    private final Map<String, Set<String>> resolved = new ConcurrentHashMap<>();
+
+    private FieldProjection(boolean unbounded, Set<String> commonFields, Map<String, Set<String>> fieldsByType) {
+        this.unbounded    = unbounded;
+        this.commonFields = commonFields;
+        this.fieldsByType = fieldsByType;
+    }
+
+    /** Fields needed regardless of message type. */
+    public static FieldProjection forAllTypes(Collection<String> fields) {
+        return new FieldProjection(false, Set.copyOf(fields), Map.of());
+    }
+
+    /** Fields needed only for the given message types. */
+    public static FieldProjection forTypes(Collection<String> messageTypes, Collection<String> fields) {
+        final Set<String> fieldSet = Set.copyOf(fields);
+        final Map<String, Set<String>> byType = new HashMap<>();
+        messageTypes.forEach(type -> byType.put(type, fieldSet));
+        return new FieldProjection(false, Set.of(), Map.copyOf(byType));
+    }
+
+    /**
+     * Field names touched by a plain path expression ({@code _dbMetadata.recoveryKey},
+     * {@code _header[1]}): every dotted segment, since nested schema fields share the
+     * top-level namespace. Returns {@code null} if {@code path} is not a plain path, in
+     * which case the caller cannot tell what it reads.
+     */
+    public static Set<String> fieldsOfPath(String path) {
+        if (path == null || !PLAIN_PATH.matcher(path.trim()).matches()) return null;
+        final Set<String> fields = new HashSet<>();
+        for (String segment : path.trim().split("\\.")) {
+            final int bracket = segment.indexOf('[');
+            fields.add(bracket < 0 ? segment : segment.substring(0, bracket));
+        }
+        return fields;
+    }
+
+    public boolean isUnbounded() {
+        return unbounded;
+    }
+
+    public FieldProjection merge(FieldProjection other) {
+        if (unbounded || other.unbounded) return ALL;
+        final Set<String> common = new HashSet<>(commonFields);
+        common.addAll(other.commonFields);
+        final Map<String, Set<String>> byType = new HashMap<>();
+        fieldsByType.forEach((type, fields) -> byType.computeIfAbsent(type, t -> new HashSet<>()).addAll(fields));
+        other.fieldsByType.forEach((type, fields) -> byType.computeIfAbsent(type, t -> new HashSet<>()).addAll(fields));
+        final Map<String, Set<String>> frozen = new HashMap<>();
+        byType.forEach((type, fields) -> frozen.put(type, Set.copyOf(fields)));
+        return new FieldProjection(false, Set.copyOf(common), Map.copyOf(frozen));
+    }
+
+    /**
+     * Field names to decode for {@code messageType}, or {@code null} if every field is needed.
+     */
+    public Set<String> fieldsFor(String messageType) {
+        if (unbounded) return null;
+        return resolved.computeIfAbsent(messageType, type -> {
+            final Set<String> specific = fieldsByType.get(type);
+            if (specific == null) return commonFields;
+            final Set<String> union = new HashSet<>(commonFields);
+            union.addAll(specific);
+            return Collections.unmodifiableSet(union);
+        });
+    }
+
+    @Override
+    public String toString() {
+        return unbounded ? "FieldProjection[ALL]"
+                : "FieldProjection[common=" + commonFields + ", byType=" + fieldsByType + "]";
+    }
+} // class FieldProjection
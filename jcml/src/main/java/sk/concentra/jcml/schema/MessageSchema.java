@@ -20,6 +20,7 @@ public record MessageSchema(
             @JsonProperty(value = "isArray") boolean isArray,
             @JsonProperty("nestedSchema") String nestedSchema, // Reference to another schema for OBJECT types
             @JsonProperty("stringPadding") PaddingType stringPadding, // Padding strategy for strings
+            @JsonProperty("dedupe") boolean dedupe, // Low-cardinality STRING: share decoded instances
             @JsonProperty("description") String description
     ) {
         public FieldDefinition {
@@ -0,0 +1,440 @@
+package sk.concentra.jcml.schema;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import sk.concentra.jcml.schema.MessageSchema.FieldDefinition;
+import sk.concentra.jcml.schema.MessageSchema.FieldType;
+import sk.concentra.jcml.schema.MessageSchema.PaddingType;
+
+import java.util.*;
+import java.util.stream.Collector;
+
+/**
+ * Proposes a draft {@link MessageSchema} for a message type from sample blobs.
+ *
+ * <p>Every blob body (after the 24-byte header) is split into tokens: length-prefixed,
+ * NUL-terminated ASCII strings with the padding their zero bytes allow
+ * ({@code ALIGN_4}, {@code ALIGN_2} or {@code NONE}), 8-byte values in the FILETIME range
+ * of 1990–2100, 4-byte words and trailing single bytes. Samples with the same token
+ * sequence are counted together, so millions of blobs collapse into a handful of shapes;
+ * tokenizing runs in parallel. Shapes of equal length are unified (a zero word can be an
+ * empty string, a zero FILETIME or any integer), and shapes of different lengths are
+ * matched against a fixed prefix followed by a repeated unit — the trailing struct array
+ * the top-level messages use. Words whose bytes are always letters or zero become
+ * {@code CHAR} fields.</p>
+ *
+ * <p>The result is a starting point for reverse engineering: fields are named
+ * {@code unknown<n>}, {@code FIXED_*} paddings and non-ASCII strings are not recognized,
+ * and samples not matching the winning layout are only counted.</p>
+ *
+ * <p>Not thread-safe; {@link #addAll} parallelizes internally.</p>
+ */
+public final class SchemaInferrer {
+
+    private static final int HEADER_BYTES = 24;
+    // FILETIME (100 ns ticks since 1601-01-01) of 1990-01-01 and 2100-01-01
+    private static final long FILETIME_MIN = 122_756_256_000_000_000L;
+    private static final long FILETIME_MAX = 157_469_184_000_000_000L;
+
+    // ── Tokens ───────────────────────────────────────────────────────────────
+    // One char per token; every token is one field position, so shapes of the same
+    // layout have the same length and unify position by position.
+    private static final char WORD = 'W';          // 4-byte integer
+    private static final char SHORT_STRING = 's';  // 4-byte word that may also be an ALIGN_4 string of length <= 1
+    private static final char ZERO = 'Z';          // 4 zero bytes
+    private static final char FILETIME = 'F';      // 8-byte FILETIME
+    private static final char FILETIME_HIGH = 'f'; // second half of a FILETIME
+    private static final char BYTE = 'B';          // trailing byte
+    private static final char STRING_NONE = 'N';
+    private static final char STRING_ALIGN_2 = '2';
+    private static final char STRING_ALIGN_4 = '4';
+
+    private final Map<String, Shape> shapes = new HashMap<>();
+    private long samples;
+    private long tooShort;
+
+    /**
+     * Tokenizes {@code blobs} in parallel and adds them to the statistics. Can be called
+     * repeatedly, e.g. once per fetched chunk.
+     */
+    public void addAll(Collection<byte[]> blobs) {
+        final Map<String, Shape> chunk = blobs.parallelStream()
+                .filter(Objects::nonNull)
+                .collect(Collector.of(HashMap::new, SchemaInferrer::add, SchemaInferrer::merge));
+        final Shape headerOnly = chunk.remove("");
+        if (headerOnly != null) tooShort += headerOnly.count;
+        chunk.values().forEach(shape -> samples += shape.count);
+        merge(shapes, chunk);
+    }
+
+    public long samples() {
+        return samples;
+    }
+
+    /**
+     * Drafts the schema(s) for {@code messageType}: the message schema and, if a trailing
+     * array was found, the {@code <messageType>_ITEM} schema of its elements.
+     */
+    public Draft draft(String messageType) {
+        final List<Shape> clusters = new ArrayList<>();
+        shapes.values().stream()
+                .sorted(Comparator.comparingLong((Shape s) -> s.count).reversed())
+                .forEach(shape -> addToCluster(clusters, shape));
+        if (clusters.isEmpty()) {
+            return new Draft(messageType, samples, tooShort, 0, List.of());
+        }
+
+        final Layout layout = clusters.stream().mapToInt(c -> c.tokens.length()).distinct().count() == 1
+                ? new Layout(clusters.getFirst(), null, clusters.getFirst().count)
+                : findArrayLayout(clusters);
+
+        final List<MessageSchema> schemas = new ArrayList<>();
+        final List<FieldDefinition> fields = fields(layout.prefix.tokens, layout.prefix.masks, layout.matched);
+        if (layout.unit != null) {
+            final String itemType = messageType + "_ITEM";
+            fields.add(new FieldDefinition("items", FieldType.OBJECT, true, itemType, null, false,
+                    "Inferred trailing array"));
+            schemas.add(new MessageSchema(itemType, 1, "Draft inferred from " + layout.matched + " samples",
+                    fields(layout.unit.tokens, layout.unit.masks, layout.matched)));
+        }
+        schemas.addFirst(new MessageSchema(messageType, 1,
+                "Draft inferred from " + layout.matched + " of " + samples + " samples — review before use", fields));
+
+        final Map<String, MessageSchema> available = new HashMap<>();
+        schemas.forEach(schema -> available.put(schema.messageType(), schema));
+        schemas.forEach(schema -> SchemaRegistry.validateSchema(schema, available));
+        return new Draft(messageType, samples, tooShort, layout.matched, schemas);
+    }
+
+    /**
+     * Schema file form of {@code schema}: only the attributes that differ from the
+     * defaults, like the hand-written files in {@code schemas/}.
+     */
+    public static ObjectNode toJson(ObjectMapper objectMapper, MessageSchema schema) {
+        final ObjectNode json = objectMapper.createObjectNode();
+        json.put("messageType", schema.messageType());
+        json.put("version", schema.version());
+        json.put("description", schema.description());
+        final ArrayNode fields = json.putArray("fields");
+        for (FieldDefinition field : schema.fields()) {
+            final ObjectNode f = fields.addObject();
+            f.put("name", field.name());
+            f.put("type", field.type().name());
+            if (field.isArray()) f.put("isArray", true);
+            if (field.nestedSchema() != null) f.put("nestedSchema", field.nestedSchema());
+            if (field.type() == FieldType.STRING) f.put("stringPadding", field.stringPadding().name());
+            if (field.description() != null) f.put("description", field.description());
+        }
+        return json;
+    }
+
+    /**
+     * @param samples   blobs analysed
+     * @param tooShort  blobs without a complete header or body
+     * @param matched   blobs matching the drafted layout
+     * @param schemas   message schema first, then the array item schema if any
+     */
+    public record Draft(String messageType, long samples, long tooShort, long matched, List<MessageSchema> schemas) {
+    }
+
+    // ── Tokenizing ───────────────────────────────────────────────────────────
+
+    private static final class Shape {
+        String tokens;
+        long count;
+        // per token: bits 0-3 — byte i was a letter in some sample; bits 4-7 — byte i was a letter or 0 in all
+        byte[] masks;
+
+        Shape(String tokens, long count, byte[] masks) {
+            this.tokens = tokens;
+            this.count = count;
+            this.masks = masks;
+        }
+    }
+
+    private static void add(Map<String, Shape> target, byte[] blob) {
+        if (blob.length <= HEADER_BYTES) {
+            target.computeIfAbsent("", key -> new Shape(key, 0, new byte[0])).count++;
+            return;
+        }
+        final StringBuilder tokens = new StringBuilder();
+        final ByteArrayBuilder masks = new ByteArrayBuilder();
+        int p = HEADER_BYTES;
+        while (p < blob.length) {
+            final int stringEnd = stringEnd(blob, p);
+            if (stringEnd > 0) {
+                final PaddingType padding = zeroPadding(blob, stringEnd, stringEnd - p);
+                tokens.append(switch (padding) {
+                    case ALIGN_4 -> STRING_ALIGN_4;
+                    case ALIGN_2 -> STRING_ALIGN_2;
+                    default -> STRING_NONE;
+                });
+                masks.add((byte) 0);
+                p = stringEnd + padding(stringEnd - p, padding);
+            } else if (blob.length - p >= 8 && isFiletime(blob, p)) {
+                tokens.append(FILETIME).append(FILETIME_HIGH);
+                masks.add((byte) 0);
+                masks.add((byte) 0);
+                p += 8;
+            } else if (blob.length - p >= 4) {
+                tokens.append(wordKind(blob, p));
+                masks.add(letterMask(blob, p));
+                p += 4;
+            } else {
+                tokens.append(BYTE);
+                masks.add((byte) 0);
+                p++;
+            }
+        }
+        final Shape sample = new Shape(tokens.toString(), 1, masks.toArray());
+        target.merge(sample.tokens, sample, SchemaInferrer::mergeShape);
+    }
+
+    private static Map<String, Shape> merge(Map<String, Shape> target, Map<String, Shape> other) {
+        other.forEach((tokens, shape) -> target.merge(tokens, shape, SchemaInferrer::mergeShape));
+        return target;
+    }
+
+    private static Shape mergeShape(Shape a, Shape b) {
+        return new Shape(a.tokens, a.count + b.count, combineMasks(a.masks, b.masks));
+    }
+
+    /**
+     * End (exclusive, after the NUL) of a string of at least 2 printable ASCII characters
+     * starting with its length prefix at {@code p}, or {@code -1}.
+     */
+    private static int stringEnd(byte[] blob, int p) {
+        if (blob.length - p < 5) return -1;
+        final int length = (blob[p] & 0xFF) | (blob[p + 1] & 0xFF) << 8;
+        final int end = p + 2 + length + 1;
+        if (length < 2 || end > blob.length || blob[end - 1] != 0) return -1;
+        for (int i = p + 2; i < end - 1; i++) {
+            if (blob[i] < 0x20 || blob[i] > 0x7E) return -1;
+        }
+        return end;
+    }
+
+    /** First of ALIGN_4, ALIGN_2 and NONE whose padding bytes are all zero. */
+    private static PaddingType zeroPadding(byte[] blob, int stringEnd, int used) {
+        for (PaddingType padding : new PaddingType[]{PaddingType.ALIGN_4, PaddingType.ALIGN_2}) {
+            final int n = padding(used, padding);
+            if (stringEnd + n > blob.length) continue;
+            boolean zeros = true;
+            for (int i = stringEnd; i < stringEnd + n; i++) {
+                zeros &= blob[i] == 0;
+            }
+            if (zeros) return padding;
+        }
+        return PaddingType.NONE;
+    }
+
+    /** Same rule as the deserializer; {@code used} counts the length prefix and the NUL. */
+    private static int padding(int used, PaddingType padding) {
+        return switch (padding) {
+            case ALIGN_4 -> (4 - used % 4) % 4;
+            case ALIGN_2 -> used % 2;
+            default -> 0;
+        };
+    }
+
+    private static boolean isFiletime(byte[] blob, int p) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = value << 8 | (blob[p + i] & 0xFF);
+        }
+        return value >= FILETIME_MIN && value <= FILETIME_MAX;
+    }
+
+    private static char wordKind(byte[] blob, int p) {
+        if (blob[p] == 0 && blob[p + 1] == 0 && blob[p + 2] == 0 && blob[p + 3] == 0) return ZERO;
+        final boolean emptyString = blob[p] == 0 && blob[p + 1] == 0 && blob[p + 2] == 0;
+        final boolean oneChar = blob[p] == 1 && blob[p + 1] == 0 && blob[p + 2] >= 0x20 && blob[p + 3] == 0;
+        return emptyString || oneChar ? SHORT_STRING : WORD;
+    }
+
+    private static byte letterMask(byte[] blob, int p) {
+        int mask = 0;
+        for (int i = 0; i < 4; i++) {
+            final byte b = blob[p + i];
+            final boolean letter = b >= 'A' && b <= 'Z';
+            if (letter) mask |= 1 << i;
+            if (letter || b == 0) mask |= 0x10 << i;
+        }
+        return (byte) mask;
+    }
+
+    private static byte[] combineMasks(byte[] a, byte[] b) {
+        final byte[] result = new byte[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (byte) ((a[i] & b[i] & 0xF0) | ((a[i] | b[i]) & 0x0F));
+        }
+        return result;
+    }
+
+    // ── Unifying ─────────────────────────────────────────────────────────────
+
+    private static void addToCluster(List<Shape> clusters, Shape shape) {
+        for (Shape cluster : clusters) {
+            if (cluster.tokens.length() != shape.tokens.length()) continue;
+            final String unified = unify(cluster.tokens, 0, shape.tokens, 0, shape.tokens.length());
+            if (unified != null) {
+                cluster.tokens = unified;
+                cluster.count += shape.count;
+                cluster.masks = combineMasks(cluster.masks, shape.masks);
+                return;
+            }
+        }
+        clusters.add(new Shape(shape.tokens, shape.count, shape.masks.clone()));
+    }
+
+    /** Unifies {@code a} with {@code length} tokens of {@code b} at {@code bFrom}, {@code null} on conflict. */
+    private static String unify(String a, int aFrom, String b, int bFrom, int length) {
+        if (a.length() - aFrom < length) return null;
+        final char[] result = new char[length];
+        for (int i = 0; i < length; i++) {
+            final char token = unify(a.charAt(aFrom + i), b.charAt(bFrom + i));
+            if (token == 0) return null;
+            result[i] = token;
+        }
+        return new String(result);
+    }
+
+    private static char unify(char a, char b) {
+        if (a == b) return a;
+        if (a == ZERO) return b == BYTE || isString(b) && b != STRING_ALIGN_4 ? 0 : b;
+        if (b == ZERO) return unify(b, a);
+        if (a == SHORT_STRING && (b == WORD || b == STRING_ALIGN_4)) return b;
+        if (b == SHORT_STRING) return unify(b, a);
+        return 0;
+    }
+
+    private static boolean isString(char token) {
+        return token == STRING_NONE || token == STRING_ALIGN_2 || token == STRING_ALIGN_4;
+    }
+
+    private record Layout(Shape prefix, Shape unit, long matched) {}
+
+    /**
+     * Clusters of different lengths: a prefix followed by 0..n repetitions of a unit.
+     * The unit length divides the gcd of the length differences; the shortest unit that
+     * matches the most samples wins, then the shortest prefix. (A struct of plain integers
+     * is therefore proposed as an array of single integers — the blobs cannot tell them apart.)
+     */
+    private static Layout findArrayLayout(List<Shape> clusters) {
+        final int minLength = clusters.stream().mapToInt(c -> c.tokens.length()).min().orElseThrow();
+        int gcd = 0;
+        for (Shape cluster : clusters) {
+            gcd = gcd(gcd, cluster.tokens.length() - minLength);
+        }
+        Layout best = null;
+        for (int unit = 1; unit <= gcd; unit++) {
+            if (gcd % unit != 0) continue;
+            for (int prefix = minLength % unit; prefix <= minLength; prefix += unit) {
+                final Layout candidate = matchArrayLayout(clusters, prefix, unit);
+                if (best == null || candidate.matched > best.matched) best = candidate;
+            }
+        }
+        final Shape dominant = clusters.getFirst();
+        return best.matched >= dominant.count ? best : new Layout(dominant, null, dominant.count);
+    }
+
+    private static Layout matchArrayLayout(List<Shape> clusters, int prefixLength, int unitLength) {
+        Shape prefix = null;
+        Shape unit = null;
+        long matched = 0;
+        for (Shape cluster : clusters) {
+            final String tokens = cluster.tokens;
+            String newPrefix = prefix == null ? tokens.substring(0, prefixLength)
+                    : unify(prefix.tokens, 0, tokens, 0, prefixLength);
+            String newUnit = unit == null ? null : unit.tokens;
+            byte[] unitMasks = unit == null ? null : unit.masks;
+            for (int p = prefixLength; newPrefix != null && p < tokens.length(); p += unitLength) {
+                final byte[] masks = Arrays.copyOfRange(cluster.masks, p, p + unitLength);
+                newUnit = newUnit == null ? tokens.substring(p, p + unitLength)
+                        : unify(newUnit, 0, tokens, p, unitLength);
+                if (newUnit == null) newPrefix = null;
+                else unitMasks = unitMasks == null ? masks : combineMasks(unitMasks, masks);
+            }
+            if (newPrefix == null) continue;
+            final byte[] prefixMasks = Arrays.copyOf(cluster.masks, prefixLength);
+            prefix = new Shape(newPrefix, 0, prefix == null ? prefixMasks : combineMasks(prefix.masks, prefixMasks));
+            if (newUnit != null) unit = new Shape(newUnit, 0, unitMasks);
+            matched += cluster.count;
+        }
+        return new Layout(prefix != null ? prefix : new Shape("", 0, new byte[0]), unit, matched);
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    // ── Fields ───────────────────────────────────────────────────────────────
+
+    private static List<FieldDefinition> fields(String tokens, byte[] masks, long samples) {
+        final List<FieldDefinition> fields = new ArrayList<>();
+        for (int i = 0; i < tokens.length(); i++) {
+            final String name = "unknown" + (fields.size() + 1);
+            switch (tokens.charAt(i)) {
+                case STRING_ALIGN_4 -> fields.add(string(name, PaddingType.ALIGN_4));
+                case STRING_ALIGN_2 -> fields.add(string(name, PaddingType.ALIGN_2));
+                case STRING_NONE -> fields.add(string(name, PaddingType.NONE));
+                case FILETIME -> fields.add(field(name, FieldType.LONG, "FILETIME candidate"));
+                case FILETIME_HIGH -> { }
+                case BYTE -> fields.add(field(name, FieldType.BYTE, null));
+                case ZERO -> fields.add(field(name, FieldType.INTEGER, "0 in all " + samples + " samples"));
+                case SHORT_STRING -> fields.add(field(name, FieldType.INTEGER,
+                        "INTEGER, or a STRING that was always empty or 1 character"));
+                default -> addWord(fields, masks[i]);
+            }
+        }
+        return fields;
+    }
+
+    /** A word whose bytes are all letters (or zero) splits into CHAR fields; otherwise INTEGER. */
+    private static void addWord(List<FieldDefinition> fields, byte mask) {
+        final boolean[] isChar = new boolean[4];
+        boolean anyChar = false;
+        for (int i = 0; i < 4; i++) {
+            isChar[i] = (mask & (1 << i)) != 0 && (mask & (0x10 << i)) != 0;
+            anyChar |= isChar[i];
+        }
+        if (!anyChar) {
+            fields.add(field("unknown" + (fields.size() + 1), FieldType.INTEGER, null));
+            return;
+        }
+        for (int half = 0; half < 4; half += 2) {
+            if (!isChar[half] && !isChar[half + 1]) {
+                fields.add(field("unknown" + (fields.size() + 1), FieldType.SHORT, null));
+                continue;
+            }
+            for (int i = half; i < half + 2; i++) {
+                fields.add(field("unknown" + (fields.size() + 1), isChar[i] ? FieldType.CHAR : FieldType.BYTE,
+                        isChar[i] ? "letters or 0 in all samples" : null));
+            }
+        }
+    }
+
+    private static FieldDefinition string(String name, PaddingType padding) {
+        return new FieldDefinition(name, FieldType.STRING, false, null, padding, false, null);
+    }
+
+    private static FieldDefinition field(String name, FieldType type, String description) {
+        return new FieldDefinition(name, type, false, null, null, false, description);
+    }
+
+    /** Growable byte array — one entry per token. */
+    private static final class ByteArrayBuilder {
+        private byte[] bytes = new byte[32];
+        private int size;
+
+        void add(byte b) {
+            if (size == bytes.length) bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = b;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+} // class SchemaInferrer
@@ -2,12 +2,12 @@ package sk.concentra.jcml.schema;
 
 import io.micronaut.context.annotation.ConfigurationProperties;
 
-import io.micronaut.scheduling.annotation.Scheduled;
-
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.util.DirectoryWatcher;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -17,25 +17,71 @@ import java.net.URI;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 /**
  * Registry that loads and manages message schemas from JSON files.
  * Can be refreshed without application restart.
+ *
+ * <p>Schema files directly in the schema directory (or in non-version subdirectories)
+ * form the base {@link SchemaSet}. A subdirectory named after a UCCE/PCCE release, e.g.
+ * {@code 12.6/}, holds the schemas whose layout differs in that release; its set is the
+ * base set with those schemas replaced. {@code schema.version-timeline} says from which
+ * DB time each release was active, and {@link #schemasAt(LocalDateTime)} picks the set for a
+ * row. Every set is built and validated once per load, not per message.</p>
+ *
+ * <p>The loaded schemas are held in one immutable {@link Snapshot} that is replaced as a
+ * whole, so a reader never sees a half-loaded registry. Every schema is validated when it
+ * is loaded (array placement, nested references, reference cycles); invalid schemas are
+ * logged and left out.</p>
+ *
+ * <p>With {@code schema.auto-refresh} on and a filesystem schema directory, a
+ * {@link DirectoryWatcher} reports changed files. Only those files are re-read, and only
+ * the schemas they define plus the schemas that nest them are re-validated.</p>
  */
 @Singleton
-public class SchemaRegistry {
+public class SchemaRegistry implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(SchemaRegistry.class);
 
-    private final Map<String, MessageSchema> schemas = new ConcurrentHashMap<>();
+    /** Release directory names: {@code 12.6}, {@code 15.0}, {@code 12.5.1}. */
+    private static final Pattern VERSION_DIR_PATTERN = Pattern.compile("\\d+(\\.\\d+)*");
+
+    /** A parsed schema file; {@code version} is its release directory, {@code null} for the base set. */
+    private record SourcedSchema(String version, MessageSchema schema) {}
+
+    /**
+     * Immutable registry state.
+     *
+     * @param base     valid base schemas
+     * @param versions valid schema set per release directory
+     * @param bySource every parsed schema by source file, including ones that failed validation
+     */
+    private record Snapshot(SchemaSet base, Map<String, SchemaSet> versions, Map<String, SourcedSchema> bySource) {
+        static final Snapshot EMPTY = new Snapshot(new SchemaSet(null, Map.of()), Map.of(), Map.of());
+    }
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
     private final ObjectMapper objectMapper;
     private final SchemaConfig schemaConfig;
-    private volatile long lastLoadTime = 0;
+    private final NavigableMap<LocalDateTime, String> versionTimeline;
+    private DirectoryWatcher watcher;
 
     private final boolean isClasspathResource;
     private final String schemaLocation; // normalized: without "classpath:" prefix if classpath-based
@@ -47,19 +93,46 @@ public class SchemaRegistry {
         String configured = schemaConfig.path();
         this.isClasspathResource = configured != null && configured.startsWith("classpath:");
         this.schemaLocation = isClasspathResource ? configured.substring("classpath:".length()) : configured;
+        this.versionTimeline = parseVersionTimeline(schemaConfig.versionTimeline());
 
         loadSchemas();
+        startWatcher();
     }
 
     /**
-     * Get schema by message type.
+     * Get schema by message type (base set).
      */
     public MessageSchema getSchema(String messageType) {
-        MessageSchema schema = schemas.get(messageType);
-        if (schema == null) {
-            throw new SchemaNotFoundException("No schema found for message type: " + messageType);
+        return snapshot.base().getSchema(messageType);
+    }
+
+    /** The unversioned schema set. */
+    public SchemaSet baseSchemas() {
+        return snapshot.base();
+    }
+
+    /** The base set followed by the set of every release directory. */
+    public List<SchemaSet> schemaSets() {
+        final Snapshot current = snapshot;
+        final List<SchemaSet> sets = new ArrayList<>(1 + current.versions().size());
+        sets.add(current.base());
+        sets.addAll(current.versions().values());
+        return sets;
+    }
+
+    /**
+     * Schema set of the release that was active at {@code dateTime} (DB local time) according
+     * to {@code schema.version-timeline}. Times before the first entry, and releases without
+     * a schema directory, use the base set.
+     */
+    public SchemaSet schemasAt(LocalDateTime dateTime) {
+        final Snapshot current = snapshot;
+        final Map.Entry<LocalDateTime, String> active =
+                dateTime == null ? null : versionTimeline.floorEntry(dateTime);
+        if (active == null) {
+            return current.base();
         }
-        return schema;
+        return current.versions().getOrDefault(active.getValue(), current.base());
     }
 
     /**
@@ -70,69 +143,217 @@ public class SchemaRegistry {
         loadSchemas();
     }
 
-    /**
-     * Automatically refresh schemas periodically if enabled.
-     */
-    @Scheduled(fixedDelay = "${schema.auto-refresh-interval:3600s}",
-            initialDelay = "${schema.auto-refresh-initial-delay:3600s}")
-    public void autoRefresh() {
+    @PreDestroy
+    @Override
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    private void startWatcher() {
         if (!schemaConfig.autoRefresh()) {
             return;
         }
-
         if (isClasspathResource) {
             log.debug("Skipping auto-refresh for classpath schemas: classpath:{}", schemaLocation);
             return; // can't reliably watch resources inside JARs
         }
-
         try {
-            Path schemaDir = Paths.get(schemaLocation);
-            if (!Files.exists(schemaDir)) {
-                log.warn("Schema directory does not exist: {}", schemaDir);
-                return;
+            watcher = DirectoryWatcher.start("schemas", Paths.get(schemaLocation), true, this::onFilesChanged);
+        } catch (IOException e) {
+            log.error("Cannot watch schema directory {} — schemas will only reload on refresh()", schemaLocation, e);
+        }
+    }
+
+    // ── Incremental reload ──────────────────────────────────────────────────
+
+    private synchronized void onFilesChanged(Set<Path> changed) {
+        final Path schemaDir = Paths.get(schemaLocation).toAbsolutePath().normalize();
+        if (changed.contains(schemaDir)) {
+            log.info("Schema directory changed as a whole, reloading all schemas");
+            loadSchemas();
+            return;
+        }
+
+        final Snapshot current = snapshot;
+        final Map<String, SourcedSchema> bySource = new HashMap<>(current.bySource());
+        final Set<String> touched = new HashSet<>();
+        for (Path path : changed) {
+            if (!path.toString().endsWith(".json")) continue;
+            final String source = path.toAbsolutePath().normalize().toString();
+            final SourcedSchema previous = bySource.remove(source);
+            if (previous != null) touched.add(previous.schema().messageType());
+            if (!Files.isRegularFile(path)) {
+                log.info("Schema file removed: {}", source);
+                continue;
             }
+            final Map<String, SourcedSchema> parsed = new HashMap<>();
+            loadSchema(path, versionOf(schemaDir.relativize(path.toAbsolutePath().normalize())), parsed);
+            if (parsed.isEmpty()) {
+                // Half-written or broken file: keep serving what we had
+                if (previous != null) bySource.put(source, previous);
+                continue;
+            }
+            bySource.putAll(parsed);
+            parsed.values().forEach(sourced -> touched.add(sourced.schema().messageType()));
+            log.info("Schema file changed: {}", source);
+        }
+        if (!touched.isEmpty()) {
+            publish(bySource, touched, current.base().schemas());
+        }
+    }
 
-            // Check if any schema file has been modified since last load
-            long latestModification = findLatestModificationTime(schemaDir);
+    /**
+     * Builds and publishes the next snapshot from {@code bySource}.
+     *
+     * <p>Base set: types in {@code touched}, types not valid in {@code base} (new, or rejected
+     * before) and every schema nesting one of them (transitively) are validated; all other
+     * schemas are carried over as they are. Release sets: the base set with the release's
+     * schemas replaced; only those and the schemas nesting them are validated, everything
+     * else resolves exactly as in the base set.</p>
+     */
+    private void publish(Map<String, SourcedSchema> bySource, Set<String> touched, Map<String, MessageSchema> base) {
+        final Map<String, MessageSchema> byType = new HashMap<>();
+        final Map<String, Map<String, MessageSchema>> overridesByVersion = new TreeMap<>();
+        for (Map.Entry<String, SourcedSchema> entry : bySource.entrySet()) {
+            final SourcedSchema sourced = entry.getValue();
+            final Map<String, MessageSchema> target = sourced.version() == null
+                    ? byType
+                    : overridesByVersion.computeIfAbsent(sourced.version(), v -> new HashMap<>());
+            if (target.put(sourced.schema().messageType(), sourced.schema()) != null) {
+                log.warn("Schema {} is defined more than once{} — using the one from {}",
+                        sourced.schema().messageType(),
+                        sourced.version() != null ? " for release " + sourced.version() : "", entry.getKey());
+            }
+        }
 
-            if (latestModification > lastLoadTime) {
-                log.info("Schema files have been modified, reloading...");
-                refresh();
+        final Set<String> changed = new HashSet<>(touched);
+        for (String type : byType.keySet()) {
+            if (!base.containsKey(type)) changed.add(type);
+        }
+        validateChanged(byType, changed, "base");
+
+        final Map<String, SchemaSet> versions = new HashMap<>();
+        overridesByVersion.forEach((version, overrides) -> {
+            final Map<String, MessageSchema> overlay = new HashMap<>(byType);
+            overlay.putAll(overrides);
+            validateChanged(overlay, overrides.keySet(), version);
+            versions.put(version, new SchemaSet(version, Map.copyOf(overlay)));
+        });
+
+        snapshot = new Snapshot(new SchemaSet(null, Map.copyOf(byType)), Map.copyOf(versions), Map.copyOf(bySource));
+        log.debug("Published {} base schemas ({} changed), release sets: {}",
+                byType.size(), changed.size(), versions.keySet());
+    }
+
+    /**
+     * Validates {@code changed} and the schemas nesting them, removing rejected schemas from
+     * {@code candidates}. Repeats until stable: rejecting a schema can invalidate the ones nesting it.
+     */
+    private static void validateChanged(Map<String, MessageSchema> candidates, Set<String> changed, String setName) {
+        final Set<String> pending = dependentsOf(changed, candidates);
+        pending.addAll(changed);
+        while (!pending.isEmpty()) {
+            final Set<String> rejected = new HashSet<>();
+            for (String type : pending) {
+                final MessageSchema schema = candidates.get(type);
+                if (schema == null) continue;
+                try {
+                    validateSchema(schema, candidates);
+                } catch (IllegalArgumentException e) {
+                    log.error("Rejected schema {} ({} set): {}", type, setName, e.getMessage());
+                    rejected.add(type);
+                }
+            }
+            rejected.forEach(candidates::remove);
+            pending.clear();
+            pending.addAll(dependentsOf(rejected, candidates));
+        }
+    }
+
+    /** Types whose schemas nest any of {@code types}, directly or transitively. */
+    private static Set<String> dependentsOf(Set<String> types, Map<String, MessageSchema> byType) {
+        final Set<String> result = new HashSet<>();
+        final Deque<String> queue = new ArrayDeque<>(types);
+        while (!queue.isEmpty()) {
+            final String nested = queue.poll();
+            for (MessageSchema schema : byType.values()) {
+                if (schema.fields() == null || result.contains(schema.messageType())) continue;
+                for (MessageSchema.FieldDefinition field : schema.fields()) {
+                    if (nested.equals(field.nestedSchema())) {
+                        result.add(schema.messageType());
+                        queue.add(schema.messageType());
+                        break;
+                    }
+                }
             }
-        } catch (IOException e) {
-            log.error("Error checking schema file modifications", e);
         }
+        return result;
     }
 
-    private long findLatestModificationTime(Path directory) throws IOException {
-        try (Stream<Path> paths = Files.walk(directory)) {
-            return paths
-                    .filter(p -> p.toString().endsWith(".json"))
-                    .map(p -> {
-                        try {
-                            return Files.getLastModifiedTime(p).toMillis();
-                        } catch (IOException e) {
-                            return 0L;
-                        }
-                    })
-                    .max(Long::compare)
-                    .orElse(0L);
+    // ── Validation ──────────────────────────────────────────────────────────
+
+    /**
+     * Array fields must come last, {@code OBJECT} fields must reference a loaded schema,
+     * and nesting must not be cyclic.
+     *
+     * @throws IllegalArgumentException describing the first problem found
+     */
+    static void validateSchema(MessageSchema schema, Map<String, MessageSchema> available) {
+        List<MessageSchema.FieldDefinition> fields = schema.fields();
+        if (fields == null) {
+            throw new IllegalArgumentException(
+                    "Schema validation error: no 'fields' list in schema: " + schema.messageType());
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            MessageSchema.FieldDefinition field = fields.get(i);
+            if (field.isArray() && i < fields.size() - 1) {
+                throw new IllegalArgumentException(
+                        "Schema validation error: Array field '" + field.name() +
+                                "' must be the last field in schema: " + schema.messageType()
+                );
+            }
+            if (field.type() == MessageSchema.FieldType.OBJECT && !available.containsKey(field.nestedSchema())) {
+                throw new IllegalArgumentException(
+                        "Schema validation error: Object field '" + field.name() +
+                                "' references unknown nested schema '" + field.nestedSchema() +
+                                "' in schema: " + schema.messageType()
+                );
+            }
+        }
+        checkNestingCycle(schema.messageType(), available, new ArrayDeque<>());
+    }
+
+    private static void checkNestingCycle(String type, Map<String, MessageSchema> available, Deque<String> path) {
+        if (path.contains(type)) {
+            throw new IllegalArgumentException(
+                    "Schema validation error: cyclic nesting " + String.join(" -> ", path) + " -> " + type);
+        }
+        final MessageSchema schema = available.get(type);
+        if (schema == null || schema.fields() == null) return;
+        path.addLast(type);
+        for (MessageSchema.FieldDefinition field : schema.fields()) {
+            if (field.type() == MessageSchema.FieldType.OBJECT) {
+                checkNestingCycle(field.nestedSchema(), available, path);
+            }
         }
+        path.removeLast();
     }
 
+    // ── Full load ───────────────────────────────────────────────────────────
+
     private synchronized void loadSchemas() {
         try {
-            Map<String, MessageSchema> newSchemas = new ConcurrentHashMap<>();
+            Map<String, SourcedSchema> newSchemas = new HashMap<>();
 
             if (isClasspathResource) {
                 loadSchemasFromClasspath(schemaLocation, newSchemas);
-                // Atomic replacement of schemas
-                schemas.clear();
-                schemas.putAll(newSchemas);
-                lastLoadTime = 0; // no meaningful lastModified for classpath resources
+                publishAll(newSchemas);
 
-                log.info("Loaded {} schemas from classpath:{}", schemas.size(), schemaLocation);
-                schemas.keySet().forEach(type -> log.debug("  - {}", type));
+                log.info("Loaded {} schemas from classpath:{} (release sets: {})",
+                        snapshot.base().schemas().size(), schemaLocation, snapshot.versions().keySet());
+                snapshot.base().schemas().keySet().forEach(type -> log.debug("  - {}", type));
                 return;
             }
 
@@ -144,18 +365,13 @@ public class SchemaRegistry {
                 return;
             }
 
-            try (Stream<Path> paths = Files.walk(schemaDir)) {
-                paths.filter(p -> p.toString().endsWith(".json"))
-                        .forEach(path -> loadSchema(path, newSchemas));
-            }
+            loadSchemasFromDirectory(schemaDir, newSchemas);
 
-            // Atomic replacement of schemas
-            schemas.clear();
-            schemas.putAll(newSchemas);
-            lastLoadTime = System.currentTimeMillis();
+            publishAll(newSchemas);
 
-            log.info("Loaded {} schemas from {}", schemas.size(), schemaDir);
-            schemas.keySet().forEach(type -> log.debug("  - {}", type));
+            log.info("Loaded {} schemas from {} (release sets: {})",
+                    snapshot.base().schemas().size(), schemaDir, snapshot.versions().keySet());
+            snapshot.base().schemas().keySet().forEach(type -> log.debug("  - {}", type));
 
         } catch (Exception e) {
             log.error("Error loading schemas", e);
@@ -163,7 +379,33 @@ public class SchemaRegistry {
         }
     }
 
-    private void loadSchemasFromClasspath(String schemaDirOnClasspath, Map<String, MessageSchema> targetMap) throws IOException {
+    private void publishAll(Map<String, SourcedSchema> bySource) {
+        final Set<String> types = new HashSet<>();
+        bySource.values().forEach(sourced -> types.add(sourced.schema().messageType()));
+        publish(bySource, types, Map.of());
+        for (String version : new TreeSet<>(versionTimeline.values())) {
+            if (!snapshot.versions().containsKey(version)) {
+                log.warn("schema.version-timeline names release {} but there is no {}/ schema directory "
+                        + "— its rows are decoded with the base schemas", version, version);
+            }
+        }
+    }
+
+    private void loadSchemasFromDirectory(Path dirPath, Map<String, SourcedSchema> targetMap) throws IOException {
+        try (Stream<Path> paths = Files.walk(dirPath)) {
+            paths.filter(p -> p.toString().endsWith(".json"))
+                    .forEach(path -> loadSchema(path, versionOf(dirPath.relativize(path)), targetMap));
+        }
+    }
+
+    /** Release directory of a schema file path relative to the schema root, {@code null} for the base set. */
+    private static String versionOf(Path relative) {
+        if (relative.getNameCount() < 2) return null;
+        final String first = relative.getName(0).toString();
+        return VERSION_DIR_PATTERN.matcher(first).matches() ? first : null;
+    }
+
+    private void loadSchemasFromClasspath(String schemaDirOnClasspath, Map<String, SourcedSchema> targetMap) throws IOException {
         String dir = normalizeClasspathDir(schemaDirOnClasspath);
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
 
@@ -186,21 +428,17 @@ public class SchemaRegistry {
         }
     }
 
-    private void loadSchemasFromClasspathFileUrl(URL url, Map<String, MessageSchema> targetMap) throws IOException {
+    private void loadSchemasFromClasspathFileUrl(URL url, Map<String, SourcedSchema> targetMap) throws IOException {
         try {
             URI uri = url.toURI();
-            Path dirPath = Paths.get(uri);
-            try (Stream<Path> paths = Files.walk(dirPath)) {
-                paths.filter(p -> p.toString().endsWith(".json"))
-                        .forEach(path -> loadSchema(path, targetMap));
-            }
+            loadSchemasFromDirectory(Paths.get(uri), targetMap);
         } catch (Exception e) {
             if (e instanceof IOException io) throw io;
             throw new IOException("Failed to load schemas from classpath file URL: " + url, e);
         }
     }
 
-    private void loadSchemasFromClasspathJarUrl(URL url, String dir, Map<String, MessageSchema> targetMap) throws IOException {
+    private void loadSchemasFromClasspathJarUrl(URL url, String dir, Map<String, SourcedSchema> targetMap) throws IOException {
         JarURLConnection connection = (JarURLConnection) url.openConnection();
         try (JarFile jar = connection.getJarFile()) {
             String prefix = dir.endsWith("/") ? dir : (dir + "/");
@@ -214,7 +452,8 @@ public class SchemaRegistry {
                 String name = entry.getName();
                 if (name.startsWith(prefix) && name.endsWith(".json")) {
                     try (InputStream in = jar.getInputStream(entry)) {
-                        loadSchema(in, "jar:" + jar.getName() + "!/" + name, targetMap);
+                        loadSchema(in, "jar:" + jar.getName() + "!/" + name,
+                                versionOf(Paths.get(name.substring(prefix.length()))), targetMap);
                     }
                 }
             }
@@ -235,40 +474,71 @@ public class SchemaRegistry {
         return dir;
     }
 
-    private void loadSchema(Path path, Map<String, MessageSchema> targetMap) {
+    private void loadSchema(Path path, String release, Map<String, SourcedSchema> targetMap) {
         try {
             MessageSchema schema = objectMapper.readValue(path.toFile(), MessageSchema.class);
-            targetMap.put(schema.messageType(), schema);
-            log.debug("Loaded schema: {} (version {}) from {}",
-                    schema.messageType(), schema.version(), path.getFileName());
+            targetMap.put(path.toAbsolutePath().normalize().toString(), new SourcedSchema(release, schema));
+            log.debug("Loaded schema: {} (version {}, release set {}) from {}",
+                    schema.messageType(), schema.version(), release, path.getFileName());
         } catch (IOException e) {
             log.error("Error loading schema from {}", path, e);
         }
     }
 
-    private void loadSchema(InputStream inputStream, String source, Map<String, MessageSchema> targetMap) {
+    private void loadSchema(InputStream inputStream, String source, String release,
+                            Map<String, SourcedSchema> targetMap) {
         try {
             MessageSchema schema = objectMapper.readValue(inputStream, MessageSchema.class);
-            targetMap.put(schema.messageType(), schema);
-            log.debug("Loaded schema: {} (version {}) from {}",
-                    schema.messageType(), schema.version(), source);
+            targetMap.put(source, new SourcedSchema(release, schema));
+            log.debug("Loaded schema: {} (version {}, release set {}) from {}",
+                    schema.messageType(), schema.version(), release, source);
         } catch (IOException e) {
             log.error("Error loading schema from {}", source, e);
         }
     }
 
+    /**
+     * Parses {@code <DB local datetime>=<release>} entries, e.g. {@code 2025-03-08T22:00:00=12.6}.
+     *
+     * @throws IllegalArgumentException on a malformed entry
+     */
+    static NavigableMap<LocalDateTime, String> parseVersionTimeline(List<String> entries) {
+        final NavigableMap<LocalDateTime, String> timeline = new TreeMap<>();
+        if (entries == null) return timeline;
+        for (String entry : entries) {
+            final int eq = entry.indexOf('=');
+            final String release = eq < 0 ? "" : entry.substring(eq + 1).trim();
+            if (!VERSION_DIR_PATTERN.matcher(release).matches()) {
+                throw new IllegalArgumentException("schema.version-timeline: expected '<datetime>=<release>', got '"
+                        + entry + "'");
+            }
+            try {
+                timeline.put(LocalDateTime.parse(entry.substring(0, eq).trim()), release);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("schema.version-timeline: invalid datetime in '" + entry + "'", e);
+            }
+        }
+        return timeline;
+    }
+
     /**
      * Configuration for schema registry.
+     *
+     * @param versionTimeline {@code <DB local datetime>=<release>} entries, see {@link #schemasAt}
      */
     @ConfigurationProperties("schema")
     public record SchemaConfig(
             String path,
-            boolean autoRefresh
+            boolean autoRefresh,
+            List<String> versionTimeline
     ) {
         public SchemaConfig {
             if (path == null || path.isBlank()) {
                 path = "./schemas";
             }
+            if (versionTimeline == null) {
+                versionTimeline = List.of();
+            }
         }
     }
 
@@ -0,0 +1,26 @@
+package sk.concentra.jcml.schema;
+
+import java.util.Map;
+
+/**
+ * One validated, immutable set of message schemas — the unversioned base set, or the
+ * set of one UCCE/PCCE release ({@code schemas/<version>/} overlaid on the base set).
+ * Nested schema references are resolved within the same set.
+ *
+ * @param version release the set belongs to, {@code null} for the base set
+ * @param schemas schemas by message type
+ */
+public record SchemaSet(String version, Map<String, MessageSchema> schemas) {
+
+    /**
+     * @throws SchemaRegistry.SchemaNotFoundException if the set has no schema for {@code messageType}
+     */
+    public MessageSchema getSchema(String messageType) {
+        MessageSchema schema = schemas.get(messageType);
+        if (schema == null) {
+            throw new SchemaRegistry.SchemaNotFoundException("No schema found for message type: " + messageType
+                    + (version != null ? " (schema set " + version + ")" : ""));
+        }
+        return schema;
+    }
+}
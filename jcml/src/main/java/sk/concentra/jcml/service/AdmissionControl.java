@@ -0,0 +1,237 @@
+package sk.concentra.jcml.service;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.convert.format.ReadableBytes;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.deserializer.DecodeStats;
+import sk.concentra.jcml.persistence.ConfigMessageLogSize;
+import sk.concentra.jcml.util.Cancellation;
+import sk.concentra.jcml.util.RequestTiming;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for report requests, so one request for a year of history cannot take
+ * the heap — and every other report — down with it.
+ *
+ * <p>Before a report is fetched, a pre-flight query counts its rows and blob bytes per message
+ * type ({@link MessageService#getSizeByDateTimeRange}). The heap estimate is the fetched rows
+ * with their blobs, plus the decoded items at the heap each message type was seen to take
+ * per decode ({@link DecodeStats#meanHeapBytes}; a multiple of the blob size for types not
+ * decoded yet), times {@code admission.pipeline-factor} for pipeline copies and
+ * response rows.</p>
+ *
+ * <p>A request whose estimate exceeds {@code admission.memory-budget} on its own is rejected
+ * ({@link RejectedException#tooLarge()}). Otherwise it is admitted while fewer than
+ * {@code admission.max-concurrent} reports run and the admitted estimates stay within the
+ * budget, or else queued — first come, first served — for up to
+ * {@code admission.queue-timeout}, behind at most {@code admission.max-queued} others.</p>
+ */
+@Singleton
+public class AdmissionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    /** Heap of one fetched row besides its blob: entity, boxed key, strings, date-time. */
+    private static final long FETCHED_ROW_BYTES = 256;
+    /** Decoded heap of a message type not decoded yet: per message plus per blob byte. */
+    private static final long DEFAULT_HEAP_PER_MESSAGE = 1024;
+    private static final double DEFAULT_HEAP_PER_BLOB_BYTE = 8;
+    /** Share of the maximum heap used as budget when none is configured. */
+    private static final double DEFAULT_BUDGET_SHARE = 0.6;
+
+    private final MessageService messageService;
+    private final DecodeStats decodeStats;
+    private final boolean enabled;
+    private final long memoryBudget;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Duration queueTimeout;
+    private final double pipelineFactor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private int admitted;
+    private long admittedBytes;
+
+    /** Pre-flight size of a report: rows, blob bytes and estimated peak heap. */
+    public record Estimate(long messages, long blobBytes, long heapBytes) {}
+
+    public AdmissionControl(MessageService messageService,
+                            DecodeStats decodeStats,
+                            @Value("${admission.enabled:true}") boolean enabled,
+                            @Value("${admission.memory-budget:0}") @ReadableBytes long memoryBudget,
+                            @Value("${admission.max-concurrent:4}") int maxConcurrent,
+                            @Value("${admission.max-queued:16}") int maxQueued,
+                            @Value("${admission.queue-timeout:30s}") Duration queueTimeout,
+                            @Value("${admission.pipeline-factor:2.0}") double pipelineFactor) {
+        this.messageService = messageService;
+        this.decodeStats = decodeStats;
+        this.enabled = enabled;
+        this.memoryBudget = memoryBudget > 0
+                ? memoryBudget
+                : (long) (Runtime.getRuntime().maxMemory() * DEFAULT_BUDGET_SHARE);
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeout = queueTimeout;
+        this.pipelineFactor = Math.max(1, pipelineFactor);
+        log.info("AdmissionControl: enabled={}, memoryBudget={} MB, maxConcurrent={}, maxQueued={}, queueTimeout={}",
+                enabled, megabytes(this.memoryBudget), this.maxConcurrent, this.maxQueued, queueTimeout);
+    }
+
+    /**
+     * Admits a report of the local date range, waiting in the queue if needed. Close the
+     * returned permit when the report's items are no longer held.
+     *
+     * @throws RejectedException when the report is too large or the queue is full or timed out
+     */
+    public Permit admit(LocalDateTime dateFrom, LocalDateTime dateTo) {
+        if (!enabled) return new Permit(0);
+        final long started = System.nanoTime();
+        final Estimate estimate = estimate(dateFrom, dateTo);
+        if (estimate.heapBytes() > memoryBudget) {
+            log.warn("Admission: rejected {} – {}: {} messages, {} MB of blobs, ~{} MB of heap (budget {} MB)",
+                    dateFrom, dateTo, estimate.messages(), megabytes(estimate.blobBytes()),
+                    megabytes(estimate.heapBytes()), megabytes(memoryBudget));
+            throw new RejectedException(true, estimate, "Report of " + dateFrom + " – " + dateTo + " needs ~"
+                    + megabytes(estimate.heapBytes()) + " MB of heap (" + estimate.messages()
+                    + " messages), more than the report budget of " + megabytes(memoryBudget)
+                    + " MB — narrow the date range or use an export job (/exports)");
+        }
+        lock.lock();
+        try {
+            if (!queue.isEmpty() || !fits(estimate)) {
+                waitInQueue(estimate);
+            }
+            admitted++;
+            admittedBytes += estimate.heapBytes();
+        } finally {
+            lock.unlock();
+        }
+        RequestTiming.record(RequestTiming.ADMISSION, System.nanoTime() - started);
+        log.info("Admission: admitted {} – {}: {} messages, ~{} MB of heap after {}ms",
+                dateFrom, dateTo, estimate.messages(), megabytes(estimate.heapBytes()),
+                (System.nanoTime() - started) / 1_000_000);
+        return new Permit(estimate.heapBytes());
+    }
+
+    /** Pre-flight size of a report of the local date range. */
+    public Estimate estimate(LocalDateTime dateFrom, LocalDateTime dateTo) {
+        long messages = 0;
+        long blobBytes = 0;
+        double decodedBytes = 0;
+        for (ConfigMessageLogSize size : messageService.getSizeByDateTimeRange(dateFrom, dateTo)) {
+            if (size.messages() == 0) continue;
+            messages += size.messages();
+            blobBytes += size.bytes();
+            final double learned = decodeStats.meanHeapBytes(
+                    messageService.messageTypeOf(size.logOperation(), size.tableName()));
+            decodedBytes += size.messages() * (learned >= 0
+                    ? learned
+                    : DEFAULT_HEAP_PER_MESSAGE + DEFAULT_HEAP_PER_BLOB_BYTE * size.bytes() / size.messages());
+        }
+        // All fetched rows are held while they are decoded; pipeline and response come on top of the items
+        final long heapBytes = blobBytes + messages * FETCHED_ROW_BYTES + (long) (decodedBytes * pipelineFactor);
+        return new Estimate(messages, blobBytes, heapBytes);
+    }
+
+    /** Whether {@code estimate} may run now; an idle service admits anything within the budget. */
+    private boolean fits(Estimate estimate) {
+        return admitted < maxConcurrent
+                && (admitted == 0 || admittedBytes + estimate.heapBytes() <= memoryBudget);
+    }
+
+    /** Waits (holding {@link #lock}) until {@code estimate} is first in the queue and fits. */
+    private void waitInQueue(Estimate estimate) {
+        if (queue.size() >= maxQueued) {
+            throw new RejectedException(false, estimate, "Report service busy: " + admitted
+                    + " reports running, " + queue.size() + " queued — retry later");
+        }
+        final Object ticket = new Object();
+        queue.addLast(ticket);
+        final long deadline = System.nanoTime() + queueTimeout.toNanos();
+        try {
+            while (queue.peekFirst() != ticket || !fits(estimate)) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new RejectedException(false, estimate, "Report service busy: not admitted within "
+                            + queueTimeout + " (" + admitted + " reports running) — retry later");
+                }
+                // Wakes up at least every second to notice a cancelled (disconnected) request
+                released.awaitNanos(Math.min(remaining, TimeUnit.SECONDS.toNanos(1)));
+                Cancellation.checkpoint();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queued for admission", e);
+        } finally {
+            queue.remove(ticket);
+            released.signalAll();
+        }
+    }
+
+    private void release(long heapBytes) {
+        lock.lock();
+        try {
+            admitted--;
+            admittedBytes -= heapBytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long megabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    /** An admitted report; closing it (once) frees its share of the budget. */
+    public final class Permit implements AutoCloseable {
+
+        private final long heapBytes;
+        private final AtomicBoolean closed;
+
+        private Permit(long heapBytes) {
+            this.heapBytes = heapBytes;
+            // A permit of disabled admission control holds nothing
+            this.closed = new AtomicBoolean(!enabled);
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) release(heapBytes);
+        }
+    }
+
+    /** A report that was not admitted — too large on its own, or the service is busy. */
+    public static final class RejectedException extends IllegalStateException {
+
+        private final boolean tooLarge;
+        private final transient Estimate estimate;
+
+        RejectedException(boolean tooLarge, Estimate estimate, String message) {
+            super(message);
+            this.tooLarge = tooLarge;
+            this.estimate = estimate;
+        }
+
+        /** {@code true}: the report exceeds the budget on its own; {@code false}: the service is busy. */
+        public boolean tooLarge() {
+            return tooLarge;
+        }
+
+        public Estimate estimate() {
+            return estimate;
+        }
+    }
+} // class AdmissionControl
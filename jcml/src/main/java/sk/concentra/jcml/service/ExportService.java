@@ -0,0 +1,405 @@
+package sk.concentra.jcml.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.serde.annotation.Serdeable;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.export.GzipCsvWriter;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
+import sk.concentra.jcml.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronous export of long date ranges to gzip CSV files.
+ *
+ * <p>A job splits its range into partitions of {@code export.partition} (default one day)
+ * and handles them one after another: the partition's rows are fetched in keyset pages of
+ * {@code cml.db.deserialize-chunk-size} ({@code RecoveryKey > last}), decoded, run through
+ * the pipeline once, and written to {@code <export.directory>/<jobId>/<partition>.csv.gz}
+ * with the same columns as {@code /report/arrow}. Peak memory is therefore bounded by
+ * the largest partition, whatever the length of the range.</p>
+ *
+ * <p>Partitions are half-open, {@code [start, end)}, except the last one, which includes
+ * {@code dateTo} like {@code /report} does; a row stamped exactly on a boundary therefore
+ * belongs to one partition only. Each partition's keyset cursor starts afresh, since
+ * recovery keys are not ordered by date across partitions.</p>
+ *
+ * <p>After each partition the job state — partitions done and rows — is checkpointed to
+ * {@code job.json} next to the files. A failed, cancelled or interrupted job (restart) is
+ * resumed from that checkpoint: the partitions done are skipped and a partition that was
+ * in progress is exported again from its start, so no row is exported twice. Files are
+ * written under a temporary name and renamed when complete.</p>
+ *
+ * <p>Partitions are independent pipeline runs: a CML transaction that crosses a partition
+ * boundary is seen in two halves by transaction-scoped steps.</p>
+ */
+@Singleton
+public class ExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportService.class);
+    private static final String JOB_FILE = "job.json";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
+
+    private final MessageService messageService;
+    private final ReportService reportService;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final Duration partition;
+    private final int chunkSize;
+    private final ZoneId defaultZone;
+    private final ExecutorService executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public ExportService(MessageService messageService,
+                         ReportService reportService,
+                         ObjectMapper objectMapper,
+                         @Value("${export.directory:exports}") String directory,
+                         @Value("${export.partition:1d}") Duration partition,
+                         @Value("${export.max-concurrent:1}") int maxConcurrent,
+                         @Value("${cml.db.deserialize-chunk-size:120000}") int chunkSize,
+                         @Value("${cml.db.zoneId:Europe/Prague}") String zoneId) {
+        if (partition.isZero() || partition.isNegative()) {
+            throw new IllegalArgumentException("export.partition must be positive, got " + partition);
+        }
+        this.messageService = messageService;
+        this.reportService = reportService;
+        this.objectMapper = objectMapper;
+        this.directory = Path.of(directory).toAbsolutePath();
+        this.partition = partition;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.defaultZone = ZoneId.of(zoneId);
+        // Jobs queue up beyond max-concurrent; each running job holds one partition in memory.
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrent), Thread.ofVirtual().factory());
+        loadJobs();
+        log.info("ExportService: directory={}, partition={}, maxConcurrent={}, {} job(s) on disk",
+                this.directory, partition, maxConcurrent, jobs.size());
+    }
+
+    // ── Job API ──────────────────────────────────────────────────────────────
+
+    /**
+     * Queues an export of {@code dateFrom}–{@code dateTo} (same formats as {@code /report}).
+     *
+     * @throws IllegalArgumentException if a date cannot be parsed or the range is empty
+     */
+    public ExportJob start(String dateFrom, String dateTo, Collection<String> ignoredSteps, List<String> fields) {
+        final LocalDateTime from = ReportService.parseToLocal(dateFrom);
+        final LocalDateTime to = ReportService.parseToLocal(dateTo);
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("dateFrom must be before dateTo");
+        }
+        final String now = Instant.now().toString();
+        final ExportJob initial = new ExportJob(StringUtils.generateRandomString(), ExportJob.Status.QUEUED,
+                dateFrom, dateTo, List.copyOf(ignoredSteps), List.copyOf(fields),
+                partitionCount(from, to), 0, 0, 0, List.of(), null, now, now);
+        final Job job = new Job(initial);
+        jobs.put(job.id(), job);
+        checkpoint(job);
+        submit(job);
+        log.info("[{}] Export job queued: {} – {}, {} partition(s)", job.id(), dateFrom, dateTo,
+                initial.partitionsTotal());
+        return job.snapshot();
+    }
+
+    /** All known jobs, newest first. */
+    public List<ExportJob> jobs() {
+        return jobs.values().stream()
+                .map(Job::snapshot)
+                .sorted(Comparator.comparing(ExportJob::createdAt).reversed())
+                .toList();
+    }
+
+    public Optional<ExportJob> job(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(Job::snapshot);
+    }
+
+    /**
+     * Continues a failed, cancelled or interrupted job from its last checkpoint.
+     *
+     * @throws IllegalArgumentException if the job is unknown
+     * @throws IllegalStateException    if the job is queued, running or completed
+     */
+    public ExportJob resume(String id) {
+        final Job job = existing(id);
+        synchronized (job) {
+            switch (job.status) {
+                case QUEUED, RUNNING, COMPLETED ->
+                        throw new IllegalStateException("Export job " + id + " is " + job.status);
+                default -> {
+                    job.status = ExportJob.Status.QUEUED;
+                    job.error = null;
+                    job.cancelled = false;
+                }
+            }
+        }
+        checkpoint(job);
+        submit(job);
+        log.info("[{}] Export job resumed at partition {}/{}", id, job.partitionsDone + 1, job.partitionsTotal);
+        return job.snapshot();
+    }
+
+    /**
+     * Asks a queued or running job to stop; a running job stops before its next page or partition.
+     *
+     * @throws IllegalArgumentException if the job is unknown
+     */
+    public ExportJob cancel(String id) {
+        final Job job = existing(id);
+        job.cancelled = true;
+        log.info("[{}] Export job cancellation requested", id);
+        return job.snapshot();
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+    }
+
+    // ── Job execution ────────────────────────────────────────────────────────
+
+    private void submit(Job job) {
+        executor.submit(() -> run(job));
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.cancelled) {
+                job.status = ExportJob.Status.CANCELLED;
+            } else {
+                job.status = ExportJob.Status.RUNNING;
+            }
+        }
+        checkpoint(job);
+        if (job.status == ExportJob.Status.CANCELLED) return;
+
+        try {
+            final ZoneOffset offset = ReportService.extractOffset(job.spec.dateFrom(), defaultZone);
+            final LocalDateTime from = ReportService.parseToLocal(job.spec.dateFrom());
+            final LocalDateTime to = ReportService.parseToLocal(job.spec.dateTo());
+            final Path jobDirectory = directory.resolve(job.id());
+            Files.createDirectories(jobDirectory);
+            // Export columns may read fields no pipeline step does — decode those too
+            final FieldProjection projection = messageService.reportFieldProjection(job.spec.fields());
+
+            for (int p = job.partitionsDone; p < job.partitionsTotal; p++) {
+                if (job.cancelled) break;
+                final LocalDateTime start = from.plus(partition.multipliedBy(p));
+                final LocalDateTime end = min(start.plus(partition), to);
+                final boolean last = p == job.partitionsTotal - 1;
+                final Path file = jobDirectory.resolve(PARTITION_NAME.format(start) + ".csv.gz");
+                final long started = System.currentTimeMillis();
+
+                final boolean written = messageService.supportsReportRecords()
+                        ? exportPartition(job, start, end, file,
+                            after -> messageService.getReportRecordsAfter(start, end, last, after, chunkSize, projection),
+                            ReportRecord::recoveryKey,
+                            items -> messageService.processReportRecords(items, job.spec.ignoredSteps()),
+                            new GzipCsvWriter<>(reportService.recordColumns(job.spec.fields()), offset))
+                        : exportPartition(job, start, end, file,
+                            after -> messageService.getDeserializedMessagesAfter(start, end, last, after, chunkSize, projection),
+                            node -> node.path("_dbMetadata").path("recoveryKey").asDouble(),
+                            items -> messageService.processMessages(items, job.spec.ignoredSteps()),
+                            new GzipCsvWriter<>(reportService.nodeColumns(job.spec.fields()), offset));
+                if (job.cancelled) break;
+
+                synchronized (job) {
+                    job.partitionsDone = p + 1;
+                    if (written) job.files.add(file.getFileName().toString());
+                }
+                checkpoint(job);
+                log.info("[{}] Export partition {}/{} ({} – {}) done in {} ms: {} rows read, {} written",
+                        job.id(), p + 1, job.partitionsTotal, start, end,
+                        System.currentTimeMillis() - started, job.rowsRead, job.rowsWritten);
+            }
+            job.status = job.cancelled ? ExportJob.Status.CANCELLED : ExportJob.Status.COMPLETED;
+            log.info("[{}] Export job {}: {} rows in {} file(s) under {}",
+                    job.id(), job.status, job.rowsWritten, job.files.size(), jobDirectory);
+        } catch (Exception e) {
+            log.error("[{}] Export job failed at partition {}/{}", job.id(),
+                    job.partitionsDone + 1, job.partitionsTotal, e);
+            job.status = ExportJob.Status.FAILED;
+            job.error = e.toString();
+        }
+        checkpoint(job);
+    }
+
+    /**
+     * Fetches one partition page by page in recovery key order, runs the pipeline over it
+     * and writes the result. The caller checkpoints the partition once the file is complete.
+     *
+     * @return whether a file was written ({@code false} for an empty partition)
+     */
+    private <T> boolean exportPartition(Job job, LocalDateTime start, LocalDateTime end, Path file,
+                                        Function<Double, List<T>> pageAfter,
+                                        Function<T, Double> recoveryKey,
+                                        Function<List<T>, List<T>> pipeline,
+                                        GzipCsvWriter<T> writer) throws IOException {
+        final List<T> items = new ArrayList<>();
+        Double after = -Double.MAX_VALUE;
+        while (!job.cancelled) {
+            final List<T> page = pageAfter.apply(after);
+            items.addAll(page);
+            job.pendingRows = items.size();
+            if (page.isEmpty()) break;
+            after = recoveryKey.apply(page.getLast());
+            if (page.size() < chunkSize) break;
+        }
+        if (job.cancelled) return false;
+
+        log.debug("[{}] Export partition {} – {}: {} rows fetched", job.id(), start, end, items.size());
+        final List<T> processed = items.isEmpty() ? items : pipeline.apply(items);
+        if (!processed.isEmpty()) {
+            final Path part = file.resolveSibling(file.getFileName() + ".part");
+            writer.write(part, processed);
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        synchronized (job) {
+            job.rowsRead += items.size();
+            job.rowsWritten += processed.size();
+            job.pendingRows = 0;
+        }
+        return !processed.isEmpty();
+    }
+
+    private int partitionCount(LocalDateTime from, LocalDateTime to) {
+        final Duration range = Duration.between(from, to);
+        return Math.toIntExact((range.toMillis() + partition.toMillis() - 1) / partition.toMillis());
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private Job existing(String id) {
+        final Job job = jobs.get(id);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown export job " + id);
+        }
+        return job;
+    }
+
+    // ── Checkpoints ──────────────────────────────────────────────────────────
+
+    private void checkpoint(Job job) {
+        final Path jobDirectory = directory.resolve(job.id());
+        final Path file = jobDirectory.resolve(JOB_FILE);
+        final Path temp = jobDirectory.resolve(JOB_FILE + ".tmp");
+        job.updatedAt = Instant.now().toString();
+        try {
+            Files.createDirectories(jobDirectory);
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), job.snapshot());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write export checkpoint " + file, e);
+        }
+    }
+
+    /** Reads the checkpoints of earlier runs; jobs that were queued or running are marked interrupted. */
+    private void loadJobs() {
+        if (!Files.isDirectory(directory)) return;
+        try (Stream<Path> entries = Files.list(directory)) {
+            entries.map(entry -> entry.resolve(JOB_FILE)).filter(Files::isRegularFile).forEach(file -> {
+                try {
+                    final Job job = new Job(objectMapper.readValue(file.toFile(), ExportJob.class));
+                    if (job.status == ExportJob.Status.QUEUED || job.status == ExportJob.Status.RUNNING) {
+                        job.status = ExportJob.Status.INTERRUPTED;
+                    }
+                    jobs.put(job.id(), job);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable export checkpoint {}: {}", file, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list export directory " + directory, e);
+        }
+    }
+
+    // ── Job state ────────────────────────────────────────────────────────────
+
+    /** Mutable state of one job; {@link #snapshot()} is what the API returns and the checkpoint holds. */
+    private static final class Job {
+        final ExportJob spec;
+        volatile ExportJob.Status status;
+        volatile boolean cancelled;
+        volatile int partitionsDone;
+        final int partitionsTotal;
+        volatile long rowsRead;
+        volatile long rowsWritten;
+        volatile long pendingRows;
+        final List<String> files;
+        volatile String error;
+        volatile String updatedAt;
+
+        Job(ExportJob state) {
+            this.spec = state;
+            this.status = state.status();
+            this.partitionsDone = state.partitionsDone();
+            this.partitionsTotal = state.partitionsTotal();
+            this.rowsRead = state.rowsRead();
+            this.rowsWritten = state.rowsWritten();
+            this.files = new ArrayList<>(state.files());
+            this.error = state.error();
+            this.updatedAt = state.updatedAt();
+        }
+
+        String id() {
+            return spec.id();
+        }
+
+        synchronized ExportJob snapshot() {
+            return new ExportJob(spec.id(), status, spec.dateFrom(), spec.dateTo(), spec.ignoredSteps(),
+                    spec.fields(), partitionsTotal, partitionsDone, rowsRead + pendingRows, rowsWritten,
+                    List.copyOf(files), error, spec.createdAt(), updatedAt);
+        }
+    }
+
+    /**
+     * Export job state. {@code rowsRead} includes the rows fetched so far for the partition
+     * in progress; a resumed job continues with partition {@code partitionsDone + 1}.
+     */
+    @Serdeable
+    public record ExportJob(
+            String id,
+            Status status,
+            String dateFrom,
+            String dateTo,
+            List<String> ignoredSteps,
+            List<String> fields,
+            int partitionsTotal,
+            int partitionsDone,
+            long rowsRead,
+            long rowsWritten,
+            List<String> files,
+            String error,
+            String createdAt,
+            String updatedAt
+    ) {
+        public enum Status { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED, INTERRUPTED }
+    }
+} // class ExportService
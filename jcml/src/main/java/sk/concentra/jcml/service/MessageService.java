@@ -2,19 +2,28 @@ package sk.concentra.jcml.service;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.micronaut.context.annotation.Value;
+import io.micronaut.data.model.Pageable;
 import io.micronaut.scheduling.TaskExecutors;
 import io.micronaut.scheduling.annotation.ExecuteOn;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sk.concentra.jcml.deserializer.BinaryMessageDeserializer;
+import sk.concentra.jcml.deserializer.DbMetadata;
 import sk.concentra.jcml.persistence.ConfigMessageLog;
 import sk.concentra.jcml.persistence.ConfigMessageLogRepository;
+import sk.concentra.jcml.persistence.ConfigMessageLogSize;
 import sk.concentra.jcml.pipeline.ConfigurablePipeline;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
+import sk.concentra.jcml.schema.SchemaRegistry;
+import sk.concentra.jcml.util.Cancellation;
+import sk.concentra.jcml.util.RequestTiming;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -28,17 +37,24 @@ public class MessageService {
 
     private final ConfigMessageLogRepository configMessageLogRepository;
     private final BinaryMessageDeserializer binaryMessageDeserializer;
+    private final SchemaRegistry schemaRegistry;
     private final ConfigurablePipeline pipeline;
-    private final String zoneId;
+    private final ZoneId zone;
+    // (logOperation, tableName) → messageType; both columns have a small, fixed vocabulary
+    private final Map<MessageTypeKey, String> messageTypes = new ConcurrentHashMap<>();
+
+    private record MessageTypeKey(String logOperation, String tableName) {}
 
     public MessageService(ConfigMessageLogRepository configMessageLogRepository,
                           BinaryMessageDeserializer binaryMessageDeserializer,
+                          SchemaRegistry schemaRegistry,
                           ConfigurablePipeline pipeline,
                           @Value("${cml.db.zoneId:Europe/Prague}") String zoneId) {
         this.configMessageLogRepository = configMessageLogRepository;
         this.binaryMessageDeserializer = binaryMessageDeserializer;
+        this.schemaRegistry = schemaRegistry;
         this.pipeline = pipeline;
-        this.zoneId = zoneId;
+        this.zone = ZoneId.of(zoneId);
     }
 
     /**
@@ -93,12 +109,28 @@ public class MessageService {
             LocalDateTime dateTo,
             int pageNumber,
             int deserializeChunkSize) {
+        return getDeserializedMessagesByDateTimeRange(dateFrom, dateTo, pageNumber, deserializeChunkSize,
+                FieldProjection.ALL);
+    }
+
+    /**
+     * Like {@link #getDeserializedMessagesByDateTimeRange(LocalDateTime, LocalDateTime, int, int)},
+     * but decodes only the schema fields selected by {@code projection}.
+     */
+    public List<ObjectNode> getDeserializedMessagesByDateTimeRange(
+            LocalDateTime dateFrom,
+            LocalDateTime dateTo,
+            int pageNumber,
+            int deserializeChunkSize,
+            FieldProjection projection) {
 
         log.info("Retrieving configMessageLogs between {} and {} (page {}, chunkSize {})",
                 dateFrom, dateTo, pageNumber, deserializeChunkSize);
 
+        final long fetchStart = System.nanoTime();
         List<ConfigMessageLog> messages = configMessageLogRepository
                 .findAllByDateTimeBetweenOrderByRecoveryKeyAsc(dateFrom, dateTo);
+        RequestTiming.record(RequestTiming.DB, System.nanoTime() - fetchStart);
         log.info("Retrieved {} configMessageLogs for date range", messages.size());
 
         if (messages.isEmpty()) {
@@ -116,10 +148,118 @@ public class MessageService {
         log.info("Returning page {}/{} (records {} – {} of {})",
                 effectivePage, totalPages, fromIndex + 1, toIndex, messages.size());
 
-        return messages.subList(fromIndex, toIndex)
+        // Decoding runs on pool threads — they check the request's token, captured here
+        final Cancellation cancellation = Cancellation.current();
+        final long decodeStart = System.nanoTime();
+        final List<ObjectNode> decoded = messages.subList(fromIndex, toIndex)
                 .parallelStream()
-                .map(this::deserializeConfigMessageLog)
+                .map(m -> {
+                    if (cancellation != null) cancellation.throwIfCancelled();
+                    return deserializeConfigMessageLog(m, projection);
+                })
+                .collect(Collectors.toList());
+        RequestTiming.record(RequestTiming.DECODE, System.nanoTime() - decodeStart);
+        return decoded;
+    }
+
+    /**
+     * Typed fast-lane variant of
+     * {@link #getDeserializedMessagesByDateTimeRange(LocalDateTime, LocalDateTime, int, int, FieldProjection)}:
+     * same paging, but each row is decoded straight into a {@link ReportRecord}.
+     */
+    public List<ReportRecord> getReportRecordsByDateTimeRange(
+            LocalDateTime dateFrom,
+            LocalDateTime dateTo,
+            int pageNumber,
+            int deserializeChunkSize,
+            FieldProjection projection) {
+
+        log.info("Retrieving configMessageLogs between {} and {} as records (page {}, chunkSize {})",
+                dateFrom, dateTo, pageNumber, deserializeChunkSize);
+
+        final long fetchStart = System.nanoTime();
+        List<ConfigMessageLog> messages = configMessageLogRepository
+                .findAllByDateTimeBetweenOrderByRecoveryKeyAsc(dateFrom, dateTo);
+        RequestTiming.record(RequestTiming.DB, System.nanoTime() - fetchStart);
+        log.info("Retrieved {} configMessageLogs for date range", messages.size());
+
+        if (messages.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int effectiveChunkSize = Math.max(1, deserializeChunkSize);
+        int totalPages = (int) Math.ceil((double) messages.size() / effectiveChunkSize);
+        int effectivePage = Math.max(1, Math.min(pageNumber, totalPages));
+
+        int fromIndex = (effectivePage - 1) * effectiveChunkSize;
+        int toIndex   = Math.min(fromIndex + effectiveChunkSize, messages.size());
+
+        log.info("Returning page {}/{} (records {} – {} of {})",
+                effectivePage, totalPages, fromIndex + 1, toIndex, messages.size());
+
+        // Decoding runs on pool threads — they check the request's token, captured here
+        final Cancellation cancellation = Cancellation.current();
+        final long decodeStart = System.nanoTime();
+        final List<ReportRecord> decoded = messages.subList(fromIndex, toIndex)
+                .parallelStream()
+                .map(m -> {
+                    if (cancellation != null) cancellation.throwIfCancelled();
+                    return toReportRecord(m, projection);
+                })
                 .collect(Collectors.toList());
+        RequestTiming.record(RequestTiming.DECODE, System.nanoTime() - decodeStart);
+        return decoded;
+    }
+
+    /**
+     * Keyset page for export jobs: at most {@code limit} rows of the date range with a
+     * recovery key greater than {@code afterRecoveryKey}, in recovery key order, decoded
+     * into {@link ReportRecord}s. Unlike the offset pages above, only the page is fetched.
+     * The range includes {@code dateTo} only if {@code toInclusive}, so adjacent ranges
+     * do not share the rows of their boundary.
+     */
+    public List<ReportRecord> getReportRecordsAfter(
+            LocalDateTime dateFrom,
+            LocalDateTime dateTo,
+            boolean toInclusive,
+            Double afterRecoveryKey,
+            int limit,
+            FieldProjection projection) {
+        return fetchAfter(dateFrom, dateTo, toInclusive, afterRecoveryKey, limit)
+                .parallelStream()
+                .map(m -> toReportRecord(m, projection))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Generic-path variant of {@link #getReportRecordsAfter}: the page is decoded into
+     * {@link ObjectNode}s.
+     */
+    public List<ObjectNode> getDeserializedMessagesAfter(
+            LocalDateTime dateFrom,
+            LocalDateTime dateTo,
+            boolean toInclusive,
+            Double afterRecoveryKey,
+            int limit,
+            FieldProjection projection) {
+        return fetchAfter(dateFrom, dateTo, toInclusive, afterRecoveryKey, limit)
+                .parallelStream()
+                .map(m -> deserializeConfigMessageLog(m, projection))
+                .collect(Collectors.toList());
+    }
+
+    private List<ConfigMessageLog> fetchAfter(LocalDateTime dateFrom, LocalDateTime dateTo, boolean toInclusive,
+                                              Double afterRecoveryKey, int limit) {
+        final Pageable page = Pageable.from(0, Math.max(1, limit));
+        List<ConfigMessageLog> messages = toInclusive
+                ? configMessageLogRepository.findAllByDateTimeBetweenAndRecoveryKeyGreaterThanOrderByRecoveryKeyAsc(
+                        dateFrom, dateTo, afterRecoveryKey, page)
+                : configMessageLogRepository
+                        .findAllByDateTimeGreaterThanEqualsAndDateTimeLessThanAndRecoveryKeyGreaterThanOrderByRecoveryKeyAsc(
+                                dateFrom, dateTo, afterRecoveryKey, page);
+        log.debug("Retrieved {} configMessageLogs from {} to {} ({}) after recoveryKey {}",
+                messages.size(), dateFrom, dateTo, toInclusive ? "inclusive" : "exclusive", afterRecoveryKey);
+        return messages;
     }
 
     /**
@@ -150,27 +290,101 @@ public class MessageService {
         return pipeline.process(input, ignoredStepNames);
     }
 
+    /**
+     * Whether every enabled pipeline step has a typed form, so reports can use
+     * {@link #getReportRecordsByDateTimeRange} and {@link #processReportRecords}.
+     */
+    public boolean supportsReportRecords() {
+        return pipeline.supportsRecords();
+    }
+
+    /**
+     * Runs the pipeline over typed records, skipping the named steps for this invocation.
+     */
+    public List<ReportRecord> processReportRecords(List<ReportRecord> input, Collection<String> ignoredStepNames) {
+        return pipeline.processRecords(input, ignoredStepNames);
+    }
+
+    /**
+     * Row count and blob bytes of the date range per {@code (LogOperation, TableName)}, for
+     * sizing a report before fetching it. Reads no blobs.
+     */
+    public List<ConfigMessageLogSize> getSizeByDateTimeRange(LocalDateTime dateFrom, LocalDateTime dateTo) {
+        return configMessageLogRepository.sizeByDateTimeBetween(dateFrom, dateTo);
+    }
+
+    /** Message type of rows with the given {@code LogOperation} and {@code TableName}. */
+    public String messageTypeOf(String logOperation, String tableName) {
+        return messageTypes.computeIfAbsent(new MessageTypeKey(logOperation, tableName), MessageService::messageTypeOf);
+    }
+
+    /**
+     * Decode projection for messages that go through the pipeline and into a report:
+     * the fields the enabled steps read, or {@link FieldProjection#ALL}.
+     */
+    public FieldProjection reportFieldProjection() {
+        return pipeline.fieldProjection();
+    }
+
+    /**
+     * {@link #reportFieldProjection()} plus the schema fields read by {@code extraFields} —
+     * item paths of extra export columns — or {@link FieldProjection#ALL} if one of them is
+     * not a plain path.
+     */
+    public FieldProjection reportFieldProjection(Collection<String> extraFields) {
+        if (extraFields.isEmpty()) return reportFieldProjection();
+        final Set<String> fields = new HashSet<>();
+        for (String path : extraFields) {
+            final Set<String> read = FieldProjection.fieldsOfPath(path);
+            if (read == null) return FieldProjection.ALL;
+            fields.addAll(read);
+        }
+        return reportFieldProjection().merge(FieldProjection.forAllTypes(fields));
+    }
+
     private ObjectNode deserializeConfigMessageLog(ConfigMessageLog configMessageLog) {
-        var dbRecoveryKey = configMessageLog.getRecoveryKey();
-        var dbDateTime = configMessageLog.getDateTime();
-        var dbLogOperation = configMessageLog.getLogOperation();
-        var dbTableName = configMessageLog.getTableName();
-        var dbMetadata = new HashMap<String, Object>();
-        dbMetadata.put("recoveryKey", dbRecoveryKey);
-        dbMetadata.put("logOperation", dbLogOperation);
-        dbMetadata.put("tableName", dbTableName);
-        dbMetadata.put("dateTime", dbDateTime.atZone(ZoneId.of(zoneId)).toInstant().toEpochMilli());
-
-        log.info("Deserializing message with recoveryKey {} and dateTime {}", dbRecoveryKey, dbDateTime);
-        final String logOperation = configMessageLog.getLogOperation() != null
-                ? configMessageLog.getLogOperation().toUpperCase() : "";
-        final String tableName = configMessageLog.getTableName();
-        final String messageType = (tableName == null || tableName.isEmpty())
+        return deserializeConfigMessageLog(configMessageLog, FieldProjection.ALL);
+    }
+
+    private ObjectNode deserializeConfigMessageLog(ConfigMessageLog configMessageLog, FieldProjection projection) {
+        final var dbMetadata = new DbMetadata(
+                configMessageLog.getRecoveryKey(),
+                configMessageLog.getLogOperation(),
+                configMessageLog.getTableName(),
+                epochMillis(configMessageLog.getDateTime()));
+        final String messageType = messageTypeOf(configMessageLog);
+        log.debug("Deserializing message of type {} with recoveryKey {} and dateTime {}",
+                messageType, dbMetadata.recoveryKey(), configMessageLog.getDateTime());
+        return binaryMessageDeserializer.deserialize(messageType, configMessageLog.getConfigMessage(),
+                dbMetadata, projection, schemaRegistry.schemasAt(configMessageLog.getDateTime()));
+    }
+
+    private ReportRecord toReportRecord(ConfigMessageLog configMessageLog, FieldProjection projection) {
+        final ReportRecord record = new ReportRecord(
+                messageTypeOf(configMessageLog),
+                configMessageLog.getRecoveryKey(),
+                configMessageLog.getLogOperation(),
+                configMessageLog.getTableName(),
+                epochMillis(configMessageLog.getDateTime()));
+        log.debug("Decoding record of type {} with id {}", record.messageType(), record.recoveryKey());
+        return binaryMessageDeserializer.decodeInto(record, configMessageLog.getConfigMessage(), projection,
+                schemaRegistry.schemasAt(configMessageLog.getDateTime()));
+    }
+
+    private long epochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private String messageTypeOf(ConfigMessageLog configMessageLog) {
+        return messageTypeOf(configMessageLog.getLogOperation(), configMessageLog.getTableName());
+    }
+
+    private static String messageTypeOf(MessageTypeKey key) {
+        final String logOperation = key.logOperation() != null ? key.logOperation().toUpperCase() : "";
+        final String tableName = key.tableName();
+        return (tableName == null || tableName.isEmpty())
                 ? logOperation
                 : logOperation + "__" + tableName.toUpperCase();
-        final var configMessage = configMessageLog.getConfigMessage();
-        log.info("Deserializing message of type {} with id {}", messageType, configMessageLog.getRecoveryKey());
-        return binaryMessageDeserializer.deserialize(messageType, configMessage, dbMetadata);
     }
 
 } // class
\ No newline at end of file
@@ -1,14 +1,22 @@
 package sk.concentra.jcml.service;
 
+import com.fasterxml.jackson.core.JsonPointer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.micronaut.context.annotation.Value;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.export.ArrowStreamWriter;
+import sk.concentra.jcml.export.ExportColumn;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
 import sk.concentra.jcml.soap.dto.GetReportResponse;
 import sk.concentra.jcml.soap.dto.ReportRow;
+import sk.concentra.jcml.util.Cancellation;
+import sk.concentra.jcml.util.RequestTiming;
 
+import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
@@ -20,6 +28,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 /**
  * Converts the pipeline-processed {@link ObjectNode} list into a {@link GetReportResponse}.
@@ -41,6 +51,13 @@ import java.util.List;
  * bounded. All deserialized {@link ObjectNode}s are merged into a single list
  * before the pipeline runs — ensuring correct global sorting and entity enrichment.</p>
  *
+ * <h3>Admission control</h3>
+ * <p>Callers first pass {@link #admit} ({@link AdmissionControl}): a pre-flight size query
+ * estimates the report's heap, and it is rejected, queued or admitted against the configured
+ * memory budget and concurrency limit. The REST and SOAP layers hold the permit until the
+ * response has been written, since the response is serialized only after these methods
+ * return.</p>
+ *
  * <p>Configuration in {@code application.yml}:</p>
  * <pre>
  * report:
@@ -63,21 +80,34 @@ public class ReportService {
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
     private final MessageService messageService;
+    private final AdmissionControl admissionControl;
     private final ZoneId defaultZone;
     private final int deserializeChunkSize;
 
     public ReportService(
             MessageService messageService,
+            AdmissionControl admissionControl,
             @Value("${cml.db.zoneId:Europe/Prague}") String defaultTimezone,
             @Value("${cml.db.deserialize-chunk-size:100000}") int deserializeChunkSize
     ) {
         this.messageService       = messageService;
+        this.admissionControl     = admissionControl;
         this.defaultZone          = ZoneId.of(defaultTimezone);
         this.deserializeChunkSize = deserializeChunkSize;
         log.info("ReportService: timezone={}, deserializeChunkSize={}",
                 defaultTimezone, deserializeChunkSize);
     }
 
+    /**
+     * Admits a report of {@code dateFrom}–{@code dateTo} (same formats as {@link #getReport(String, String)}).
+     * Close the permit once the response has been written.
+     *
+     * @throws AdmissionControl.RejectedException when the report is too large or the service is busy
+     */
+    public AdmissionControl.Permit admit(final String dateFrom, final String dateTo) {
+        return admissionControl.admit(parseToLocal(dateFrom), parseToLocal(dateTo));
+    }
+
     /**
      * Accepts ISO-8601 datetime strings with optional timezone offset.
      * The wall-clock time is passed to the DB query; the offset determines display.
@@ -129,27 +159,18 @@ public class ReportService {
     public GetReportResponse getReport(final LocalDateTime dateFrom, final LocalDateTime dateTo,
                                        final ZoneOffset displayOffset) {
         log.info("getReport: dateFrom={}, dateTo={}, displayOffset={}", dateFrom, dateTo, displayOffset);
+        if (messageService.supportsReportRecords()) {
+            return getRecordReport(dateFrom, dateTo, displayOffset, Collections.emptyList());
+        }
 
         // ── Chunked deserialization ───────────────────────────────────────────
         // Fetch and deserialize in pages — binary blobs are released after each
         // chunk before the next page is fetched. ObjectNodes are lightweight
         // and accumulate safely across all chunks.
-        final List<ObjectNode> allMessages = new ArrayList<>();
-        int pageNumber = 1;
-
-        while (true) {
-            final List<ObjectNode> chunk = messageService.getDeserializedMessagesByDateTimeRange(
-                    dateFrom, dateTo, pageNumber, deserializeChunkSize);
-
-            allMessages.addAll(chunk);
-            log.info("getReport: chunk {} - {} items deserialized (total: {})",
-                    pageNumber, chunk.size(), allMessages.size());
-
-            if (chunk.size() < deserializeChunkSize) break; // last page
-            pageNumber++;
-        }
-
-        log.info("getReport: deserialized {} messages total", allMessages.size());
+        final FieldProjection projection = messageService.reportFieldProjection();
+        final List<ObjectNode> allMessages = fetchAll((pageNumber, chunkSize) ->
+                messageService.getDeserializedMessagesByDateTimeRange(
+                        dateFrom, dateTo, pageNumber, chunkSize, projection), "getReport");
 
         // ── Pipeline runs once on full merged dataset ─────────────────────────
         // EntityPreloadAction, SortAction, and BatchTemplateAction all require
@@ -158,11 +179,7 @@ public class ReportService {
 
         log.info("getReport: pipeline produced {} items", processed.size());
 
-        final List<ReportRow> rows = processed.stream()
-                .map(node -> toReportRow(node, displayOffset))
-                .toList();
-
-        return new GetReportResponse(rows);
+        return nodeResponse(processed, displayOffset);
     }
 
     /**
@@ -174,23 +191,15 @@ public class ReportService {
                                        final Collection<String> ignoredSteps) {
         log.info("getReport(filtered): dateFrom={}, dateTo={}, displayOffset={}, ignoredSteps={}",
                 dateFrom, dateTo, displayOffset, ignoredSteps);
-
-        final List<ObjectNode> allMessages = new ArrayList<>();
-        int pageNumber = 1;
-
-        while (true) {
-            final List<ObjectNode> chunk = messageService.getDeserializedMessagesByDateTimeRange(
-                    dateFrom, dateTo, pageNumber, deserializeChunkSize);
-
-            allMessages.addAll(chunk);
-            log.info("getReport(filtered): chunk {} - {} items deserialized (total: {})",
-                    pageNumber, chunk.size(), allMessages.size());
-
-            if (chunk.size() < deserializeChunkSize) break;
-            pageNumber++;
+        if (messageService.supportsReportRecords()) {
+            return getRecordReport(dateFrom, dateTo, displayOffset,
+                    ignoredSteps != null ? ignoredSteps : Collections.emptyList());
         }
 
-        log.info("getReport(filtered): deserialized {} messages total", allMessages.size());
+        final FieldProjection projection = messageService.reportFieldProjection();
+        final List<ObjectNode> allMessages = fetchAll((pageNumber, chunkSize) ->
+                messageService.getDeserializedMessagesByDateTimeRange(
+                        dateFrom, dateTo, pageNumber, chunkSize, projection), "getReport(filtered)");
 
         final Collection<String> effectiveIgnored =
                 ignoredSteps != null ? ignoredSteps : Collections.emptyList();
@@ -199,13 +208,196 @@ public class ReportService {
 
         log.info("getReport(filtered): pipeline produced {} items", processed.size());
 
+        return nodeResponse(processed, displayOffset);
+    }
+
+    /**
+     * Typed fast lane: rows are decoded straight into {@link ReportRecord}s and every
+     * pipeline step runs its typed form — no Jackson tree is built. Used when
+     * {@code pipeline.record-lane} is on and all enabled steps support it.
+     */
+    private GetReportResponse getRecordReport(final LocalDateTime dateFrom, final LocalDateTime dateTo,
+                                              final ZoneOffset displayOffset,
+                                              final Collection<String> ignoredSteps) {
+        return recordResponse(processRecords(dateFrom, dateTo, ignoredSteps,
+                messageService.reportFieldProjection()), displayOffset);
+    }
+
+    /** Response rows of pipeline-processed nodes. */
+    GetReportResponse nodeResponse(final List<ObjectNode> processed, final ZoneOffset displayOffset) {
+        final long mapStart = System.nanoTime();
         final List<ReportRow> rows = processed.stream()
                 .map(node -> toReportRow(node, displayOffset))
                 .toList();
+        RequestTiming.record(RequestTiming.MAP, System.nanoTime() - mapStart);
+        RequestTiming.recordRows(rows.size());
 
         return new GetReportResponse(rows);
     }
 
+    /** Response rows of pipeline-processed records. */
+    GetReportResponse recordResponse(final List<ReportRecord> processed, final ZoneOffset displayOffset) {
+        final long mapStart = System.nanoTime();
+        final List<ReportRow> rows = processed.stream()
+                .map(record -> toReportRow(record, displayOffset))
+                .toList();
+        RequestTiming.record(RequestTiming.MAP, System.nanoTime() - mapStart);
+        RequestTiming.recordRows(rows.size());
+
+        return new GetReportResponse(rows);
+    }
+
+    /** Decodes the date range into {@link ReportRecord}s chunk by chunk and runs the typed pipeline. */
+    private List<ReportRecord> processRecords(final LocalDateTime dateFrom, final LocalDateTime dateTo,
+                                              final Collection<String> ignoredSteps,
+                                              final FieldProjection projection) {
+        final List<ReportRecord> allRecords = fetchAll((pageNumber, chunkSize) ->
+                messageService.getReportRecordsByDateTimeRange(
+                        dateFrom, dateTo, pageNumber, chunkSize, projection), "getReport(records)");
+
+        final List<ReportRecord> processed = messageService.processReportRecords(allRecords, ignoredSteps);
+
+        log.info("getReport(records): pipeline produced {} records", processed.size());
+        return processed;
+    }
+
+    /**
+     * Fetches and decodes pages of {@code report.deserialize-chunk-size} rows via
+     * {@code page(pageNumber, chunkSize)} until a short page, checking for cancellation
+     * between pages — binary blobs of a page are released before the next one is fetched.
+     */
+    private <T> List<T> fetchAll(final BiFunction<Integer, Integer, List<T>> page, final String label) {
+        final List<T> all = new ArrayList<>();
+        int pageNumber = 1;
+
+        while (true) {
+            final List<T> chunk = page.apply(pageNumber, deserializeChunkSize);
+
+            all.addAll(chunk);
+            log.info("{}: chunk {} - {} items decoded (total: {})",
+                    label, pageNumber, chunk.size(), all.size());
+
+            Cancellation.checkpoint();
+            if (chunk.size() < deserializeChunkSize) break; // last page
+            pageNumber++;
+        }
+
+        log.info("{}: decoded {} messages total", label, all.size());
+        return all;
+    }
+
+    // ── Arrow export ──────────────────────────────────────────────────────────
+
+    /**
+     * Runs the report like {@link #getReport(String, String, List)} and returns the rows as an
+     * Arrow IPC stream ({@link ArrowStreamWriter}) in record batches of {@code batchSize}.
+     *
+     * <p>Columns are the {@link ReportRow} properties — {@code recoveryKey} as {@code float64},
+     * {@code dateTime} as a millisecond timestamp in the display offset, the rest as strings —
+     * followed by one string column per entry of {@code extraFields} (item paths such as
+     * {@code SkillTargetID} or {@code _dbMetadata.recoveryKey}).</p>
+     *
+     * <p>Fetching and the pipeline run before this method returns; the returned stream is
+     * lazy and encodes each record batch only when it is consumed, so no {@code ReportRow}
+     * list or complete response is held in memory.</p>
+     */
+    public Stream<byte[]> getArrowReport(final String dateFrom, final String dateTo,
+                                         final Collection<String> ignoredSteps,
+                                         final List<String> extraFields,
+                                         final int batchSize) {
+        final ZoneOffset displayOffset = extractOffset(dateFrom, defaultZone);
+        final LocalDateTime localFrom  = parseToLocal(dateFrom);
+        final LocalDateTime localTo    = parseToLocal(dateTo);
+        final String timezone = displayOffset.equals(ZoneOffset.UTC) ? "UTC" : displayOffset.getId();
+        log.info("getArrowReport: local {} – {}, timezone {}, ignoredSteps={}, extraFields={}, batchSize={}",
+                localFrom, localTo, timezone, ignoredSteps, extraFields, batchSize);
+        return arrowReport(localFrom, localTo, timezone, ignoredSteps, extraFields, batchSize);
+    }
+
+    private Stream<byte[]> arrowReport(final LocalDateTime localFrom, final LocalDateTime localTo,
+                                       final String timezone,
+                                       final Collection<String> ignoredSteps,
+                                       final List<String> extraFields,
+                                       final int batchSize) {
+        // Extra columns may read fields no pipeline step does — decode those too
+        final FieldProjection projection = messageService.reportFieldProjection(extraFields);
+        if (messageService.supportsReportRecords()) {
+            final List<ReportRecord> processed = processRecords(localFrom, localTo, ignoredSteps, projection);
+            RequestTiming.recordRows(processed.size());
+            return new ArrowStreamWriter<>(recordColumns(extraFields), timezone).stream(processed, batchSize);
+        }
+
+        final List<ObjectNode> allMessages = fetchAll((pageNumber, chunkSize) ->
+                messageService.getDeserializedMessagesByDateTimeRange(
+                        localFrom, localTo, pageNumber, chunkSize, projection), "getArrowReport");
+
+        final List<ObjectNode> processed = messageService.processMessages(allMessages, ignoredSteps);
+        log.info("getArrowReport: pipeline produced {} items", processed.size());
+        RequestTiming.recordRows(processed.size());
+        return new ArrowStreamWriter<>(nodeColumns(extraFields), timezone).stream(processed, batchSize);
+    }
+
+    /** {@link ReportRow} properties plus {@code extraFields} as export columns over typed records. */
+    List<ExportColumn<ReportRecord>> recordColumns(final List<String> extraFields) {
+        final List<ExportColumn<ReportRecord>> columns = new ArrayList<>(List.of(
+                new ExportColumn<>("recoveryKey", ExportColumn.Type.FLOAT64, ReportRecord::recoveryKey),
+                new ExportColumn<>("humanReadableTimestamp", ExportColumn.Type.UTF8,
+                        record -> textOrNull(record.get("humanReadableTimestamp"))),
+                new ExportColumn<>("dateTime", ExportColumn.Type.TIMESTAMP_MILLIS, ReportRecord::dateTime),
+                new ExportColumn<>("logOperation", ExportColumn.Type.UTF8,
+                        record -> textOrNull(record.logOperation())),
+                new ExportColumn<>("tableName", ExportColumn.Type.UTF8,
+                        record -> textOrNull(record.tableName())),
+                new ExportColumn<>("userName", ExportColumn.Type.UTF8,
+                        record -> textOrNull(record.get("_userName"))),
+                new ExportColumn<>("messageType", ExportColumn.Type.UTF8,
+                        record -> textOrNull(record.messageType())),
+                new ExportColumn<>("fullDescription", ExportColumn.Type.UTF8,
+                        record -> textOrNull(record.get("_full_description")))));
+        for (String field : extraFields) {
+            columns.add(new ExportColumn<>(field, ExportColumn.Type.UTF8,
+                    record -> textOrNull(record.path(field))));
+        }
+        return columns;
+    }
+
+    /** {@link ReportRow} properties plus {@code extraFields} as export columns over decoded nodes. */
+    List<ExportColumn<ObjectNode>> nodeColumns(final List<String> extraFields) {
+        final List<ExportColumn<ObjectNode>> columns = new ArrayList<>(List.of(
+                new ExportColumn<>("recoveryKey", ExportColumn.Type.FLOAT64,
+                        node -> numberOrNull(node.path("_dbMetadata").path("recoveryKey"))),
+                new ExportColumn<>("humanReadableTimestamp", ExportColumn.Type.UTF8,
+                        node -> textOrNull(node, "humanReadableTimestamp")),
+                new ExportColumn<>("dateTime", ExportColumn.Type.TIMESTAMP_MILLIS,
+                        node -> numberOrNull(node.path("_dbMetadata").path("dateTime"))),
+                new ExportColumn<>("logOperation", ExportColumn.Type.UTF8,
+                        node -> textOrNull(node.path("_dbMetadata"), "logOperation")),
+                new ExportColumn<>("tableName", ExportColumn.Type.UTF8,
+                        node -> textOrNull(node.path("_dbMetadata"), "tableName")),
+                new ExportColumn<>("userName", ExportColumn.Type.UTF8,
+                        node -> textOrNull(node, "_userName")),
+                new ExportColumn<>("messageType", ExportColumn.Type.UTF8,
+                        node -> textOrNull(node, "_messageType")),
+                new ExportColumn<>("fullDescription", ExportColumn.Type.UTF8,
+                        node -> textOrNull(node, "_full_description"))));
+        for (String field : extraFields) {
+            // "a.b[2]" → JSON pointer "/a/b/2"
+            final JsonPointer pointer = JsonPointer.compile(
+                    "/" + field.replace("]", "").replace('[', '/').replace('.', '/'));
+            columns.add(new ExportColumn<>(field, ExportColumn.Type.UTF8, node -> {
+                final JsonNode value = node.at(pointer);
+                if (value.isMissingNode() || value.isNull() || value.isContainerNode()) return null;
+                final String text = value.asText();
+                return text.isBlank() ? null : text;
+            }));
+        }
+        return columns;
+    }
+
+    private static Number numberOrNull(final JsonNode node) {
+        return node.isNumber() ? node.numberValue() : null;
+    }
+
     // ── DateTime parsing ──────────────────────────────────────────────────────
 
     /**
@@ -277,6 +469,30 @@ public class ReportService {
         return row;
     }
 
+    private ReportRow toReportRow(final ReportRecord record, final ZoneOffset displayOffset) {
+        final ReportRow row = new ReportRow();
+
+        row.setMessageType(textOrNull(record.messageType()));
+        row.setFullDescription(textOrNull(record.get("_full_description")));
+        row.setUserName(textOrNull(record.get("_userName")));
+        row.setHumanReadableTimestamp(textOrNull(record.get("humanReadableTimestamp")));
+
+        if (record.recoveryKey() != null) {
+            row.setRecoveryKey(BigDecimal.valueOf(record.recoveryKey()));
+        }
+        row.setLogOperation(textOrNull(record.logOperation()));
+        row.setTableName(textOrNull(record.tableName()));
+        row.setDateTime(LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(record.dateTime()), displayOffset).format(DATE_TIME_FORMATTER));
+
+        return row;
+    }
+
+    private String textOrNull(final Object value) {
+        final String text = ReportRecord.text(value);
+        return (text == null || text.isBlank()) ? null : text;
+    }
+
     private String textOrNull(final JsonNode node, final String field) {
         final JsonNode n = node.path(field);
         if (n.isMissingNode() || n.isNull()) return null;
@@ -0,0 +1,105 @@
+package sk.concentra.jcml.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.data.model.Pageable;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.persistence.ConfigMessageLog;
+import sk.concentra.jcml.persistence.ConfigMessageLogRepository;
+import sk.concentra.jcml.schema.MessageSchema;
+import sk.concentra.jcml.schema.SchemaInferrer;
+import sk.concentra.jcml.schema.SchemaRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples the blobs of one message type from {@code Config_Message_Log} and drafts a
+ * schema for it with {@link SchemaInferrer}.
+ *
+ * <p>Rows are read newest first in keyset-paged chunks of {@code cml.db.deserialize-chunk-size};
+ * each chunk is tokenized in parallel while only the shape statistics are kept, so the
+ * sample count is limited by time, not memory. The message type is split back into
+ * {@code LogOperation} and {@code TableName}; the comparison relies on the database's
+ * case-insensitive collation.</p>
+ */
+@Singleton
+public class SchemaInferenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaInferenceService.class);
+
+    private final ConfigMessageLogRepository configMessageLogRepository;
+    private final SchemaRegistry schemaRegistry;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    public SchemaInferenceService(ConfigMessageLogRepository configMessageLogRepository,
+                                  SchemaRegistry schemaRegistry,
+                                  ObjectMapper objectMapper,
+                                  @Value("${cml.db.deserialize-chunk-size:120000}") int chunkSize) {
+        this.configMessageLogRepository = configMessageLogRepository;
+        this.schemaRegistry = schemaRegistry;
+        this.objectMapper = objectMapper;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Drafts a schema for {@code messageType} from at most {@code limit} of its newest blobs.
+     *
+     * @return pretty-printed JSON with the sample counts and the draft schema(s) in schema file form
+     */
+    public String infer(String messageType, int limit) {
+        final int separator = messageType.indexOf("__");
+        final String logOperation = separator < 0 ? messageType : messageType.substring(0, separator);
+        final String tableName = separator < 0 ? null : messageType.substring(separator + 2);
+
+        final SchemaInferrer inferrer = new SchemaInferrer();
+        final long started = System.currentTimeMillis();
+        Double before = Double.MAX_VALUE;
+        int read = 0;
+        while (read < limit) {
+            final Pageable chunk = Pageable.from(0, Math.min(chunkSize, limit - read));
+            final List<ConfigMessageLog> rows = tableName == null
+                    ? configMessageLogRepository
+                        .findAllByLogOperationAndTableNameIsNullAndRecoveryKeyLessThanOrderByRecoveryKeyDesc(
+                                logOperation, before, chunk)
+                    : configMessageLogRepository
+                        .findAllByLogOperationAndTableNameAndRecoveryKeyLessThanOrderByRecoveryKeyDesc(
+                                logOperation, tableName, before, chunk);
+            if (rows.isEmpty()) break;
+
+            final List<byte[]> blobs = new ArrayList<>(rows.size());
+            rows.forEach(row -> blobs.add(row.getConfigMessage()));
+            inferrer.addAll(blobs);
+            read += rows.size();
+            before = rows.getLast().getRecoveryKey();
+            log.debug("Schema inference for {}: {} rows sampled", messageType, read);
+        }
+
+        final SchemaInferrer.Draft draft = inferrer.draft(messageType);
+        log.info("Schema inference for {}: {} samples, {} matching the draft, {} too short ({} ms)",
+                messageType, draft.samples(), draft.matched(), draft.tooShort(),
+                System.currentTimeMillis() - started);
+
+        final ObjectNode result = objectMapper.createObjectNode();
+        result.put("messageType", messageType);
+        result.put("samples", draft.samples());
+        result.put("matched", draft.matched());
+        result.put("tooShort", draft.tooShort());
+        result.put("schemaLoaded", schemaRegistry.baseSchemas().schemas().containsKey(messageType));
+        final ArrayNode schemas = result.putArray("schemas");
+        for (MessageSchema schema : draft.schemas()) {
+            schemas.add(SchemaInferrer.toJson(objectMapper, schema));
+        }
+        try {
+            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot render draft schema for " + messageType, e);
+        }
+    }
+} // class SchemaInferenceService
@@ -0,0 +1,87 @@
+package sk.concentra.jcml.service;
+
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.util.RequestTiming;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The {@code request-timing.slow-requests} slowest report requests of the last
+ * {@code request-timing.max-age}, with their phase durations, pipeline step stats and row
+ * counts — served by the {@code /slowrequests} management endpoint.
+ *
+ * <p>A fixed number of slots: a finished request takes a free slot or replaces the fastest
+ * entry if it was slower; entries older than {@code max-age} free their slot. Memory stays
+ * bounded however many requests are served.</p>
+ */
+@Singleton
+public class SlowRequestLog {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowRequestLog.class);
+
+    private final int capacity;
+    private final Duration maxAge;
+    private final List<RequestTiming.Summary> slowest = new ArrayList<>();
+
+    public SlowRequestLog(@Value("${request-timing.slow-requests:20}") int capacity,
+                          @Value("${request-timing.max-age:24h}") Duration maxAge) {
+        this.capacity = Math.max(0, capacity);
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Runs {@code request} as the timed {@code timing}: marks the timing failed when it
+     * throws, then finishes it and offers it to the log.
+     */
+    public <T> T measure(RequestTiming timing, Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (RuntimeException e) {
+            timing.failed(e);
+            throw e;
+        } finally {
+            offer(timing.finish().summary());
+        }
+    }
+
+    /** Keeps {@code request} if it is among the slowest recent requests. */
+    public synchronized void offer(RequestTiming.Summary request) {
+        if (capacity == 0) return;
+        evictExpired();
+        if (slowest.size() < capacity) {
+            slowest.add(request);
+        } else {
+            final RequestTiming.Summary fastest = slowest.stream()
+                    .min(Comparator.comparingLong(RequestTiming.Summary::totalMs))
+                    .orElseThrow();
+            if (request.totalMs() <= fastest.totalMs()) return;
+            slowest.set(slowest.indexOf(fastest), request);
+        }
+        log.debug("Slow-request log: kept {} {} ({}ms)", request.operation(), request.parameters(), request.totalMs());
+    }
+
+    /** The kept requests, slowest first. */
+    public synchronized List<RequestTiming.Summary> slowest() {
+        evictExpired();
+        return slowest.stream()
+                .sorted(Comparator.comparingLong(RequestTiming.Summary::totalMs).reversed())
+                .toList();
+    }
+
+    public synchronized void clear() {
+        slowest.clear();
+    }
+
+    private void evictExpired() {
+        final Instant cutoff = Instant.now().minus(maxAge);
+        slowest.removeIf(request -> request.startedAt().isBefore(cutoff));
+    }
+} // class SlowRequestLog
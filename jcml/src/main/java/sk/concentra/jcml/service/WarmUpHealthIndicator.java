@@ -0,0 +1,39 @@
+package sk.concentra.jcml.service;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.async.publisher.Publishers;
+import io.micronaut.health.HealthStatus;
+import io.micronaut.management.health.indicator.HealthIndicator;
+import io.micronaut.management.health.indicator.HealthResult;
+import io.micronaut.management.health.indicator.annotation.Readiness;
+import jakarta.inject.Singleton;
+import org.reactivestreams.Publisher;
+
+/**
+ * {@code warmUp} entry of {@code /health} and {@code /health/readiness}: {@code DOWN} while
+ * the startup warm-up ({@link WarmUpService}) is pending or running, {@code UP} once it has
+ * finished — also when it failed, which only costs speed. Details carry the progress.
+ */
+@Singleton
+@Readiness
+@Requires(beans = WarmUpService.class)
+public class WarmUpHealthIndicator implements HealthIndicator {
+
+    private static final String NAME = "warmUp";
+
+    private final WarmUpService warmUpService;
+
+    public WarmUpHealthIndicator(WarmUpService warmUpService) {
+        this.warmUpService = warmUpService;
+    }
+
+    @Override
+    public Publisher<HealthResult> getResult() {
+        final WarmUpService.Progress progress = warmUpService.progress();
+        final boolean finished = progress.state() == WarmUpService.State.DONE
+                || progress.state() == WarmUpService.State.FAILED;
+        return Publishers.just(HealthResult.builder(NAME, finished ? HealthStatus.UP : HealthStatus.DOWN)
+                .details(progress)
+                .build());
+    }
+} // class WarmUpHealthIndicator
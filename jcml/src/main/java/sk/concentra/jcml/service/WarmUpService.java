@@ -0,0 +1,189 @@
+package sk.concentra.jcml.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.json.JsonMapper;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.deserializer.BinaryMessageDeserializer;
+import sk.concentra.jcml.deserializer.DbMetadata;
+import sk.concentra.jcml.deserializer.DecodeStats;
+import sk.concentra.jcml.deserializer.SyntheticMessages;
+import sk.concentra.jcml.pipeline.ConfigurablePipeline;
+import sk.concentra.jcml.pipeline.ReportRecord;
+import sk.concentra.jcml.schema.FieldProjection;
+import sk.concentra.jcml.schema.SchemaRegistry;
+import sk.concentra.jcml.schema.SchemaSet;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Startup warm-up, so the first reports after a deploy do not run interpreted code.
+ *
+ * <p>With {@code warm-up.enabled}, synthetic blobs of every top-level message type of every
+ * schema set ({@link SyntheticMessages}, {@code warm-up.items-per-type} each) are decoded,
+ * run through the configured pipeline and mapped to a serialized report response,
+ * {@code warm-up.rounds} times or until {@code warm-up.max-duration} has passed. It runs on
+ * a virtual thread started with the application and takes the path reports take: the
+ * typed record lane when the pipeline supports it, the {@code ObjectNode} path otherwise.</p>
+ *
+ * <p>Nothing leaves the warm-up: the pipeline runs isolated
+ * ({@link ConfigurablePipeline#processRecordsIsolated}) — without its database steps and
+ * on a private global context — and decoding uses a private deserializer, so the
+ * {@code /schemas/stats} and {@code jcml.decode*} statistics count real messages only.
+ * {@link WarmUpHealthIndicator} keeps readiness {@code DOWN} until the warm-up ends.</p>
+ */
+@Singleton
+@Requires(property = "warm-up.enabled", value = "true")
+public class WarmUpService implements ApplicationEventListener<StartupEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUpService.class);
+
+    public enum State { PENDING, RUNNING, DONE, FAILED }
+
+    /**
+     * Progress as reported by the health indicator.
+     *
+     * @param items items decoded and processed so far, over all rounds
+     */
+    public record Progress(State state, int round, int rounds, int messageTypes, long items,
+                           long elapsedMs, String error) {}
+
+    private final SchemaRegistry schemaRegistry;
+    private final ConfigurablePipeline pipeline;
+    private final ReportService reportService;
+    private final JsonMapper jsonMapper;
+    private final BinaryMessageDeserializer deserializer;
+    private final int rounds;
+    private final int itemsPerType;
+    private final Duration maxDuration;
+
+    private volatile Progress progress;
+
+    /** One synthetic message: its type, blob and the schema set it was built from. */
+    private record Sample(String messageType, String logOperation, String tableName, byte[] blob,
+                          SchemaSet schemas) {}
+
+    public WarmUpService(SchemaRegistry schemaRegistry,
+                         ConfigurablePipeline pipeline,
+                         ReportService reportService,
+                         ObjectMapper objectMapper,
+                         JsonMapper jsonMapper,
+                         @Value("${schema.lazy-decode:false}") boolean lazyDecode,
+                         @Value("${warm-up.rounds:20}") int rounds,
+                         @Value("${warm-up.items-per-type:20}") int itemsPerType,
+                         @Value("${warm-up.max-duration:60s}") Duration maxDuration) {
+        this.schemaRegistry = schemaRegistry;
+        this.pipeline = pipeline;
+        this.reportService = reportService;
+        this.jsonMapper = jsonMapper;
+        // Same code as the shared deserializer, but statistics of its own
+        this.deserializer = new BinaryMessageDeserializer(schemaRegistry, objectMapper, new DecodeStats(null), lazyDecode);
+        this.rounds = Math.max(1, rounds);
+        this.itemsPerType = Math.max(1, itemsPerType);
+        this.maxDuration = maxDuration;
+        this.progress = new Progress(State.PENDING, 0, this.rounds, 0, 0, 0, null);
+    }
+
+    @Override
+    public void onApplicationEvent(StartupEvent event) {
+        Thread.ofVirtual().name("warm-up").start(this::run);
+    }
+
+    public Progress progress() {
+        return progress;
+    }
+
+    private void run() {
+        final long started = System.nanoTime();
+        int messageTypes = 0;
+        long items = 0;
+        int round = 0;
+        try {
+            // Building synthetic blobs can fail too — it must end in FAILED, not stay PENDING
+            final List<Sample> samples = samples();
+            messageTypes = samples.size() / itemsPerType;
+            log.info("Warm-up: {} message types x {} items, {} rounds (at most {})",
+                    messageTypes, itemsPerType, rounds, maxDuration);
+            progress = new Progress(State.RUNNING, 0, rounds, messageTypes, 0, 0, null);
+            while (round < rounds && System.nanoTime() - started < maxDuration.toNanos()) {
+                round++;
+                items += runRound(samples);
+                progress = new Progress(State.RUNNING, round, rounds, messageTypes, items,
+                        (System.nanoTime() - started) / 1_000_000, null);
+            }
+            progress = new Progress(State.DONE, round, rounds, messageTypes, items,
+                    (System.nanoTime() - started) / 1_000_000, null);
+            log.info("Warm-up done: {} rounds, {} items in {}ms", round, items, progress.elapsedMs());
+        } catch (Throwable e) {
+            // A failed warm-up only costs speed — readiness must not depend on it
+            progress = new Progress(State.FAILED, round, rounds, messageTypes, items,
+                    (System.nanoTime() - started) / 1_000_000, String.valueOf(e.getMessage()));
+            log.error("Warm-up failed in round {} — continuing without it", round, e);
+        }
+    }
+
+    /** Decodes, processes and serializes every sample once; returns the number of items. */
+    private int runRound(List<Sample> samples) throws IOException {
+        final FieldProjection projection = pipeline.fieldProjection();
+        final Object response;
+        if (pipeline.supportsRecords()) {
+            final List<ReportRecord> records = new ArrayList<>(samples.size());
+            for (int i = 0; i < samples.size(); i++) {
+                final Sample sample = samples.get(i);
+                final ReportRecord record = new ReportRecord(sample.messageType(), (double) i,
+                        sample.logOperation(), sample.tableName(), i * 1000L);
+                records.add(deserializer.decodeInto(record, sample.blob(), projection, sample.schemas()));
+            }
+            response = reportService.recordResponse(pipeline.processRecordsIsolated(records), ZoneOffset.UTC);
+        } else {
+            final List<ObjectNode> nodes = new ArrayList<>(samples.size());
+            for (int i = 0; i < samples.size(); i++) {
+                final Sample sample = samples.get(i);
+                final DbMetadata metadata = new DbMetadata((double) i, sample.logOperation(), sample.tableName(),
+                        i * 1000L);
+                nodes.add(deserializer.deserialize(sample.messageType(), sample.blob(), metadata, projection,
+                        sample.schemas()));
+            }
+            response = reportService.nodeResponse(pipeline.processIsolated(nodes), ZoneOffset.UTC);
+        }
+        jsonMapper.writeValueAsBytes(response);
+        return samples.size();
+    }
+
+    /** {@code itemsPerType} samples per message type and schema set, interleaved like a real log. */
+    private List<Sample> samples() {
+        final Map<String, List<Sample>> byType = new LinkedHashMap<>();
+        for (SchemaSet schemas : schemaRegistry.schemaSets()) {
+            for (String messageType : SyntheticMessages.messageTypes(schemas)) {
+                final int split = messageType.indexOf("__");
+                final String logOperation = split < 0 ? messageType : messageType.substring(0, split);
+                final String tableName = split < 0 ? null : messageType.substring(split + 2);
+                final List<Sample> samples = byType.computeIfAbsent(
+                        schemas.version() + "/" + messageType, k -> new ArrayList<>());
+                for (int i = 0; i < itemsPerType; i++) {
+                    samples.add(new Sample(messageType, logOperation, tableName,
+                            SyntheticMessages.blob(messageType, schemas, i), schemas));
+                }
+            }
+        }
+        final List<Sample> interleaved = new ArrayList<>();
+        for (int i = 0; i < itemsPerType; i++) {
+            for (List<Sample> samples : byType.values()) {
+                interleaved.add(samples.get(i));
+            }
+        }
+        return interleaved;
+    }
+} // class WarmUpService
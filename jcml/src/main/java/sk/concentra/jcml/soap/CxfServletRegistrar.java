@@ -98,7 +98,10 @@ public class CxfServletRegistrar implements ApplicationEventListener<ServerStart
 //            factory.setProperties(properties);
 
             factory.getOutInterceptors().add((Interceptor<? extends Message>) new Utf8EncodingInterceptor());
+            factory.getOutInterceptors().add(new ServerTimingHeaderInterceptor());
             factory.getOutInterceptors().add(new GZIPOutInterceptor());
+            factory.getOutInterceptors().add(new PermitReleasingInterceptor());
+            factory.getOutFaultInterceptors().add(new PermitReleasingInterceptor());
 //            factory.getOutInterceptors().add(new PrettyPrintInterceptor());
 //            factory.getOutInterceptors().add(new PrettyPrintingOutInterceptor(3));
             factory.create();
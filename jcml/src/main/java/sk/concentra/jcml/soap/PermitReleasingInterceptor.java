@@ -0,0 +1,48 @@
+package sk.concentra.jcml.soap;
+
+import org.apache.cxf.interceptor.MessageSenderInterceptor;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import sk.concentra.jcml.service.AdmissionControl;
+
+/**
+ * Releases the {@link AdmissionControl.Permit} of a report once its response — or fault — has
+ * been written: runs after the {@code MessageSenderEndingInterceptor} has closed the response
+ * stream, so the permit covers the serialization of the response too.
+ */
+class PermitReleasingInterceptor extends AbstractPhaseInterceptor<Message> {
+
+    PermitReleasingInterceptor() {
+        super(Phase.PREPARE_SEND_ENDING);
+        addAfter(MessageSenderInterceptor.MessageSenderEndingInterceptor.class.getName());
+    }
+
+    /**
+     * Hands {@code permit} to the response of the exchange being invoked on this thread.
+     *
+     * @return {@code false} when no exchange is being invoked; the caller then releases the permit itself
+     */
+    static boolean attach(AdmissionControl.Permit permit) {
+        final Message message = PhaseInterceptorChain.getCurrentMessage();
+        if (message == null) return false;
+        message.getExchange().put(AdmissionControl.Permit.class, permit);
+        return true;
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+        release(message);
+    }
+
+    @Override
+    public void handleFault(Message message) {
+        release(message);
+    }
+
+    private static void release(Message message) {
+        final AdmissionControl.Permit permit = message.getExchange().get(AdmissionControl.Permit.class);
+        if (permit != null) permit.close();
+    }
+} // class PermitReleasingInterceptor
@@ -1,18 +1,36 @@
 package sk.concentra.jcml.soap;
 
+import io.micronaut.context.annotation.Value;
 import jakarta.inject.Singleton;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import jakarta.jws.WebService;
+import org.apache.cxf.transport.http.netty.server.servlet.ChannelThreadLocal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sk.concentra.jcml.service.AdmissionControl;
 import sk.concentra.jcml.service.ReportService;
+import sk.concentra.jcml.service.SlowRequestLog;
 import sk.concentra.jcml.soap.dto.GetReportResponse;
+import sk.concentra.jcml.util.Cancellation;
+import sk.concentra.jcml.util.RequestTiming;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
 
 /**
  * JAX-WS implementation of {@link ReportWebService}.
  * Delegates to {@link ReportService} — same logic as the REST controller.
+ * Requests are timed like REST ones: the phase durations go into a {@code serverTiming}
+ * SOAP header ({@link ServerTimingHeaderInterceptor}) and the {@link SlowRequestLog}.
+ * They are cancelled ({@link Cancellation}) when the client's connection closes — the CXF
+ * Netty transport hands its channel to the invoking thread ({@link ChannelThreadLocal}) —
+ * or {@code cancellation.deadline} passes, and answered with a fault. An admitted report holds its
+ * {@link AdmissionControl} permit until the response has been written
+ * ({@link PermitReleasingInterceptor}).
  */
 @Singleton
 @WebService(
@@ -26,15 +44,21 @@ public class ReportWebServiceImpl implements ReportWebService {
     private static final Logger log = LoggerFactory.getLogger(ReportWebServiceImpl.class);
 
     private final ReportService reportService;
+    private final SlowRequestLog slowRequestLog;
+    private final Duration deadline;
 
-    public ReportWebServiceImpl(ReportService reportService) {
+    public ReportWebServiceImpl(ReportService reportService, SlowRequestLog slowRequestLog,
+            @Value("${cancellation.deadline:0s}") Duration deadline) {
         this.reportService = reportService;
+        this.slowRequestLog = slowRequestLog;
+        this.deadline = deadline;
     }
 
     @Override
     public GetReportResponse getReport(final String dateFrom, final String dateTo) {
         log.info("SOAP getReport: dateFrom={}, dateTo={}", dateFrom, dateTo);
-        return reportService.getReport(dateFrom, dateTo);
+        return timed("SOAP getReport", "dateFrom=" + dateFrom + ", dateTo=" + dateTo, dateFrom, dateTo,
+                () -> reportService.getReport(dateFrom, dateTo));
     }
 
     @Override
@@ -42,7 +66,40 @@ public class ReportWebServiceImpl implements ReportWebService {
             final List<String> ignoredSteps) {
         log.info("SOAP getReportWithIgnoredSteps: dateFrom={}, dateTo={}, ignoredSteps={}",
                 dateFrom, dateTo, ignoredSteps);
-        return reportService.getReport(dateFrom, dateTo,
-                ignoredSteps != null ? ignoredSteps : Collections.emptyList());
+        return timed("SOAP getReportWithIgnoredSteps",
+                "dateFrom=" + dateFrom + ", dateTo=" + dateTo + ", ignoredSteps=" + ignoredSteps,
+                dateFrom, dateTo, () -> reportService.getReport(dateFrom, dateTo,
+                        ignoredSteps != null ? ignoredSteps : Collections.emptyList()));
+    }
+
+    private GetReportResponse timed(final String operation, final String parameters,
+            final String dateFrom, final String dateTo, final Supplier<GetReportResponse> request) {
+        final RequestTiming timing = RequestTiming.start(operation, parameters);
+        final Cancellation cancellation = Cancellation.start(deadline);
+        final Channel channel = ChannelThreadLocal.get();
+        final ChannelFutureListener onClose = future -> cancellation.cancel("client disconnected");
+        if (channel != null) channel.closeFuture().addListener(onClose);
+        try {
+            final GetReportResponse response = slowRequestLog.measure(timing, () -> {
+                final AdmissionControl.Permit permit = reportService.admit(dateFrom, dateTo);
+                boolean held = false;
+                try {
+                    final GetReportResponse report = request.get();
+                    held = PermitReleasingInterceptor.attach(permit);
+                    return report;
+                } finally {
+                    if (!held) permit.close();
+                }
+            });
+            ServerTimingHeaderInterceptor.attach(timing);
+            return response;
+        } catch (RuntimeException e) {
+            if (!cancellation.isCancelled()) throw e;
+            log.warn("{} cancelled after {}ms ({}): {}", operation, timing.totalMs(), cancellation.reason(), parameters);
+            throw new CancellationException("Report cancelled: " + cancellation.reason());
+        } finally {
+            if (channel != null) channel.closeFuture().removeListener(onClose);
+            cancellation.finish();
+        }
     }
 }
\ No newline at end of file
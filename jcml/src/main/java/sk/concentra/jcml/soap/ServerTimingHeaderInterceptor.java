@@ -0,0 +1,44 @@
+package sk.concentra.jcml.soap;
+
+import org.apache.cxf.binding.soap.SoapHeader;
+import org.apache.cxf.binding.soap.SoapMessage;
+import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
+import org.apache.cxf.helpers.DOMUtils;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.w3c.dom.Element;
+import sk.concentra.jcml.util.RequestTiming;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Adds the SOAP counterpart of the REST {@code Server-Timing} header to every response of a
+ * timed request: {@code <serverTiming xmlns="http://util.gcml.concentra.sk/">db;dur=…, …</serverTiming>}
+ * in the SOAP header, with the value of {@link RequestTiming#serverTiming()}.
+ */
+class ServerTimingHeaderInterceptor extends AbstractSoapInterceptor {
+
+    static final QName HEADER = new QName("http://util.gcml.concentra.sk/", "serverTiming");
+
+    ServerTimingHeaderInterceptor() {
+        super(Phase.PRE_PROTOCOL);
+    }
+
+    /** Hands {@code timing} to the response of the exchange being invoked on this thread. */
+    static void attach(RequestTiming timing) {
+        final Message message = PhaseInterceptorChain.getCurrentMessage();
+        if (message != null) {
+            message.getExchange().put(RequestTiming.class, timing);
+        }
+    }
+
+    @Override
+    public void handleMessage(SoapMessage message) {
+        final RequestTiming timing = message.getExchange().get(RequestTiming.class);
+        if (timing == null) return;
+        final Element element = DOMUtils.createDocument().createElementNS(HEADER.getNamespaceURI(), HEADER.getLocalPart());
+        element.setTextContent(timing.serverTiming());
+        message.getHeaders().add(new SoapHeader(HEADER, element));
+    }
+} // class ServerTimingHeaderInterceptor
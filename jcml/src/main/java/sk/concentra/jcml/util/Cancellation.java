@@ -0,0 +1,148 @@
+package sk.concentra.jcml.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cooperative cancellation of one report request — when its client disconnects or its
+ * deadline ({@code cancellation.deadline}) passes.
+ *
+ * <p>The REST controller and the SOAP endpoint {@link #start} a token on the request thread.
+ * JDBC statements created while it is bound ({@code StatementCancellingDataSource}) are
+ * {@link Statement#cancel() cancelled} with it, so a running query stops on the server.
+ * Decoding and the pipeline check it between chunks and steps ({@link #checkpoint()},
+ * {@link #throwIfCancelled()}) and give up with a {@link CancellationException}; pipeline
+ * steps run with the token of the request that started the run ({@link #propagate}).</p>
+ */
+public final class Cancellation {
+
+    private static final Logger log = LoggerFactory.getLogger(Cancellation.class);
+
+    private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("report-deadline").daemon().factory());
+
+    private final List<Statement> statements = new ArrayList<>();
+    private final ScheduledFuture<?> deadline;
+    private volatile String reason;
+
+    private Cancellation(Duration deadline) {
+        this.deadline = deadline.isZero() || deadline.isNegative()
+                ? null
+                : DEADLINES.schedule(() -> cancel("deadline of " + deadline + " exceeded"),
+                        deadline.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Starts a token, cancelled after {@code deadline} unless it is zero, bound to the current thread until {@link #finish()}. */
+    public static Cancellation start(Duration deadline) {
+        final Cancellation cancellation = new Cancellation(deadline);
+        CURRENT.set(cancellation);
+        return cancellation;
+    }
+
+    /** The token bound to the current thread, or {@code null}. */
+    public static Cancellation current() {
+        return CURRENT.get();
+    }
+
+    /** Throws if the current thread's request has been cancelled; does nothing outside a request. */
+    public static void checkpoint() {
+        final Cancellation cancellation = CURRENT.get();
+        if (cancellation != null) cancellation.throwIfCancelled();
+    }
+
+    /** Ties {@code statement} to the current thread's request, if any. */
+    public static void register(Statement statement) {
+        final Cancellation cancellation = CURRENT.get();
+        if (cancellation != null) cancellation.track(statement);
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /** Why the request was cancelled, or {@code null}. */
+    public String reason() {
+        return reason;
+    }
+
+    public void throwIfCancelled() {
+        final String why = reason;
+        if (why != null) throw new CancellationException("Report request cancelled: " + why);
+    }
+
+    /** Cancels the request and every open statement it created; later calls are ignored. */
+    public void cancel(String why) {
+        final List<Statement> open;
+        synchronized (this) {
+            if (reason != null) return;
+            reason = why;
+            open = List.copyOf(statements);
+        }
+        log.warn("Cancelling report request ({}): {} open statement(s)", why, open.size());
+        open.forEach(Cancellation::cancelQuietly);
+    }
+
+    /** {@code task} running with this token bound to its thread. */
+    public <T> Callable<T> propagate(Callable<T> task) {
+        return () -> {
+            final Cancellation previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null) CURRENT.remove();
+                else CURRENT.set(previous);
+            }
+        };
+    }
+
+    /** Stops the deadline and unbinds the token from the current thread. */
+    public void finish() {
+        if (deadline != null) deadline.cancel(false);
+        synchronized (this) {
+            statements.clear();
+        }
+        if (CURRENT.get() == this) CURRENT.remove();
+    }
+
+    private void track(Statement statement) {
+        synchronized (this) {
+            if (reason == null) {
+                statements.removeIf(Cancellation::isClosed);
+                statements.add(statement);
+                return;
+            }
+        }
+        cancelQuietly(statement);
+    }
+
+    private static boolean isClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void cancelQuietly(Statement statement) {
+        try {
+            if (!statement.isClosed()) statement.cancel();
+        } catch (SQLException e) {
+            log.debug("Statement cancel failed: {}", e.getMessage());
+        }
+    }
+} // class Cancellation
@@ -0,0 +1,149 @@
+package sk.concentra.jcml.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Watches a directory (optionally with its subdirectories) through a {@link WatchService}
+ * and reports changed files in batches.
+ *
+ * <p>Events are coalesced until the directory has been quiet for {@link #QUIET_PERIOD_MS},
+ * so an editor's write-rename-touch sequence results in a single callback. The callback
+ * receives the absolute paths of created, modified and deleted files and runs on the
+ * watcher's own daemon thread.</p>
+ */
+public final class DirectoryWatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryWatcher.class);
+    private static final long QUIET_PERIOD_MS = 300;
+
+    private final String name;
+    private final Path root;
+    private final boolean recursive;
+    private final Consumer<Set<Path>> onChange;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Thread thread;
+
+    private DirectoryWatcher(String name, Path root, boolean recursive, Consumer<Set<Path>> onChange)
+            throws IOException {
+        this.name = name;
+        this.root = root.toAbsolutePath().normalize();
+        this.recursive = recursive;
+        this.onChange = onChange;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        register(this.root);
+        this.thread = Thread.ofPlatform().daemon().name("watch-" + name).unstarted(this::run);
+    }
+
+    /**
+     * Starts watching {@code root}.
+     *
+     * @param name      short name used for the thread and in logs
+     * @param recursive also watch subdirectories, including ones created later
+     * @param onChange  called with the changed files of each quiet-period batch
+     */
+    public static DirectoryWatcher start(String name, Path root, boolean recursive, Consumer<Set<Path>> onChange)
+            throws IOException {
+        final DirectoryWatcher watcher = new DirectoryWatcher(name, root, recursive, onChange);
+        watcher.thread.start();
+        log.info("Watching {} for {} changes{}", watcher.root, name, recursive ? " (recursive)" : "");
+        return watcher;
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Error closing {} watcher", name, e);
+        }
+    }
+
+    private void register(Path directory) throws IOException {
+        if (!recursive) {
+            registerOne(directory);
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path dir : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                registerOne(dir);
+            }
+        }
+    }
+
+    private void registerOne(Path directory) throws IOException {
+        final WatchKey key = directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, directory);
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final Set<Path> changed = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    drain(key, changed);
+                    key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+                }
+                if (changed.isEmpty()) continue;
+                try {
+                    onChange.accept(changed);
+                } catch (RuntimeException e) {
+                    log.error("Error handling {} changes {}", name, changed, e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stopped watching {} for {} changes", root, name);
+        }
+    }
+
+    private void drain(WatchKey key, Set<Path> changed) {
+        final Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                log.warn("{} watcher lost events — treating {} as changed", name, root);
+                changed.add(root);
+                continue;
+            }
+            final Path path = directory.resolve((Path) event.context());
+            if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(path);
+                    // Files written before the registration produced no events of their own
+                    try (Stream<Path> created = Files.walk(path)) {
+                        created.filter(Files::isRegularFile).forEach(changed::add);
+                    }
+                } catch (IOException e) {
+                    log.warn("Cannot watch new directory {}", path, e);
+                }
+                continue;
+            }
+            changed.add(path);
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+} // class DirectoryWatcher
@@ -0,0 +1,158 @@
+package sk.concentra.jcml.util;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Phase durations of one report request — DB fetch, decoding, the pipeline and each of its
+ * steps, row mapping — for the {@code Server-Timing} response header and the slow-request log.
+ *
+ * <p>The REST controller and the SOAP endpoint {@link #start} a timing on the request thread;
+ * {@code MessageService}, {@code ReportService} and {@code ConfigurablePipeline} add to the
+ * timing bound to the calling thread through the static methods, which do nothing when no
+ * request is being timed (export jobs, warm-up). Phases recorded more than once — one fetch
+ * and decode per chunk — add up.</p>
+ */
+public final class RequestTiming {
+
+    /** HTTP response header carrying {@link #serverTiming()}. */
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    // ── Phase names ───────────────────────────────────────────────────────────
+    public static final String ADMISSION = "admission";
+    public static final String DB = "db";
+    public static final String DECODE = "decode";
+    public static final String PIPELINE = "pipeline";
+    public static final String MAP = "map";
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    /** One pipeline step of the request, as in the pipeline run report. */
+    @Serdeable
+    public record Step(String name, int itemsIn, int itemsOut, long elapsedMs) {}
+
+    /**
+     * A finished request.
+     *
+     * @param rows     response rows, {@code -1} when the request failed before mapping
+     * @param phasesMs phase durations in the order they were first recorded
+     * @param error    exception message of a failed request, else {@code null}
+     */
+    @Serdeable
+    public record Summary(String operation, String parameters, Instant startedAt, long totalMs, int rows,
+                          Map<String, Long> phasesMs, List<Step> steps, String error) {}
+
+    private final String operation;
+    private final String parameters;
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final List<Step> steps = new ArrayList<>();
+    private int rows = -1;
+    private long totalNanos = -1;
+    private String error;
+
+    private RequestTiming(String operation, String parameters) {
+        this.operation = operation;
+        this.parameters = parameters;
+    }
+
+    /** Starts timing a request and binds it to the current thread until {@link #finish()}. */
+    public static RequestTiming start(String operation, String parameters) {
+        final RequestTiming timing = new RequestTiming(operation, parameters);
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /** Adds {@code nanos} to {@code phase} of the current thread's request, if any. */
+    public static void record(String phase, long nanos) {
+        final RequestTiming timing = CURRENT.get();
+        if (timing != null) timing.add(phase, nanos);
+    }
+
+    /** Appends pipeline step stats to the current thread's request, if any. */
+    public static void recordSteps(List<Step> steps) {
+        final RequestTiming timing = CURRENT.get();
+        if (timing != null) timing.addSteps(steps);
+    }
+
+    /** Sets the response row count of the current thread's request, if any. */
+    public static void recordRows(int rows) {
+        final RequestTiming timing = CURRENT.get();
+        if (timing != null) timing.setRows(rows);
+    }
+
+    private synchronized void add(String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    private synchronized void addSteps(List<Step> steps) {
+        this.steps.addAll(steps);
+    }
+
+    private synchronized void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    /** Marks the request as failed with {@code error}. */
+    public synchronized void failed(Throwable error) {
+        this.error = String.valueOf(error.getMessage());
+    }
+
+    /** Stops the clock and unbinds the timing from the current thread. */
+    public synchronized RequestTiming finish() {
+        if (totalNanos < 0) totalNanos = System.nanoTime() - startNanos;
+        if (CURRENT.get() == this) CURRENT.remove();
+        return this;
+    }
+
+    public synchronized long totalMs() {
+        return (totalNanos < 0 ? System.nanoTime() - startNanos : totalNanos) / 1_000_000;
+    }
+
+    /**
+     * The {@code Server-Timing} value, e.g.
+     * {@code db;dur=812.4, decode;dur=301.0, pipeline;dur=95.2, step-1;desc="Preload agents";dur=12, map;dur=20.7, total;dur=1240.9}.
+     * Steps follow the pipeline phase and are numbered in declaration order; steps of
+     * independent branches run concurrently, so their durations overlap.
+     */
+    public synchronized String serverTiming() {
+        final StringBuilder value = new StringBuilder();
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            metric(value, phase.getKey(), null, millis(phase.getValue()));
+            if (PIPELINE.equals(phase.getKey())) {
+                for (int i = 0; i < steps.size(); i++) {
+                    final Step step = steps.get(i);
+                    metric(value, "step-" + (i + 1), step.name(), String.valueOf(step.elapsedMs()));
+                }
+            }
+        }
+        metric(value, "total", null, millis(totalNanos < 0 ? System.nanoTime() - startNanos : totalNanos));
+        return value.toString();
+    }
+
+    /** Immutable copy for the slow-request log. */
+    public synchronized Summary summary() {
+        final Map<String, Long> phasesMs = new LinkedHashMap<>();
+        phaseNanos.forEach((phase, nanos) -> phasesMs.put(phase, nanos / 1_000_000));
+        return new Summary(operation, parameters, startedAt, totalMs(), rows, phasesMs, List.copyOf(steps), error);
+    }
+
+    private static void metric(StringBuilder value, String name, String description, String duration) {
+        if (!value.isEmpty()) value.append(", ");
+        value.append(name);
+        if (description != null) {
+            value.append(";desc=\"").append(description.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        value.append(";dur=").append(duration);
+    }
+
+    private static String millis(long nanos) {
+        return String.valueOf(Math.round(nanos / 100_000d) / 10d);
+    }
+} // class RequestTiming
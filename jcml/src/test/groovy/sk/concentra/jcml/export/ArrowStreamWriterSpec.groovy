@@ -0,0 +1,102 @@
+package sk.concentra.jcml.export
+
+import org.apache.arrow.memory.RootAllocator
+import org.apache.arrow.vector.Float8Vector
+import org.apache.arrow.vector.TimeStampMilliTZVector
+import org.apache.arrow.vector.VarCharVector
+import org.apache.arrow.vector.ipc.ArrowStreamReader
+import org.apache.arrow.vector.types.FloatingPointPrecision
+import org.apache.arrow.vector.types.TimeUnit
+import org.apache.arrow.vector.types.pojo.ArrowType
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.stream.Stream
+
+/**
+ * Round trip of {@link ArrowStreamWriter} output through the Arrow Java reader — the
+ * built-in FlatBuffers encoder must produce what real consumers read.
+ */
+class ArrowStreamWriterSpec extends Specification {
+
+    static final List<ExportColumn<Map>> COLUMNS = [
+            new ExportColumn<Map>('näme', ExportColumn.Type.UTF8, { Map row -> row.text }),
+            new ExportColumn<Map>('value', ExportColumn.Type.FLOAT64, { Map row -> row.value }),
+            new ExportColumn<Map>('dateTime', ExportColumn.Type.TIMESTAMP_MILLIS, { Map row -> row.dateTime })]
+
+    static final List<Map> ROWS = (0..<1000).collect { int i ->
+        [text    : i % 4 == 0 ? null : (i % 7 == 0 ? '' : "řádek-$i-€".toString()),
+         value   : i % 5 == 0 ? null : (i * 1234.5d - 500_000d),
+         dateTime: i % 6 == 0 ? null : 1_770_000_000_000L + i * 1234L]
+    }
+
+    def "rows, nulls and types survive a round trip in batches of #batchSize (#timezone)"() {
+        given:
+        def writer = new ArrowStreamWriter<Map>(COLUMNS, timezone)
+
+        when:
+        def stream = read(bytes(writer.stream(ROWS, batchSize)), timezone)
+
+        then:
+        stream.batches.size() == (ROWS.size() + batchSize - 1).intdiv(batchSize)
+        stream.batches.flatten() == ROWS
+
+        where:
+        [timezone, batchSize] << [['UTC', '+01:00', 'Europe/Prague'], [1, 7, 8, 64, 999, 1000, 5000]].combinations()
+    }
+
+    def "no items give a schema without record batches"() {
+        expect:
+        read(bytes(new ArrowStreamWriter<Map>(COLUMNS, 'UTC').stream([], 10)), 'UTC').batches.isEmpty()
+    }
+
+    def "an empty batch and an all-null row are read back"() {
+        given:
+        def writer = new ArrowStreamWriter<Map>(COLUMNS, '+01:00')
+        def allNull = [text: null, value: null, dateTime: null]
+
+        when:
+        def stream = read(bytes(Stream.of(writer.schema(), writer.recordBatch([]), writer.recordBatch([allNull]),
+                writer.recordBatch(ROWS.subList(0, 5)), ArrowStreamWriter.endOfStream())), '+01:00')
+
+        then:
+        stream.batches == [[], [allNull], ROWS.subList(0, 5)]
+    }
+
+    private static byte[] bytes(Stream<byte[]> stream) {
+        def out = new ByteArrayOutputStream()
+        stream.forEach { out.writeBytes(it) }
+        out.toByteArray()
+    }
+
+    /** Reads the stream with {@link ArrowStreamReader}, checking the schema and the null counts. */
+    private static Map read(byte[] data, String timezone) {
+        def batches = []
+        new RootAllocator().withCloseable { allocator ->
+            new ArrowStreamReader(new ByteArrayInputStream(data), allocator).withCloseable { reader ->
+                def root = reader.vectorSchemaRoot
+                def fields = root.schema.fields
+                assert fields*.name == ['näme', 'value', 'dateTime']
+                assert fields*.nullable == [true, true, true]
+                assert fields[0].type instanceof ArrowType.Utf8
+                assert fields[1].type == new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)
+                assert fields[2].type == new ArrowType.Timestamp(TimeUnit.MILLISECOND, timezone)
+                while (reader.loadNextBatch()) {
+                    def text = root.getVector(0) as VarCharVector
+                    def value = root.getVector(1) as Float8Vector
+                    def dateTime = root.getVector(2) as TimeStampMilliTZVector
+                    def rows = (0..<root.rowCount).collect { int i ->
+                        [text    : text.isNull(i) ? null : new String(text.get(i), StandardCharsets.UTF_8),
+                         value   : value.isNull(i) ? null : value.get(i),
+                         dateTime: dateTime.isNull(i) ? null : dateTime.get(i)]
+                    }
+                    assert text.nullCount == rows.count { it.text == null }
+                    assert value.nullCount == rows.count { it.value == null }
+                    assert dateTime.nullCount == rows.count { it.dateTime == null }
+                    batches << rows
+                }
+            }
+        }
+        [batches: batches]
+    }
+} // class ArrowStreamWriterSpec